@@ -3,38 +3,80 @@ package interpreteur.rouille.java;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 class App {
-  static boolean hadError = false;
-  static boolean hadRuntimeError = false;
-  private static final Interpreter interpreter = new Interpreter();
-
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: rouille [script]");
-      System.exit(64);
-    } else if (args.length == 1) {
-      runFile(args[0]);
-    } else {
-      interpreter.repl_mode = true;
+    if (args.length == 1 && args[0].equals("--serve")) {
+      Daemon.serve();
+    } else if (args.length > 1 && args[0].equals("--client")) {
+      var arguments = Arrays.asList(args).subList(2, args.length);
+      var status = Daemon.forward(args[1], arguments);
+      System.exit(status >= 0 ? status : runFile(args[1], arguments));
+    } else if ((args.length == 2 || args.length == 4 && args[2].equals("-o")) && args[0].equals("build")) {
+      var jar = args.length == 4 ? args[3] : args[1].replaceFirst("(\\.rouille)?$", ".jar");
+      System.exit(Build.build(args[1], jar, System.out::println, System.err::println));
+    } else if (args.length >= 1 && !args[0].startsWith("--")) {
+      System.exit(runFile(args[0], Arrays.asList(args).subList(1, args.length)));
+    } else if (args.length == 0) {
       runPrompt();
+    } else {
+      System.out.println("Usage: rouille [script [arguments...]]\n"
+          + "       rouille build script [-o programme.jar]\n"
+          + "       rouille --serve\n"
+          + "       rouille --client script [arguments...]");
+      System.exit(64);
     }
   }
 
-  private static void runFile(String path) throws IOException {
+  private static int runFile(String path, List<String> arguments) throws IOException {
     var bytes = Files.readAllBytes(Paths.get(path));
     var program = new String(bytes, Charset.defaultCharset());
-    run(program);
 
-    if (hadError)
-      System.exit(65);
-    if (hadRuntimeError)
-      System.exit(70);
+    CompiledScript script;
+    try {
+      script = RouilleEngine.compile(program);
+    } catch (RouilleException e) {
+      report(e, System.out::println, System.err::println);
+      return 65;
+    }
+    return run(script, arguments, System.out::println, System.err::println);
+  }
+
+  // The exit code of the command line: 70 if the script stopped on an error.
+  // The script gets its arguments in the `arguments` vector, and runs within
+  // the budget of the system properties.
+  static int run(CompiledScript script, List<String> arguments, Consumer<String> out, Consumer<String> err) {
+    return run(script, arguments, null, out, err);
+  }
+
+  // the same, with the files the script reads relative to `directory`
+  static int run(CompiledScript script, List<String> arguments, Path directory, Consumer<String> out,
+      Consumer<String> err) {
+    try {
+      script.execute(Map.of("arguments", arguments), out, Budget.fromProperties(), directory);
+      return 0;
+    } catch (RouilleException e) {
+      report(e, out, err);
+      return 70;
+    }
   }
 
   private static void runPrompt() throws IOException {
+    // every line is resolved in the same interpreter, so they share the globals
+    var locals = new HashMap<Object, Integer>();
+    var globals = new HashSet<Symbol>();
+    var interpreter = new Interpreter(locals);
+    interpreter.repl_mode = true;
+
     var scanner = new java.util.Scanner(System.in);
     while (true) {
       System.out.print("> ");
@@ -44,51 +86,27 @@ class App {
       } catch (NoSuchElementException e) {
         break;
       }
-      run(line);
-      hadError = false;
+
+      var diagnostics = new Diagnostics();
+      var statements = RouilleEngine.compile(line, locals, globals, diagnostics);
+      if (diagnostics.hadError()) {
+        report(new RouilleException(diagnostics.list()), System.out::println, System.err::println);
+        continue;
+      }
+      try {
+        Interpreter.onStack(() -> interpreter.interpret(statements));
+      } catch (RuntimeError e) {
+        System.out.println(Diagnostic.of(e));
+      }
     }
     scanner.close();
     System.out.println("Au revoir 👋!");
   }
 
-  private static void run(String source) {
-    var scanner = new Scanner(source);
-    var tokens = scanner.scanTokens();
-
-    var parser = new Parser(tokens);
-    var statements = parser.parse();
-
-    if (hadError)
-      return;
-
-    var resolver = new Resolver(interpreter);
-    resolver.resolve(statements);
-
-    if (hadError)
-      return;
-
-    interpreter.interpret(statements);
-  }
-
-  static void error(Token token, String message) {
-    if (token.type == TokenType.EOF)
-      report(token.line, " at end ", message);
-    else
-      report(token.line, " at `" + token.lexeme + "` ", message);
-  }
-
-  static void runtimeError(RuntimeError error) {
-    System.out.println(error.getMessage() +
-        "\n[line " + error.token.line + " column " + error.token.column + "]");
-    hadRuntimeError = true;
-  }
-
-  static void error(int line, String message) {
-    report(line, "", message);
-  }
-
-  private static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
-    hadError = true;
+  // compilation errors go to stderr, runtime errors to stdout
+  static void report(RouilleException exception, Consumer<String> out, Consumer<String> err) {
+    for (var diagnostic : exception.diagnostics()) {
+      (diagnostic.phase() == Diagnostic.Phase.COMPILATION ? err : out).accept(diagnostic.toString());
+    }
   }
 }
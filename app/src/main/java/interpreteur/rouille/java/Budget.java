@@ -0,0 +1,146 @@
+package interpreteur.rouille.java;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The limits of one execution, so that a script running in a shared service
+// can't keep a core or the heap forever:
+//
+//   fuel          loop iterations plus function calls
+//   deadline      wall-clock time since the start of the execution
+//   max depth     nested function calls
+//   allocations   cells allocated by the script: the elements of the
+//                 vectors, tuples and structures it builds, the chars of the
+//                 strings it concatenates and the entries it inserts
+//
+// Exceeding one stops the execution with a RuntimeError. The tasks and the
+// parallel workers of a script share its budget. A budget is immutable:
+// the `with` methods return a copy.
+//
+// The command line reads its budget from -Drouille.carburant,
+// -Drouille.delai (in milliseconds), -Drouille.profondeur and
+// -Drouille.allocations; unset means unlimited.
+public final class Budget {
+  public static final Budget UNLIMITED = new Budget(-1, null, -1, -1);
+
+  private final long fuel;
+  private final Duration deadline;
+  private final int maxDepth;
+  private final long allocations;
+
+  private Budget(long fuel, Duration deadline, int maxDepth, long allocations) {
+    this.fuel = fuel;
+    this.deadline = deadline;
+    this.maxDepth = maxDepth;
+    this.allocations = allocations;
+  }
+
+  public Budget withFuel(long fuel) {
+    return new Budget(positive(fuel, "fuel"), deadline, maxDepth, allocations);
+  }
+
+  public Budget withDeadline(Duration deadline) {
+    if (deadline.isNegative() || deadline.isZero())
+      throw new IllegalArgumentException("deadline must be positive: " + deadline);
+    return new Budget(fuel, deadline, maxDepth, allocations);
+  }
+
+  public Budget withMaxDepth(int maxDepth) {
+    return new Budget(fuel, deadline, (int) positive(maxDepth, "maxDepth"), allocations);
+  }
+
+  public Budget withAllocations(long allocations) {
+    return new Budget(fuel, deadline, maxDepth, positive(allocations, "allocations"));
+  }
+
+  static Budget fromProperties() {
+    var budget = UNLIMITED;
+    if (System.getProperty("rouille.carburant") != null)
+      budget = budget.withFuel(Long.getLong("rouille.carburant"));
+    if (System.getProperty("rouille.delai") != null)
+      budget = budget.withDeadline(Duration.ofMillis(Long.getLong("rouille.delai")));
+    if (System.getProperty("rouille.profondeur") != null)
+      budget = budget.withMaxDepth(Integer.getInteger("rouille.profondeur"));
+    if (System.getProperty("rouille.allocations") != null)
+      budget = budget.withAllocations(Long.getLong("rouille.allocations"));
+    return budget;
+  }
+
+  private static long positive(long value, String name) {
+    if (value <= 0)
+      throw new IllegalArgumentException(name + " must be positive: " + value);
+    return value;
+  }
+
+  Meter start() {
+    return this == UNLIMITED ? Meter.UNLIMITED : new Meter(this);
+  }
+
+  // What is left of a budget during an execution. Interpreters take fuel and
+  // allocations from it by slices and count them down in plain fields, so a
+  // loop iteration or a call costs a decrement and a comparison; the meter
+  // (atomic counters, the clock) is only read when a slice runs out. Without
+  // a limit, a slice of fuel still ends, to stop the interrupted executions.
+  static final class Meter {
+    static final Meter UNLIMITED = new Meter(Budget.UNLIMITED);
+    // the deadline is checked once per slice of fuel
+    private static final long FUEL_SLICE = 1024;
+    private static final long ALLOCATION_SLICE = 4096;
+
+    private final Budget budget;
+    private final AtomicLong fuel;
+    private final long deadline;
+    private final AtomicLong allocations;
+    final int maxDepth;
+
+    private Meter(Budget budget) {
+      this.budget = budget;
+      this.fuel = budget.fuel < 0 ? null : new AtomicLong(budget.fuel);
+      this.deadline = budget.deadline == null ? 0 : System.nanoTime() + budget.deadline.toNanos();
+      this.allocations = budget.allocations < 0 ? null : new AtomicLong(budget.allocations);
+      this.maxDepth = budget.maxDepth < 0 ? Integer.MAX_VALUE : budget.maxDepth;
+    }
+
+    // The ticks granted to an interpreter which has just spent its slice
+    // and needs one more.
+    long fuel(Token at) {
+      if (Thread.currentThread().isInterrupted())
+        throw Interpreter.interrupted(at);
+      if (budget.deadline != null && System.nanoTime() - deadline > 0)
+        throw new RuntimeError(at, "Le délai d'exécution (" + budget.deadline.toMillis() + " ms) est dépassé.");
+      if (fuel == null)
+        return FUEL_SLICE - 1;
+      var granted = take(fuel, 1, FUEL_SLICE);
+      if (granted == 0)
+        throw new RuntimeError(at, "Le budget d'exécution (" + budget.fuel + " boucles et appels) est épuisé.");
+      return granted - 1;
+    }
+
+    // The cells left to an interpreter which owes `missing` cells.
+    long allocations(Token at, long missing) {
+      if (allocations == null)
+        return Long.MAX_VALUE;
+      var granted = take(allocations, missing, missing + ALLOCATION_SLICE);
+      if (granted < missing)
+        throw new RuntimeError(at, "Le budget d'allocation (" + budget.allocations + " cellules) est épuisé.");
+      return granted - missing;
+    }
+
+    RuntimeError tooDeep(Token at) {
+      return new RuntimeError(at, "La profondeur d'appel maximale (" + maxDepth + ") est dépassée.");
+    }
+
+    // Takes `wanted` from `counter`, or what is left if that is at least
+    // `needed`. Returns what was taken.
+    private static long take(AtomicLong counter, long needed, long wanted) {
+      while (true) {
+        var left = counter.get();
+        if (left < needed)
+          return left;
+        var taken = Math.min(left, wanted);
+        if (counter.compareAndSet(left, left - taken))
+          return taken;
+      }
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package interpreteur.rouille.java;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+// `rouille build programme.rouille -o programme.jar` compiles a script ahead
+// of time: the CodeGenerator translates it to Java, javac (from the JDK
+// running rouille) compiles it in memory, and the classes go in an
+// executable jar with the classes of rouille, which are its runtime. The jar
+// runs with `java -jar programme.jar [arguments...]`, without scanning,
+// parsing or checking the script again.
+final class Build {
+  private static final String PACKAGE = "interpreteur/rouille/java/";
+
+  private Build() {
+  }
+
+  // the exit code: 65 if the script has errors, 70 if it can't be compiled
+  static int build(String script, String jar, Consumer<String> out, Consumer<String> err) throws IOException {
+    var source = new String(Files.readAllBytes(Paths.get(script)), Charset.defaultCharset());
+    var diagnostics = new Diagnostics();
+    var statements = RouilleEngine.compile(source, new HashMap<>(), new HashSet<>(), diagnostics);
+    if (diagnostics.hadError()) {
+      App.report(new RouilleException(diagnostics.list()), out, err);
+      return 65;
+    }
+
+    var classes = javac(CodeGenerator.generate(statements), err);
+    if (classes == null)
+      return 70;
+
+    var manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS,
+        "interpreteur.rouille.java." + CodeGenerator.CLASS);
+    try (var output = new JarOutputStream(Files.newOutputStream(Paths.get(jar)), manifest)) {
+      for (var runtime : runtime().entrySet()) {
+        if (!classes.containsKey(runtime.getKey()))
+          write(output, runtime.getKey(), runtime.getValue());
+      }
+      for (var compiled : classes.entrySet()) {
+        write(output, compiled.getKey(), compiled.getValue());
+      }
+    }
+    return 0;
+  }
+
+  private static void write(JarOutputStream jar, String name, byte[] bytes) throws IOException {
+    jar.putNextEntry(new JarEntry(name));
+    jar.write(bytes);
+    jar.closeEntry();
+  }
+
+  // the generated classes by path in the jar, null if javac failed
+  private static Map<String, byte[]> javac(String java, Consumer<String> err) {
+    var compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      err.accept("`rouille build` a besoin de javac : lancez rouille avec un JDK.");
+      return null;
+    }
+
+    var classes = new HashMap<String, byte[]>();
+    var errors = new DiagnosticCollector<JavaFileObject>();
+    var standard = compiler.getStandardFileManager(errors, null, null);
+    var files = new ForwardingJavaFileManager<JavaFileManager>(standard) {
+      @Override
+      public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+          FileObject sibling) {
+        var path = className.replace('.', '/') + kind.extension;
+        return new SimpleJavaFileObject(URI.create("memory:///" + path), kind) {
+          @Override
+          public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+              @Override
+              public void close() {
+                classes.put(path, toByteArray());
+              }
+            };
+          }
+        };
+      }
+    };
+    var unit = new SimpleJavaFileObject(URI.create("memory:///" + PACKAGE + CodeGenerator.CLASS + ".java"),
+        JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return java;
+      }
+    };
+
+    var options = List.of("-classpath", System.getProperty("java.class.path"), "-nowarn");
+    var compiled = compiler.getTask(null, files, errors, options, null, List.of(unit)).call();
+    if (!compiled) {
+      // a bug of the CodeGenerator
+      for (var error : errors.getDiagnostics()) {
+        err.accept(error.toString());
+      }
+      return null;
+    }
+    return classes;
+  }
+
+  // the classes of rouille, from its directory or its jar
+  private static Map<String, byte[]> runtime() throws IOException {
+    var classes = new HashMap<String, byte[]>();
+    Path location;
+    try {
+      location = Paths.get(Build.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+
+    if (Files.isDirectory(location)) {
+      var directory = location.resolve(PACKAGE);
+      var paths = new ArrayList<Path>();
+      try (var walk = Files.list(directory)) {
+        walk.filter(path -> path.toString().endsWith(".class")).forEach(paths::add);
+      }
+      for (var path : paths) {
+        classes.put(PACKAGE + path.getFileName(), Files.readAllBytes(path));
+      }
+      return classes;
+    }
+
+    try (var jar = new JarFile(location.toFile())) {
+      var entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        var entry = entries.nextElement();
+        if (entry.getName().startsWith(PACKAGE) && entry.getName().endsWith(".class")) {
+          try (var input = jar.getInputStream(entry)) {
+            classes.put(entry.getName(), input.readAllBytes());
+          }
+        }
+      }
+    }
+    return classes;
+  }
+}
@@ -1,9 +1,33 @@
 package interpreteur.rouille.java;
 
+import java.util.Arrays;
 import java.util.List;
 
 public interface Callable {
   int arity();
 
   Object call(Interpreter interpreter, List<Object> arguments);
+
+  // The calls of up to 4 arguments, which don't build a list: callers use
+  // them once they have checked the arity. They go through `call` unless
+  // the Callable overrides the one of its arity.
+  default Object call0(Interpreter interpreter) {
+    return call(interpreter, List.of());
+  }
+
+  default Object call1(Interpreter interpreter, Object a) {
+    return call(interpreter, Arrays.asList(a));
+  }
+
+  default Object call2(Interpreter interpreter, Object a, Object b) {
+    return call(interpreter, Arrays.asList(a, b));
+  }
+
+  default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    return call(interpreter, Arrays.asList(a, b, c));
+  }
+
+  default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+    return call(interpreter, Arrays.asList(a, b, c, d));
+  }
 }
@@ -0,0 +1,112 @@
+package interpreteur.rouille.java;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Rouille string. Concatenations append to a StringBuilder shared by all the
+// strings built on top of each other: each Chaine only sees the first
+// `length` chars of it. A concatenation appends in place when the left
+// operand is the longest string of its builder, and copies otherwise, so
+// `s += ...` in a loop is linear. The chars are only flattened into a
+// String when the value is printed, compared or hashed.
+//
+// A string read from a file (see Fichiers) keeps its UTF-8 bytes, a view on
+// the mapped file, and is only decoded the first time it is used: its
+// length is unknown (-1) until then.
+final class Chaine {
+  private final StringBuilder builder;
+  private final ByteBuffer utf8;
+  private int length;
+  private String flat;
+
+  Chaine(String value) {
+    builder = null;
+    utf8 = null;
+    length = value.length();
+    flat = value;
+  }
+
+  private Chaine(StringBuilder builder, int length) {
+    this.builder = builder;
+    this.utf8 = null;
+    this.length = length;
+  }
+
+  Chaine(ByteBuffer utf8) {
+    this.builder = null;
+    this.utf8 = utf8;
+    this.length = utf8.limit() == 0 ? 0 : -1;
+    if (length == 0)
+      flat = "";
+  }
+
+  int length() {
+    if (length < 0)
+      length = toString().length();
+    return length;
+  }
+
+  Chaine concat(Chaine other) {
+    if (other.length() == 0)
+      return this;
+    if (length() == 0)
+      return other;
+
+    if (builder != null) {
+      synchronized (builder) {
+        if (builder.length() == length) {
+          if (other.builder == builder)
+            builder.append(other.toString());
+          else
+            other.appendTo(builder);
+          return new Chaine(builder, builder.length());
+        }
+      }
+    }
+
+    var copy = new StringBuilder(2 * (length + other.length));
+    appendTo(copy);
+    other.appendTo(copy);
+    return new Chaine(copy, copy.length());
+  }
+
+  private void appendTo(StringBuilder destination) {
+    if (flat != null || builder == null) {
+      destination.append(toString());
+      return;
+    }
+    synchronized (builder) {
+      destination.append(builder, 0, length);
+    }
+  }
+
+  @Override
+  public String toString() {
+    if (flat == null && utf8 != null) {
+      // absolute get: the bytes may be decoded by two tasks at once
+      var bytes = new byte[utf8.limit()];
+      utf8.get(0, bytes);
+      flat = new String(bytes, StandardCharsets.UTF_8);
+    } else if (flat == null) {
+      synchronized (builder) {
+        flat = builder.substring(0, length);
+      }
+    }
+    return flat;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof Chaine))
+      return false;
+    var other = (Chaine) obj;
+    return length() == other.length() && toString().equals(other.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+}
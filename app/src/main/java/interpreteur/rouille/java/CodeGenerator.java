@@ -0,0 +1,1221 @@
+package interpreteur.rouille.java;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Translates a resolved and checked program into the Java source of the
+// class `Programme`, for `rouille build`. Every `fonction` becomes a static
+// method, and the operations the TypeChecker proved on entiers and
+// flottants become plain Java arithmetic on unboxed temporaries. Everything
+// else goes through Operations, like in the Interpreter, so a compiled
+// program prints the same values and fails with the same errors.
+//
+// Every expression is translated into statements that store its value in a
+// temporary, in evaluation order, and the code of the temporary. The local
+// variables become Java locals with unique names, since rouille lets a
+// declaration shadow another one in the same block. A mutable variable
+// captured by a nested function is stored in a one element array shared
+// with the function, the other captures are copied when it is declared.
+//
+// A function with a `produit` becomes a state machine instead (see
+// generator).
+class CodeGenerator implements Expr.Visitor<CodeGenerator.Value>, Stmt.Visitor<Void> {
+  static final String CLASS = "Programme";
+
+  // the code of a value, and its Java type: 'O' for an Object, 'I' for an
+  // i32, 'D' for a flottant and 'Z' for a bool
+  static final class Value {
+    final String code;
+    final char kind;
+
+    Value(String code, char kind) {
+      this.code = code;
+      this.kind = kind;
+    }
+  }
+
+  private static final Value UNIT = new Value("Tuple.UNIT", 'O');
+
+  private static final class Local {
+    final Token declaration;
+    final String name;
+    final boolean mutable;
+    final boolean cell;
+    // a field of the state of a generator, `g.name`
+    final boolean field;
+
+    Local(Token declaration, String name, boolean mutable, boolean cell, boolean field) {
+      this.declaration = declaration;
+      this.name = name;
+      this.mutable = mutable;
+      this.cell = cell;
+      this.field = field;
+    }
+
+    String read() {
+      return cell ? name + "[0]" : name;
+    }
+  }
+
+  // A loop, labelled in Java so that `arrête` and `continue` become a
+  // `break` or a `continue` of that label. The value of a `boucle` is stored
+  // in `result` before leaving it. The loops of a generator that suspend it
+  // have states instead, where `arrête` and `continue` jump.
+  private static final class Loop {
+    final String label;
+    final String result;
+    final int exit;
+    final int next;
+
+    Loop(String label, String result) {
+      this(label, result, -1, -1);
+    }
+
+    Loop(String label, String result, int exit, int next) {
+      this.label = label;
+      this.result = result;
+      this.exit = exit;
+      this.next = next;
+    }
+  }
+
+  // The checked bounds of a counted `pour`: ints for i32, the bits of a long
+  // for the other widths, boxed into their width.
+  private static final class Range {
+    final Entier.Largeur largeur;
+    final String type;
+    final String start;
+    final String step;
+    final String count;
+
+    Range(Entier.Largeur largeur, String start, String step, String count) {
+      this.largeur = largeur;
+      this.type = largeur == Entier.Largeur.I32 ? "int" : "long";
+      this.start = start;
+      this.step = step;
+      this.count = count;
+    }
+
+    String box(String value) {
+      return largeur == Entier.Largeur.I32 ? value : "Entier.Largeur." + largeur.name() + ".box(" + value + ")";
+    }
+  }
+
+  // the method being written
+  private static final class Method {
+    final StringBuilder code = new StringBuilder();
+    final Stmt.Function function;
+    // the scopes of the function, the first one holds its captures
+    final Deque<Map<Symbol, Local>> scopes = new ArrayDeque<>();
+    // the loops around the code being written, innermost last
+    final List<Loop> loops = new ArrayList<>();
+    int indent = 2;
+    // for a generator, the fields of its state, and the scopes whose
+    // variables are fields of it
+    final StringBuilder variables;
+    final Set<Map<Symbol, Local>> hoisted = Collections.newSetFromMap(new IdentityHashMap<>());
+    int states = 0;
+
+    Method(Stmt.Function function) {
+      this.function = function;
+      this.variables = function != null && function.suspending != null ? new StringBuilder() : null;
+    }
+  }
+
+  // the declarations of the mutable variables captured by a function, found
+  // by a first pass over the program
+  private final Set<Token> cells;
+  private final boolean analysis;
+
+  private final StringBuilder fields = new StringBuilder();
+  private final StringBuilder classes = new StringBuilder();
+  private final List<Method> methods = new ArrayList<>();
+  private final Map<Token, String> tokens = new IdentityHashMap<>();
+  private final Map<String, String> symbols = new HashMap<>();
+  // the top level functions and structures, declared once
+  private final Map<Symbol, String> functions = new HashMap<>();
+  private final Map<Symbol, Stmt.Function> declarations = new HashMap<>();
+  private final Map<Symbol, String> structures = new HashMap<>();
+  private Method method;
+  private int names = 0;
+
+  private CodeGenerator(Set<Token> cells, boolean analysis) {
+    this.cells = cells;
+    this.analysis = analysis;
+  }
+
+  static String generate(List<Stmt> statements) {
+    var cells = new HashSet<Token>();
+    new CodeGenerator(cells, true).program(statements);
+    return new CodeGenerator(cells, false).program(statements);
+  }
+
+  private String program(List<Stmt> statements) {
+    var counts = new HashMap<Symbol, Integer>();
+    for (var statement : statements) {
+      var name = statement instanceof Stmt.Function ? ((Stmt.Function) statement).name
+          : statement instanceof Stmt.Struct ? ((Stmt.Struct) statement).name
+          : statement instanceof Stmt.Var ? ((Stmt.Var) statement).name : null;
+      if (name != null)
+        counts.merge(name.symbol, 1, Integer::sum);
+    }
+    for (var statement : statements) {
+      if (statement instanceof Stmt.Function && counts.get(((Stmt.Function) statement).name.symbol) == 1) {
+        var function = (Stmt.Function) statement;
+        functions.put(function.name.symbol, name("F", function.name));
+        declarations.put(function.name.symbol, function);
+      } else if (statement instanceof Stmt.Struct && counts.get(((Stmt.Struct) statement).name.symbol) == 1) {
+        var struct = (Stmt.Struct) statement;
+        var name = name("S", struct.name);
+        structures.put(struct.name.symbol, name);
+        var structure = structure(struct);
+        fields.append("  static final Structure ").append(name).append(" = ").append(structure).append(";\n");
+      }
+    }
+
+    // the top level statements run in order, then `principale`
+    method = new Method(null);
+    method.code.append("  static Object programme() {\n");
+    for (var statement : statements) {
+      if (statement instanceof Stmt.Function && functions.containsKey(((Stmt.Function) statement).name.symbol)) {
+        var function = (Stmt.Function) statement;
+        function(function, functions.get(function.name.symbol));
+        line("globals.define(" + symbol(function.name) + ", " + functions.get(function.name.symbol) + ");");
+      } else if (statement instanceof Stmt.Struct && structures.containsKey(((Stmt.Struct) statement).name.symbol)) {
+        var struct = (Stmt.Struct) statement;
+        line("globals.define(" + symbol(struct.name) + ", " + structures.get(struct.name.symbol) + ");");
+      } else {
+        execute(statement);
+      }
+    }
+    var main = new Expr.Call(new Expr.Variable(new Token("principale")), null, new ArrayList<>());
+    line("return " + object(evaluate(main)) + ";");
+    method.code.append("  }\n");
+    methods.add(method);
+
+    var java = new StringBuilder();
+    java.append("package interpreteur.rouille.java;\n\n")
+        .append("import java.util.Arrays;\n")
+        .append("import java.util.List;\n\n")
+        .append("// generated by `rouille build`\n")
+        .append("public final class ").append(CLASS).append(" extends CompiledProgram {\n")
+        .append(fields).append('\n')
+        .append("  public static void main(String[] args) {\n")
+        .append("    System.exit(run(args, ").append(CLASS).append("::programme));\n")
+        .append("  }\n");
+    for (var written : methods) {
+      java.append('\n').append(written.code);
+    }
+    java.append(classes).append("}\n");
+    return java.toString();
+  }
+
+  // A function: a static method, and a Callable class whose fields are the
+  // captures. Top level functions have no captures, their Callable is a
+  // constant. Returns the field of each capture, by the variable it copies.
+  private Map<Local, String> function(Stmt.Function function, String name) {
+    var topLevel = method.function == null && functions.get(function.name.symbol) == name;
+    var enclosing = method;
+    method = new Method(function);
+    var generator = method.variables != null;
+    var captures = new LinkedHashMap<Local, String>();
+    var scope = new HashMap<Symbol, Local>();
+    for (var capture : function.captures) {
+      var local = lookUp(enclosing, capture.name);
+      if (local == null)
+        continue;
+      if (local.mutable && analysis)
+        cells.add(local.declaration);
+      var field = name("c", capture.name);
+      captures.put(local, field);
+      scope.put(capture.name.symbol, new Local(local.declaration, (generator ? "g.self." : "self.") + field,
+          local.mutable, local.cell, false));
+    }
+    method.scopes.push(scope);
+    method.scopes.push(new HashMap<>());
+    if (generator)
+      method.hoisted.add(method.scopes.peek());
+
+    var parameters = new StringBuilder(topLevel ? "" : name + " self");
+    var arguments = new StringBuilder(topLevel ? "" : "this");
+    // the Callable also overrides the call of its arity, when it has one
+    var direct = function.params.size() <= 4;
+    var callParameters = new StringBuilder("Interpreter interpreter");
+    var callArguments = new StringBuilder(topLevel ? "" : "this");
+    for (int i = 0; i < function.params.size(); i++) {
+      var parameter = function.params.get(i);
+      var local = declare(parameter, false);
+      parameters.append(parameters.length() > 0 ? ", " : "").append("Object ").append(bare(local));
+      arguments.append(arguments.length() > 0 ? ", " : "").append("arguments.get(").append(i).append(")");
+      callParameters.append(", Object a").append(i);
+      callArguments.append(callArguments.length() > 0 ? ", " : "").append("a").append(i);
+    }
+
+    var code = method.code;
+    code.append("  static Object ").append(method(name)).append("(").append(parameters).append(") {\n");
+    var state = generator ? name("G", function.name) : null;
+    if (generator) {
+      line("final " + state + " g = new " + state + "();");
+      if (!topLevel)
+        line("g.self = self;");
+      for (var parameter : function.params) {
+        var local = lookUp(method, parameter);
+        line(declaration(local, "Object") + " = " + bare(local) + ";");
+      }
+    }
+    for (int i = 0; i < function.params.size(); i++) {
+      var type = function.types.get(i);
+      if (type.runtimeClass() == null)
+        continue;
+      var parameter = function.params.get(i);
+      line("if (!(" + admits(lookUp(method, parameter).name, type) + "))");
+      line("  throw new RuntimeError(" + token(parameter) + ", " + string("Le paramètre `" + parameter.lexeme
+          + "` de `" + function.name.lexeme + "` doit être de type `" + type + "`.") + ");");
+    }
+    if (generator) {
+      generator(function, state);
+    } else {
+      for (var statement : function.body) {
+        execute(statement);
+      }
+      line("return " + returned(UNIT) + ";");
+    }
+    code.append("  }\n");
+    var variables = method.variables;
+    methods.add(method);
+    method = enclosing;
+
+    var fieldsOfClass = new StringBuilder();
+    for (var capture : captures.entrySet()) {
+      fieldsOfClass.append("    ").append(capture.getKey().cell ? "Object[] " : "Object ").append(capture.getValue())
+          .append(";\n");
+    }
+    classes.append("\n  static final class ").append(name).append(" extends CompiledProgram.Function {\n")
+        .append(fieldsOfClass)
+        .append("\n    ").append(name).append("() {\n")
+        .append("      super(").append(string(function.name.lexeme)).append(", ")
+        .append(function.params.size()).append(");\n")
+        .append("    }\n\n")
+        .append("    @Override\n")
+        .append("    public Object call(Interpreter interpreter, List<Object> arguments) {\n")
+        .append("      return ").append(method(name)).append("(").append(arguments).append(");\n")
+        .append("    }\n");
+    if (direct)
+      classes.append("\n    @Override\n")
+          .append("    public Object call").append(function.params.size()).append("(").append(callParameters)
+          .append(") {\n")
+          .append("      return ").append(method(name)).append("(").append(callArguments).append(");\n")
+          .append("    }\n");
+    classes.append("  }\n");
+    if (generator) {
+      classes.append("\n  static final class ").append(state).append(" extends Generateur {\n");
+      if (!topLevel)
+        classes.append("    ").append(name).append(" self;\n");
+      classes.append(variables)
+          .append("    int state;\n\n")
+          .append("    ").append(state).append("() {\n")
+          .append("      super(").append(string(function.name.lexeme)).append(");\n")
+          .append("    }\n\n")
+          .append("    @Override\n")
+          .append("    Object resume(Interpreter interpreter) {\n")
+          .append("      return ").append(method(state)).append("(this);\n")
+          .append("    }\n")
+          .append("  }\n");
+    }
+    if (topLevel)
+      fields.append("  static final ").append(name).append(' ').append(name).append(" = new ").append(name)
+          .append("();\n");
+    return captures;
+  }
+
+  // The body of a generator: the method that its Generateur resumes, after
+  // the one that creates it. Its statements are the cases of
+  // a switch on `g.state`, which each value enters again: a `produit` stores
+  // the case that follows it and returns, the statements around it are
+  // taken apart into jumps between cases (suspend). The variables of the
+  // scopes the switch goes through are fields of `g`, so that they outlive
+  // a case; the other statements are written as in any function.
+  private void generator(Stmt.Function function, String state) {
+    line("return g;");
+    method.code.append("  }\n\n");
+    method.code.append("  static Object ").append(method(state)).append("(").append(state).append(" g) {\n");
+    line("R: while (true) {");
+    line("  switch (g.state) {");
+    method.indent += 2;
+    label(0);
+    for (var statement : function.body) {
+      execute(statement);
+    }
+    line("g.state = -1;");
+    method.indent -= 2;
+    line("  default:");
+    line("    return null;");
+    line("  }");
+    line("}");
+  }
+
+  private boolean suspends(Object node) {
+    return method.variables != null && method.function.suspending.contains(node);
+  }
+
+  // a statement of a generator that suspends it
+  private void suspend(Stmt statement) {
+    if (statement instanceof Stmt.Yield) {
+      var value = object(evaluate(((Stmt.Yield) statement).value));
+      var next = ++method.states;
+      line("g.state = " + next + ";");
+      line("return " + value + ";");
+      label(next);
+    } else if (statement instanceof Stmt.Expression) {
+      suspend(((Stmt.Expression) statement).expression);
+    } else if (statement instanceof Stmt.Return) {
+      suspend(((Stmt.Return) statement).value);
+      line("if (true) { g.state = -1; return null; }");
+    } else if (statement instanceof Stmt.While) {
+      var stmt = (Stmt.While) statement;
+      var loop = new Loop(null, null, ++method.states, ++method.states);
+      label(loop.next);
+      var condition = condition(evaluate(stmt.condition), stmt.proven, stmt.whileToken,
+          "La condition d'un `tant` doit être un booléen.");
+      line("if (!" + condition + ") " + goTo(loop.exit));
+      suspend(loop, stmt.body);
+      jump(loop.next);
+      label(loop.exit);
+    } else if (statement instanceof Stmt.For) {
+      var stmt = (Stmt.For) statement;
+      var range = range(stmt, token(stmt.forToken));
+      var count = field("long", fresh("n"));
+      var n = field("long", fresh("n"));
+      var i = field(range.type, fresh("i"));
+      var by = field(range.type, fresh("i"));
+      line(count + " = " + range.count + ";");
+      line(n + " = 0;");
+      line(i + " = " + range.start + ";");
+      line(by + " = " + range.step + ";");
+      var loop = new Loop(null, null, ++method.states, ++method.states);
+      var head = ++method.states;
+      label(head);
+      line("if (" + n + " >= " + count + ") " + goTo(loop.exit));
+      hoistedScope();
+      var local = declare(stmt.name, false);
+      line(declaration(local, "final Object") + " = " + range.box(i) + ";");
+      suspend(loop, stmt.body);
+      method.scopes.pop();
+      label(loop.next);
+      line(n + "++;");
+      line(i + " += " + by + ";");
+      jump(head);
+      label(loop.exit);
+    } else if (statement instanceof Stmt.ForEach) {
+      var stmt = (Stmt.ForEach) statement;
+      var forToken = token(stmt.forToken);
+      var values = field("java.util.Iterator<?>", fresh("t"));
+      line(values + " = Operations.iterator(interpreter, " + forToken + ", " + object(evaluate(stmt.iterable)) + ");");
+      var loop = new Loop(null, null, ++method.states, ++method.states);
+      label(loop.next);
+      var value = temp("Object", "Operations.next(" + forToken + ", " + values + ")");
+      line("if (" + value + " == null) " + goTo(loop.exit));
+      hoistedScope();
+      var local = declare(stmt.name, false);
+      line(declaration(local, "final Object") + " = " + value + ";");
+      suspend(loop, stmt.body);
+      method.scopes.pop();
+      jump(loop.next);
+      label(loop.exit);
+      // the values left are not read
+      line(values + " = null;");
+    } else {
+      throw new IllegalStateException("Unreachable");
+    }
+  }
+
+  // a block, a `si` or a `boucle` of a generator that suspends it, whose
+  // value is not used
+  private void suspend(Expr expr) {
+    if (expr instanceof Expr.Block) {
+      var block = (Expr.Block) expr;
+      hoistedScope();
+      for (var statement : block.statements) {
+        execute(statement);
+      }
+      if (block.returnedValue.isPresent())
+        branch(block.returnedValue.get());
+      method.scopes.pop();
+    } else if (expr instanceof Expr.If) {
+      var branches = (Expr.If) expr;
+      var condition = condition(evaluate(branches.condition), branches.proven, branches.ifToken,
+          "La condition d'un `si` doit être un booléen.");
+      var otherwise = ++method.states;
+      var end = ++method.states;
+      line("if (!" + condition + ") " + goTo(otherwise));
+      branch(branches.thenBranch);
+      jump(end);
+      label(otherwise);
+      if (branches.elseBranch.isPresent())
+        branch(branches.elseBranch.get());
+      label(end);
+    } else if (expr instanceof Expr.Loop) {
+      var loop = new Loop(null, null, ++method.states, ++method.states);
+      label(loop.next);
+      suspend(loop, ((Expr.Loop) expr).body);
+      jump(loop.next);
+      label(loop.exit);
+    } else {
+      throw new IllegalStateException("Unreachable");
+    }
+  }
+
+  private void suspend(Loop loop, Expr.Block body) {
+    method.loops.add(loop);
+    suspend(body);
+    method.loops.remove(loop);
+  }
+
+  private void branch(Expr expr) {
+    if (suspends(expr))
+      suspend(expr);
+    else
+      evaluate(expr);
+  }
+
+  private void hoistedScope() {
+    var scope = new HashMap<Symbol, Local>();
+    method.hoisted.add(scope);
+    method.scopes.push(scope);
+  }
+
+  // a field of the state of the generator being written
+  private String field(String type, String name) {
+    method.variables.append("    ").append(type).append(' ').append(name).append(";\n");
+    return "g." + name;
+  }
+
+  // The left side of the declaration of a local, with its type, or the
+  // field of the generator that holds it.
+  private String declaration(Local local, String type) {
+    if (!local.field)
+      return type + " " + local.name;
+    return field(type.replace("final ", ""), bare(local));
+  }
+
+  private static String bare(Local local) {
+    return local.field ? local.name.substring("g.".length()) : local.name;
+  }
+
+  private String goTo(int state) {
+    return "{ g.state = " + state + "; continue R; }";
+  }
+
+  private void jump(int state) {
+    line("if (true) " + goTo(state));
+  }
+
+  private void label(int state) {
+    method.code.append("  ".repeat(method.indent - 1)).append("case ").append(state).append(":\n");
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    var name = name("F", stmt.name);
+    if (method.function == null && method.scopes.isEmpty()) {
+      function(stmt, name);
+      line("globals.define(" + symbol(stmt.name) + ", new " + name + "());");
+      return null;
+    }
+
+    // the function is declared before its captures are copied, so that it
+    // can call itself
+    var local = declare(stmt.name, false);
+    line(declaration(local, "final " + name) + " = new " + name + "();");
+    for (var capture : function(stmt, name).entrySet()) {
+      var outer = capture.getKey();
+      line(local.name + "." + capture.getValue() + " = " + (outer.cell ? outer.name : outer.read()) + ";");
+    }
+    return null;
+  }
+
+  private String structure(Stmt.Struct struct) {
+    var names = new StringBuilder();
+    for (var field : struct.fields) {
+      names.append(names.length() > 0 ? ", " : "").append(token(field));
+    }
+    return "new Structure(" + token(struct.name) + ", List.of(" + names + "))";
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    evaluate(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    line("System.out.println(Operations.stringify(" + object(evaluate(stmt.expression)) + "));");
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    // a generator ends, its value is not used
+    if (method.variables != null) {
+      evaluate(stmt.value);
+      line("if (true) { g.state = -1; return null; }");
+      return null;
+    }
+    // `if (true)`, so that javac doesn't reject the statements after it
+    line("if (true) return " + returned(evaluate(stmt.value)) + ";");
+    return null;
+  }
+
+  @Override
+  public Void visitYieldStmt(Stmt.Yield stmt) {
+    // a `produit` suspends its generator, see suspend
+    throw new IllegalStateException("Unreachable");
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    var value = object(evaluate(stmt.initializer));
+    guard(stmt.guard, stmt.name, value);
+    if (method.function == null && method.scopes.isEmpty()) {
+      line("globals.define(" + symbol(stmt.name) + ", " + value + ", " + stmt.mutable + ");");
+      return null;
+    }
+    var local = declare(stmt.name, stmt.mutable);
+    line(local.cell ? declaration(local, "final Object[]") + " = new Object[] { " + value + " };"
+        : declaration(local, "Object") + " = " + value + ";");
+    return null;
+  }
+
+  @Override
+  public Void visitAssignStmt(Stmt.Assign stmt) {
+    var value = object(evaluate(stmt.value));
+    guard(stmt.guard, stmt.name, value);
+    var local = lookUp(method, stmt.name);
+    if (local == null)
+      line("globals.assign(" + token(stmt.name) + ", " + value + ");");
+    else
+      line(local.read() + " = " + value + ";");
+    return null;
+  }
+
+  private void guard(Type guard, Token name, String value) {
+    if (guard == null)
+      return;
+    line("if (!(" + admits(value, guard) + "))");
+    line("  throw new RuntimeError(" + token(name) + ", " + string("La variable `" + name.lexeme
+        + "` est de type `" + guard + "` mais reçoit `") + " + Operations.stringify(" + value + ") + \"`.\");");
+  }
+
+  @Override
+  public Void visitSetIndexStmt(Stmt.SetIndex stmt) {
+    var object = object(evaluate(stmt.object));
+    var index = object(evaluate(stmt.index));
+    var value = object(evaluate(stmt.value));
+    line("Operations.setIndex(" + token(stmt.bracket) + ", " + object + ", " + index + ", " + value + ");");
+    return null;
+  }
+
+  @Override
+  public Void visitSetFieldStmt(Stmt.SetField stmt) {
+    var instance = temp("Instance", "Operations.instance(" + object(evaluate(stmt.object)) + ", "
+        + token(stmt.name) + ")");
+    var value = object(evaluate(stmt.value));
+    line(site("FieldSite", token(stmt.name)) + ".set(" + instance + ", " + value + ");");
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    var loop = new Loop(fresh("L"), null);
+    line(loop.label + ": while (true) {");
+    method.indent++;
+    var condition = condition(evaluate(stmt.condition), stmt.proven, stmt.whileToken,
+        "La condition d'un `tant` doit être un booléen.");
+    line("if (!" + condition + ")");
+    line("  break;");
+    method.loops.add(loop);
+    block(stmt.body);
+    method.loops.remove(loop);
+    method.indent--;
+    line("}");
+    return null;
+  }
+
+  @Override
+  public Value visitLoopExpr(Expr.Loop expr) {
+    var loop = new Loop(fresh("L"), fresh("t"));
+    line("Object " + loop.result + ";");
+    // `if (true)`, so that javac accepts the statements after a loop that is
+    // never left
+    line("if (true) " + loop.label + ": while (true) {");
+    method.indent++;
+    method.loops.add(loop);
+    block(expr.body);
+    method.loops.remove(loop);
+    method.indent--;
+    line("}");
+    return new Value(loop.result, 'O');
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    var loop = method.loops.get(method.loops.size() - 1 - stmt.loops);
+    if (loop.exit >= 0) {
+      if (stmt.value.isPresent())
+        evaluate(stmt.value.get());
+      jump(loop.exit);
+      return null;
+    }
+    if (loop.result != null)
+      line(loop.result + " = " + (stmt.value.isPresent() ? object(evaluate(stmt.value.get())) : UNIT.code) + ";");
+    line("if (true) break " + loop.label + ";");
+    return null;
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    var loop = method.loops.get(method.loops.size() - 1 - stmt.loops);
+    line("if (true) " + (loop.exit >= 0 ? goTo(loop.next) : "continue " + loop.label + ";"));
+    return null;
+  }
+
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    var forToken = token(stmt.forToken);
+    var range = range(stmt, forToken);
+    var i = fresh("i");
+    var n = fresh("n");
+    var loop = new Loop(fresh("L"), null);
+    line(range.type + " " + i + " = " + range.start + ";");
+    line(loop.label + ": for (long " + n + " = 0; " + n + " < " + range.count + "; " + n + "++, " + i + " += "
+        + range.step + ") {");
+    method.indent++;
+    method.scopes.push(new HashMap<>());
+    var local = declare(stmt.name, false);
+    line("final Object " + local.name + " = " + range.box(i) + ";");
+    method.loops.add(loop);
+    block(stmt.body);
+    method.loops.remove(loop);
+    method.scopes.pop();
+    method.indent--;
+    line("}");
+    return null;
+  }
+
+  private Range range(Stmt.For stmt, String forToken) {
+    var largeur = stmt.largeur != null ? stmt.largeur : Entier.Largeur.I32;
+    if (largeur == Entier.Largeur.I32) {
+      var start = temp("int", "bound(" + forToken + ", " + object(evaluate(stmt.start)) + ")");
+      var end = temp("int", "bound(" + forToken + ", " + object(evaluate(stmt.end)) + ")");
+      var step = stmt.step.isPresent()
+          ? temp("int", "bound(" + forToken + ", " + object(evaluate(stmt.step.get())) + ")")
+          : "1";
+      var count = temp("long", "count(" + forToken + ", " + start + ", " + end + ", " + step + ", " + stmt.inclusive
+          + ")");
+      return new Range(largeur, start, step, count);
+    }
+
+    var width = "Entier.Largeur." + largeur.name();
+    var start = temp("long", "Operations.bound(" + forToken + ", " + width + ", " + object(evaluate(stmt.start)) + ")");
+    var end = temp("long", "Operations.bound(" + forToken + ", " + width + ", " + object(evaluate(stmt.end)) + ")");
+    var step = stmt.step.isPresent()
+        ? temp("long", "Operations.bound(" + forToken + ", " + width + ", " + object(evaluate(stmt.step.get())) + ")")
+        : "1";
+    var count = temp("long", "Operations.count(" + forToken + ", " + width + ", " + start + ", " + end + ", " + step
+        + ", " + stmt.inclusive + ")");
+    return new Range(largeur, start, step, count);
+  }
+
+  @Override
+  public Void visitForEachStmt(Stmt.ForEach stmt) {
+    var forToken = token(stmt.forToken);
+    var iterator = temp("java.util.Iterator<?>", "Operations.iterator(interpreter, " + forToken + ", "
+        + object(evaluate(stmt.iterable)) + ")");
+    var loop = new Loop(fresh("L"), null);
+    line(loop.label + ": while (true) {");
+    method.indent++;
+    var value = temp("Object", "Operations.next(" + forToken + ", " + iterator + ")");
+    line("if (" + value + " == null)");
+    line("  break;");
+    method.scopes.push(new HashMap<>());
+    var local = declare(stmt.name, false);
+    line("final Object " + local.name + " = " + value + ";");
+    method.loops.add(loop);
+    block(stmt.body);
+    method.loops.remove(loop);
+    method.scopes.pop();
+    method.indent--;
+    line("}");
+    return null;
+  }
+
+  @Override
+  public Void visitStructStmt(Stmt.Struct stmt) {
+    if (method.function == null && method.scopes.isEmpty()) {
+      line("globals.define(" + symbol(stmt.name) + ", " + structure(stmt) + ");");
+      return null;
+    }
+    var local = declare(stmt.name, false);
+    line(declaration(local, "final Object") + " = " + structure(stmt) + ";");
+    return null;
+  }
+
+  // the statements of a block whose value is not used
+  private void block(Expr.Block block) {
+    method.scopes.push(new HashMap<>());
+    for (var statement : block.statements) {
+      execute(statement);
+    }
+    if (block.returnedValue.isPresent())
+      evaluate(block.returnedValue.get());
+    method.scopes.pop();
+  }
+
+  @Override
+  public Value visitBlockExpr(Expr.Block expr) {
+    String result = null;
+    if (expr.returnedValue.isPresent()) {
+      result = fresh("t");
+      line("Object " + result + ";");
+    }
+    line("{");
+    method.indent++;
+    method.scopes.push(new HashMap<>());
+    for (var statement : expr.statements) {
+      execute(statement);
+    }
+    if (result != null)
+      line(result + " = " + object(evaluate(expr.returnedValue.get())) + ";");
+    method.scopes.pop();
+    method.indent--;
+    line("}");
+    return result == null ? UNIT : new Value(result, 'O');
+  }
+
+  @Override
+  public Value visitIfExpr(Expr.If expr) {
+    var condition = condition(evaluate(expr.condition), expr.proven, expr.ifToken,
+        "La condition d'un `si` doit être un booléen.");
+    var result = fresh("t");
+    line("Object " + result + ";");
+    line("if (" + condition + ") {");
+    method.indent++;
+    line(result + " = " + object(evaluate(expr.thenBranch)) + ";");
+    method.indent--;
+    line("} else {");
+    method.indent++;
+    line(result + " = " + (expr.elseBranch.isPresent() ? object(evaluate(expr.elseBranch.get())) : UNIT.code) + ";");
+    method.indent--;
+    line("}");
+    return new Value(result, 'O');
+  }
+
+  private String condition(Value value, boolean proven, Token token, String message) {
+    if (value.kind == 'Z')
+      return value.code;
+    if (proven)
+      return "(boolean) " + value.code;
+    return temp("boolean", "condition(" + value.code + ", " + token(token) + ", " + string(message) + ")");
+  }
+
+  @Override
+  public Value visitLogicalExpr(Expr.Logical expr) {
+    var result = fresh("t");
+    var left = evaluate(expr.left);
+    var message = "L'opérande gauche de l'operateur logique `" + expr.operator.lexeme + "` doit être un booléen";
+    line("boolean " + result + " = " + (left.kind == 'Z' || expr.proven ? bool(left)
+        : "condition(" + object(left) + ", " + token(expr.operator) + ", " + string(message) + ")") + ";");
+    line("if (" + (expr.operator.type == TokenType.OR ? "!" : "") + result + ") {");
+    method.indent++;
+    var right = evaluate(expr.right);
+    message = "L'opérande droite de l'operateur logique `" + expr.operator.lexeme + "` doit être un booléen";
+    line(result + " = " + (right.kind == 'Z' || expr.proven ? bool(right)
+        : "condition(" + object(right) + ", " + token(expr.operator) + ", " + string(message) + ")") + ";");
+    method.indent--;
+    line("}");
+    return new Value(result, 'Z');
+  }
+
+  @Override
+  public Value visitBinaryExpr(Expr.Binary expr) {
+    var left = evaluate(expr.left);
+    var right = evaluate(expr.right);
+    var operator = expr.operator;
+
+    if (expr.operands == Type.Kind.ENTIER) {
+      var l = integer(left);
+      var r = integer(right);
+      switch (operator.type) {
+        case PLUS:
+          return value("int", "add(" + token(operator) + ", " + l + ", " + r + ")", 'I');
+        case MINUS:
+          return value("int", "subtract(" + token(operator) + ", " + l + ", " + r + ")", 'I');
+        case STAR:
+          return value("int", "multiply(" + token(operator) + ", " + l + ", " + r + ")", 'I');
+        case SLASH:
+          return value("int", "divide(" + token(operator) + ", " + l + ", " + r + ")", 'I');
+        case PERCENT:
+          return value("int", "remainder(" + token(operator) + ", " + l + ", " + r + ")", 'I');
+        case AMPERSAND:
+        case BITWISE_OR:
+          return value("int", l + " " + operator.lexeme + " " + r, 'I');
+        default:
+          return value("boolean", l + " " + operator.lexeme + " " + r, 'Z');
+      }
+    }
+    if (expr.operands == Type.Kind.FLOTTANT) {
+      var l = floating(left);
+      var r = floating(right);
+      switch (operator.type) {
+        case EQUAL_EQUAL:
+          return value("boolean", "Double.doubleToLongBits(" + l + ") == Double.doubleToLongBits(" + r + ")", 'Z');
+        case BANG_EQUAL:
+          return value("boolean", "Double.doubleToLongBits(" + l + ") != Double.doubleToLongBits(" + r + ")", 'Z');
+        case GREATER:
+        case GREATER_EQUAL:
+        case LESS:
+        case LESS_EQUAL:
+          return value("boolean", l + " " + operator.lexeme + " " + r, 'Z');
+        default:
+          return value("double", l + " " + operator.lexeme + " " + r, 'D');
+      }
+    }
+    return value("Object", "Operations.binary(" + token(operator) + ", " + object(left) + ", " + object(right)
+        + ", " + untyped(expr.left) + ", " + untyped(expr.right) + ")", 'O');
+  }
+
+  private static boolean untyped(Expr expr) {
+    return expr instanceof Expr.Literal && ((Expr.Literal) expr).untyped;
+  }
+
+  @Override
+  public Value visitUnaryExpr(Expr.Unary expr) {
+    var right = evaluate(expr.right);
+    if (expr.operand == Type.Kind.ENTIER)
+      return expr.operator.type == TokenType.MINUS
+          ? value("int", "negate(" + token(expr.operator) + ", " + integer(right) + ")", 'I')
+          : value("int", "~" + integer(right), 'I');
+    if (expr.operand == Type.Kind.FLOTTANT)
+      return value("double", "-" + floating(right), 'D');
+    if (expr.operand == Type.Kind.BOOL)
+      return value("boolean", "!" + bool(right), 'Z');
+    return value("Object", "Operations.unary(" + token(expr.operator) + ", " + object(right) + ")", 'O');
+  }
+
+  @Override
+  public Value visitCallExpr(Expr.Call expr) {
+    if (expr.intrinsic != null)
+      return intrinsic(expr);
+
+    // a call to a top level function with the right number of arguments
+    // calls its method
+    if (expr.callee instanceof Expr.Variable) {
+      var name = ((Expr.Variable) expr.callee).name;
+      var function = lookUp(method, name) == null ? declarations.get(name.symbol) : null;
+      if (function != null && function.params.size() == expr.arguments.size()) {
+        var arguments = new StringBuilder();
+        for (var argument : expr.arguments) {
+          arguments.append(arguments.length() > 0 ? ", " : "").append(object(evaluate(argument)));
+        }
+        return value("Object", method(functions.get(name.symbol)) + "(" + arguments + ")", 'O');
+      }
+    }
+
+    var callee = object(evaluate(expr.callee));
+    var arguments = new StringBuilder();
+    for (var argument : expr.arguments) {
+      arguments.append(arguments.length() > 0 ? ", " : "").append(object(evaluate(argument)));
+    }
+    if (expr.arguments.size() <= 4)
+      return value("Object", "Operations.call" + expr.arguments.size() + "(interpreter, " + token(expr.paren) + ", "
+          + callee + (arguments.length() > 0 ? ", " : "") + arguments + ")", 'O');
+    return value("Object", "Operations.call(interpreter, " + token(expr.paren) + ", " + callee + ", Arrays.asList("
+        + arguments + "))", 'O');
+  }
+
+  // a math function on the unboxed arguments, like Interpreter.intrinsic
+  private Value intrinsic(Expr.Call expr) {
+    var intrinsic = expr.intrinsic;
+    var values = new ArrayList<Value>();
+    for (var argument : expr.arguments) {
+      values.add(evaluate(argument));
+    }
+    var x = values.get(0);
+    var y = intrinsic.arity == 2 ? values.get(1) : null;
+
+    if (expr.operands == Type.Kind.FLOTTANT)
+      return value("double", intrinsic.java + "(" + floating(x) + (y != null ? ", " + floating(y) : "") + ")", 'D');
+    if (expr.operands == Type.Kind.ENTIER && y == null)
+      return value("int", "Maths.abs(" + token(expr.paren) + ", " + integer(x) + ")", 'I');
+    if (expr.operands == Type.Kind.ENTIER)
+      return value("int", intrinsic.java + "(" + integer(x) + ", " + integer(y) + ")", 'I');
+    var call = "Maths.Intrinsic." + intrinsic.name() + ".call(" + token(expr.paren) + ", " + object(x);
+    if (y != null)
+      call += ", " + object(y) + ", " + untyped(expr.arguments.get(0)) + ", " + untyped(expr.arguments.get(1));
+    return value("Object", call + ")", 'O');
+  }
+
+  @Override
+  public Value visitGroupingExpr(Expr.Grouping expr) {
+    return evaluate(expr.expression);
+  }
+
+  @Override
+  public Value visitLiteralExpr(Expr.Literal expr) {
+    var value = expr.value;
+    if (value instanceof Integer)
+      return new Value("(" + value + ")", 'I');
+    if (value instanceof Double)
+      return new Value("(" + value + "d)", 'D');
+    if (value instanceof Boolean)
+      return new Value(value.toString(), 'Z');
+    if (value instanceof Long)
+      return new Value(constant("Long", "Long.valueOf(" + value + "L)"), 'O');
+    if (value instanceof Entier) {
+      var entier = (Entier) value;
+      return new Value(constant("Object", "Entier.Largeur." + entier.largeur.name() + ".box(" + entier.value + "L)"),
+          'O');
+    }
+    return new Value(constant("Chaine", "new Chaine(" + string(value.toString()) + ")"), 'O');
+  }
+
+  @Override
+  public Value visitTupleExpr(Expr.Tuple expr) {
+    if (expr.expressions.isEmpty())
+      return UNIT;
+    var items = new StringBuilder();
+    for (var item : expr.expressions) {
+      items.append(items.length() > 0 ? ", " : "").append(object(evaluate(item)));
+    }
+    return value("Tuple", "Tuple.of(" + items + ")", 'O');
+  }
+
+  @Override
+  public Value visitVariableExpr(Expr.Variable expr) {
+    var local = lookUp(method, expr.name);
+    if (local != null)
+      return value("Object", local.read(), 'O');
+    if (functions.containsKey(expr.name.symbol))
+      return new Value(functions.get(expr.name.symbol), 'O');
+    if (structures.containsKey(expr.name.symbol))
+      return new Value(structures.get(expr.name.symbol), 'O');
+    return value("Object", "globals.get(" + token(expr.name) + ")", 'O');
+  }
+
+  @Override
+  public Value visitIndexExpr(Expr.Index expr) {
+    var object = object(evaluate(expr.object));
+    var index = object(evaluate(expr.index));
+    return value("Object", "Operations.index(" + token(expr.bracket) + ", " + object + ", " + index + ")", 'O');
+  }
+
+  @Override
+  public Value visitArrayExpr(Expr.Array expr) {
+    var vec = temp("Vec", "new Vec()");
+    for (var element : expr.elements) {
+      line(vec + ".push(" + object(evaluate(element)) + ");");
+    }
+    return new Value(vec, 'O');
+  }
+
+  @Override
+  public Value visitRepeatExpr(Expr.Repeat expr) {
+    var value = object(evaluate(expr.value));
+    var count = object(evaluate(expr.count));
+    return value("Vec", "Vec.filled(" + value + ", Operations.repeatCount(" + token(expr.bracket) + ", " + count
+        + "))", 'O');
+  }
+
+  @Override
+  public Value visitGetExpr(Expr.Get expr) {
+    var object = object(evaluate(expr.object));
+    return value("Object", site("FieldSite", token(expr.name)) + ".get(Operations.instance(" + object + ", "
+        + token(expr.name) + "))", 'O');
+  }
+
+  @Override
+  public Value visitConstructExpr(Expr.Construct expr) {
+    var names = new StringBuilder();
+    for (var field : expr.fields) {
+      names.append(", ").append(token(field));
+    }
+    var site = site("ConstructSite", token(expr.structure.name) + names);
+    var layout = temp("Structure.Layout", site + ".layout(" + object(evaluate(expr.structure)) + ")");
+    var fields = temp("Object[]", "new Object[" + expr.values.size() + "]");
+    for (int i = 0; i < expr.values.size(); i++) {
+      line(fields + "[" + layout + ".slots[" + i + "]] = " + object(evaluate(expr.values.get(i))) + ";");
+    }
+    return value("Instance", "new Instance(" + layout + ".structure, " + fields + ")", 'O');
+  }
+
+  private Value evaluate(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private void execute(Stmt statement) {
+    if (suspends(statement))
+      suspend(statement);
+    else
+      statement.accept(this);
+  }
+
+  private Local declare(Token name, boolean mutable) {
+    var field = method.hoisted.contains(method.scopes.peek());
+    var java = name("v", name);
+    var local = new Local(name, field ? "g." + java : java, mutable, mutable && cells.contains(name), field);
+    method.scopes.peek().put(name.symbol, local);
+    return local;
+  }
+
+  private static Local lookUp(Method method, Token name) {
+    for (var scope : method.scopes) {
+      var local = scope.get(name.symbol);
+      if (local != null)
+        return local;
+    }
+    return null;
+  }
+
+  private String returned(Value value) {
+    var function = method.function;
+    var object = object(value);
+    if (function == null || function.returnType.isEmpty() || function.returnType.get().runtimeClass() == null)
+      return object;
+    var result = temp("Object", object);
+    line("if (!(" + admits(result, function.returnType.get()) + "))");
+    line("  throw new RuntimeError(" + token(function.name) + ", " + string("La fonction `" + function.name.lexeme
+        + "` doit renvoyer une valeur de type `" + function.returnType.get() + "`.") + ");");
+    return result;
+  }
+
+  // the same check as Type.admits
+  private static String admits(String value, Type type) {
+    if (type.kind == Type.Kind.ENTIER)
+      return "Entier.Largeur.of(" + value + ") == Entier.Largeur." + type.largeur.name();
+    return value + " instanceof " + type.runtimeClass().getSimpleName();
+  }
+
+  private String object(Value value) {
+    switch (value.kind) {
+      case 'I':
+        return "Integer.valueOf(" + value.code + ")";
+      case 'D':
+        return "Double.valueOf(" + value.code + ")";
+      case 'Z':
+        return "Boolean.valueOf(" + value.code + ")";
+      default:
+        return value.code;
+    }
+  }
+
+  private static String integer(Value value) {
+    return value.kind == 'I' ? value.code : "(int) " + value.code;
+  }
+
+  private static String floating(Value value) {
+    return value.kind == 'D' ? value.code : "(double) " + value.code;
+  }
+
+  private static String bool(Value value) {
+    return value.kind == 'Z' ? value.code : "(boolean) " + value.code;
+  }
+
+  private Value value(String type, String code, char kind) {
+    return new Value(temp(type, code), kind);
+  }
+
+  private String temp(String type, String code) {
+    var name = fresh("t");
+    line("final " + type + " " + name + " = " + code + ";");
+    return name;
+  }
+
+  private String constant(String type, String code) {
+    var name = fresh("K");
+    fields.append("  static final ").append(type).append(' ').append(name).append(" = ").append(code).append(";\n");
+    return name;
+  }
+
+  private String site(String type, String arguments) {
+    var name = fresh("P");
+    fields.append("  static final ").append(type).append(' ').append(name).append(" = new ").append(type)
+        .append("(").append(arguments).append(");\n");
+    return name;
+  }
+
+  private String token(Token token) {
+    if (token == null)
+      return "null";
+    var name = tokens.get(token);
+    if (name == null) {
+      name = fresh("T");
+      tokens.put(token, name);
+      fields.append("  static final Token ").append(name).append(" = new Token(TokenType.").append(token.type)
+          .append(", ").append(string(token.lexeme)).append(", ").append(token.line).append(", ")
+          .append(token.column).append(");\n");
+    }
+    return name;
+  }
+
+  private String symbol(Token name) {
+    return symbols.computeIfAbsent(name.lexeme,
+        lexeme -> constant("Symbol", "Symbol.of(" + string(lexeme) + ")"));
+  }
+
+  private static String method(String name) {
+    return "f" + name.substring(1);
+  }
+
+  // a fresh Java identifier, with the rouille name when it is ascii
+  private String name(String prefix, Token token) {
+    var name = token.lexeme.replaceAll("[^A-Za-z0-9_]", "");
+    return prefix + (names++) + (name.isEmpty() ? "" : "_" + name);
+  }
+
+  private String fresh(String prefix) {
+    return prefix + (names++);
+  }
+
+  private void line(String code) {
+    method.code.append("  ".repeat(method.indent)).append(code).append('\n');
+  }
+
+  static String string(String value) {
+    var builder = new StringBuilder("\"");
+    for (var c : value.toCharArray()) {
+      switch (c) {
+        case '"':
+          builder.append("\\\"");
+          break;
+        case '\\':
+          builder.append("\\\\");
+          break;
+        case '\n':
+          builder.append("\\n");
+          break;
+        case '\r':
+          builder.append("\\r");
+          break;
+        case '\t':
+          builder.append("\\t");
+          break;
+        default:
+          if (c < 0x20 || c > 0x7e)
+            builder.append(String.format("\\u%04x", (int) c));
+          else
+            builder.append(c);
+      }
+    }
+    return builder.append('"').toString();
+  }
+}
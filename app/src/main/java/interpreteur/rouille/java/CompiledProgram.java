@@ -0,0 +1,156 @@
+package interpreteur.rouille.java;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// The base class of the programs compiled by `rouille build` (see
+// CodeGenerator): the globals and the natives, and the operations of the
+// generated code that are not in Operations.
+abstract class CompiledProgram {
+  // the natives are called with an interpreter, which they fork for their
+  // tasks; the compiled functions don't use it
+  static final Interpreter interpreter = new Interpreter(Map.of());
+  static final Environment globals = interpreter.globals;
+
+  // Runs a program like `rouille script`, and returns the exit code.
+  static int run(String[] args, Supplier<Object> programme) {
+    var arguments = new Vec();
+    for (var argument : args) {
+      arguments.push(new Chaine(argument));
+    }
+    globals.define("arguments", arguments);
+    try {
+      Interpreter.onStack(programme);
+      return 0;
+    } catch (RuntimeError e) {
+      System.out.println(Diagnostic.of(e));
+      return 70;
+    } catch (StackOverflowError e) {
+      System.out.println(Diagnostic.of(new RuntimeError(null, "La pile d'appels est pleine.")));
+      return 70;
+    }
+  }
+
+  abstract static class Function implements Callable {
+    private final String name;
+    private final int arity;
+
+    Function(String name, int arity) {
+      this.name = name;
+      this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+      return arity;
+    }
+
+    @Override
+    public String toString() {
+      return "<fn " + name + ">";
+    }
+  }
+
+  // A field access, with the slot of the last structure seen like
+  // Expr.Get's cache.
+  static final class FieldSite {
+    private final Token name;
+    private Structure.Field cache;
+
+    FieldSite(Token name) {
+      this.name = name;
+    }
+
+    private Structure.Field field(Instance instance) {
+      var field = cache;
+      if (field == null || field.structure != instance.structure) {
+        field = instance.structure.field(name);
+        cache = field;
+      }
+      return field;
+    }
+
+    Object get(Instance instance) {
+      return instance.fields[field(instance).slot];
+    }
+
+    void set(Instance instance, Object value) {
+      instance.fields[field(instance).slot] = value;
+    }
+  }
+
+  static final class ConstructSite {
+    private final Token name;
+    private final List<Token> fields;
+    private Structure.Layout cache;
+
+    ConstructSite(Token name, Token... fields) {
+      this.name = name;
+      this.fields = List.of(fields);
+    }
+
+    Structure.Layout layout(Object value) {
+      var structure = Operations.structure(value, name);
+      var layout = cache;
+      if (layout == null || layout.structure != structure) {
+        layout = structure.layout(name, fields);
+        cache = layout;
+      }
+      return layout;
+    }
+  }
+
+  static boolean condition(Object value, Token token, String message) {
+    if (!(value instanceof Boolean))
+      throw new RuntimeError(token, message);
+    return (boolean) value;
+  }
+
+  // the bounds and the step of a `pour`
+  static int bound(Token forToken, Object value) {
+    if (value instanceof Integer)
+      return (int) value;
+    return (int) Operations.bound(forToken, Entier.Largeur.I32, value);
+  }
+
+  static long count(Token forToken, int start, int end, int step, boolean inclusive) {
+    return Operations.count(forToken, Entier.Largeur.I32, start, end, step, inclusive);
+  }
+
+  // i32, the same errors as Operations.integer
+  static int add(Token operator, int left, int right) {
+    var result = left + right;
+    if (((left ^ result) & (right ^ result)) < 0)
+      throw Entier.overflow(operator, Entier.Largeur.I32);
+    return result;
+  }
+
+  static int subtract(Token operator, int left, int right) {
+    var result = left - right;
+    if (((left ^ right) & (left ^ result)) < 0)
+      throw Entier.overflow(operator, Entier.Largeur.I32);
+    return result;
+  }
+
+  static int multiply(Token operator, int left, int right) {
+    var result = (long) left * right;
+    if ((int) result != result)
+      throw Entier.overflow(operator, Entier.Largeur.I32);
+    return (int) result;
+  }
+
+  static int divide(Token operator, int left, int right) {
+    return left / (int) Entier.division(operator, Entier.Largeur.I32, left, right);
+  }
+
+  static int remainder(Token operator, int left, int right) {
+    return left % (int) Entier.division(operator, Entier.Largeur.I32, left, right);
+  }
+
+  static int negate(Token operator, int value) {
+    if (value == Integer.MIN_VALUE)
+      throw Entier.overflow(operator, Entier.Largeur.I32);
+    return -value;
+  }
+}
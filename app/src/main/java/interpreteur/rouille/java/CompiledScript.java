@@ -0,0 +1,105 @@
+package interpreteur.rouille.java;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+// A scanned, parsed, resolved and checked program. The nodes and the
+// resolved distances are only read when it runs (the nodes' caches are
+// swapped atomically), so it is shared by every execution.
+//
+// Each execution takes an interpreter from a pool: its globals start from
+// the natives, shared by all the executions, plus the bindings. An
+// interpreter whose script started tasks (`lance`) is dropped instead of
+// going back to the pool, since the tasks may still use its globals, and so
+// is one whose execution failed.
+public final class CompiledScript {
+  private final List<Stmt> statements;
+  private final Map<Object, Integer> locals;
+  private final ConcurrentLinkedQueue<Interpreter> pool = new ConcurrentLinkedQueue<>();
+
+  CompiledScript(List<Stmt> statements, Map<Object, Integer> locals) {
+    this.statements = List.copyOf(statements);
+    this.locals = Map.copyOf(locals);
+  }
+
+  public Object execute(Map<String, ?> bindings, Consumer<String> output) throws RouilleException {
+    return execute(bindings, output, Budget.UNLIMITED);
+  }
+
+  // Runs the script's `principale` with the bindings as immutable globals
+  // (a List becomes a Vec), within `budget`, and returns its result: `()` is
+  // null, a Chaine is a String, and the other values are returned as they
+  // are. The lines printed by the script go to `output`, which must be thread
+  // safe if the script starts tasks.
+  public Object execute(Map<String, ?> bindings, Consumer<String> output, Budget budget)
+      throws RouilleException {
+    return run(bindings, output, budget, null);
+  }
+
+  // The same, with the relative paths of the files the script reads resolved
+  // against `directory` rather than the working directory of the JVM.
+  public Object execute(Map<String, ?> bindings, Consumer<String> output, Budget budget, Path directory)
+      throws RouilleException {
+    return run(bindings, output, budget, directory);
+  }
+
+  private Object run(Map<String, ?> bindings, Consumer<String> output, Budget budget, Path directory)
+      throws RouilleException {
+    // the script was compiled with its calls to them as intrinsics
+    for (var name : bindings.keySet()) {
+      if (Maths.Intrinsic.of(Symbol.of(name)) != null)
+        throw new IllegalArgumentException("`" + name + "` est une fonction mathématique, elle ne peut pas être"
+            + " redéfinie.");
+    }
+    var interpreter = pool.poll();
+    if (interpreter == null)
+      interpreter = new Interpreter(locals);
+    interpreter.reset(output, budget, directory);
+    for (var binding : bindings.entrySet()) {
+      interpreter.globals.define(binding.getKey(), value(binding.getKey(), binding.getValue()));
+    }
+
+    Object result;
+    try {
+      var running = interpreter;
+      result = Interpreter.onStack(() -> running.interpret(statements));
+    } catch (RuntimeError e) {
+      throw new RouilleException(List.of(Diagnostic.of(e)));
+    } catch (RuntimeException e) {
+      // a bug of the interpreter rather than of the script
+      throw new RouilleException(List.of(Diagnostic.of(new RuntimeError(null, "Erreur interne : " + e))), e);
+    }
+    // only an interpreter whose run ended goes back: after an error or an
+    // interruption, its thread may still be running the script
+    if (!interpreter.spawnedTasks())
+      pool.offer(interpreter);
+    return result(result);
+  }
+
+  private static Object value(String name, Object value) {
+    if (value instanceof String)
+      return new Chaine((String) value);
+    if (value instanceof List) {
+      var vec = new Vec();
+      for (var element : (List<?>) value) {
+        vec.push(value(name, element));
+      }
+      return vec;
+    }
+    if (value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Boolean)
+      return value;
+    throw new IllegalArgumentException("La valeur de `" + name + "` (" + value.getClass().getName()
+        + ") ne peut pas être passée à un script.");
+  }
+
+  private static Object result(Object value) {
+    if (value == Tuple.UNIT)
+      return null;
+    if (value instanceof Chaine)
+      return value.toString();
+    return value;
+  }
+}
@@ -0,0 +1,625 @@
+package interpreteur.rouille.java;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+// `lis_csv(chemin, schema)`: the columns of a CSV file named in the schema
+// ("ville: Chaine, population: entier, surface: flottant"), as a Dico from
+// their names to vecteurs. An entier or flottant column is an int[] or a
+// double[] vecteur; a Chaine column holds a single Chaine per distinct
+// value. The other columns are skipped, not parsed.
+//
+// The file is mapped (see Fichiers) and split at line ends into chunks
+// parsed in parallel on the pool of Parallel. A chunk is read in one pass
+// over its bytes that finds the commas and parses the numbers as it goes,
+// with no String per field: only the distinct values of a Chaine column
+// are decoded, once their chunk is done.
+//
+// A field may be quoted ("a, b" or "dit ""oui"""), but not span lines: the
+// chunks are split at any line end.
+class Csv {
+  // a chunk per worker, but none smaller than this
+  private static final long MIN_CHUNK = 1 << 22;
+  // nor larger than what a single buffer maps
+  private static final long MAX_CHUNK = 1 << 30;
+
+  private static final int ENTIER = 0, FLOTTANT = 1, CHAINE = 2;
+
+  // 2^53: the largest mantissa a double holds exactly
+  private static final long EXACT = 1L << 53;
+  private static final double[] POWERS = new double[23];
+
+  static {
+    POWERS[0] = 1;
+    for (int i = 1; i < POWERS.length; i++) {
+      POWERS[i] = POWERS[i - 1] * 10;
+    }
+  }
+
+  private static final class Column {
+    final String name;
+    final int kind;
+
+    Column(String name, int kind) {
+      this.name = name;
+      this.kind = kind;
+    }
+  }
+
+  @Native("lis_csv")
+  static Dico lisCsv(Interpreter interpreter, Chaine chemin, Chaine schema) {
+    var path = interpreter.path(chemin);
+    var columns = schema(schema.toString());
+    var size = Fichiers.size(path);
+
+    // which column each field of a line goes to, -1 when it is skipped
+    var start = lineEnd(path, 0, size);
+    var header = fields(path, start);
+    var targets = new int[header.size()];
+    Arrays.fill(targets, -1);
+    for (int c = 0; c < columns.length; c++) {
+      var field = header.indexOf(columns[c].name);
+      if (field < 0)
+        throw new RuntimeError(null, "La colonne `" + columns[c].name + "` n'est pas dans `" + path + "`.");
+      targets[field] = c;
+    }
+
+    var bounds = bounds(path, start, size);
+    var chunks = new Chunk[bounds.length - 1];
+    if (chunks.length == 1)
+      chunks[0] = parse(path, bounds[0], bounds[1], columns, targets);
+    else
+      Parallel.pool.invoke(new Task(path, bounds, columns, targets, chunks, 0, chunks.length));
+
+    int rows = 0;
+    for (var chunk : chunks) {
+      rows = Math.addExact(rows, chunk.rows);
+    }
+    interpreter.allocate(null, (long) rows * columns.length);
+
+    var table = new Dico();
+    for (int c = 0; c < columns.length; c++) {
+      table.put(new Chaine(columns[c].name), column(chunks, c, columns[c].kind, rows));
+    }
+    return table;
+  }
+
+  // "nom: type, ..."
+  private static Column[] schema(String schema) {
+    var columns = new ArrayList<Column>();
+    for (var declaration : schema.split(",")) {
+      var parts = declaration.split(":");
+      var name = parts[0].trim();
+      if (parts.length != 2 || name.isEmpty())
+        throw new RuntimeError(null, "Le schéma de `lis_csv` est une liste de `nom: type` séparés par des virgules, "
+            + "pas `" + declaration.trim() + "`.");
+      var type = parts[1].trim();
+      int kind;
+      switch (type) {
+        case "entier":
+        case "i32":
+          kind = ENTIER;
+          break;
+        case "flottant":
+          kind = FLOTTANT;
+          break;
+        case "Chaine":
+          kind = CHAINE;
+          break;
+        default:
+          throw new RuntimeError(null, "La colonne `" + name + "` est de type `" + type
+              + "`, `lis_csv` ne lit que des `entier`, des `flottant` et des `Chaine`.");
+      }
+      for (var column : columns) {
+        if (column.name.equals(name))
+          throw new RuntimeError(null, "La colonne `" + name + "` est deux fois dans le schéma de `lis_csv`.");
+      }
+      columns.add(new Column(name, kind));
+    }
+    return columns.toArray(new Column[0]);
+  }
+
+  // the names of the fields, on the first line
+  private static List<String> fields(Path path, long end) {
+    var line = new byte[(int) end];
+    Fichiers.map(path, 0, end).get(line);
+    var text = new String(line, StandardCharsets.UTF_8).stripTrailing();
+    var fields = new ArrayList<String>();
+    var field = new StringBuilder();
+    var quoted = false;
+    for (int i = 0; i < text.length(); i++) {
+      var c = text.charAt(i);
+      if (c == '"' && quoted && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+        field.append('"');
+        i++;
+      } else if (c == '"') {
+        quoted = !quoted;
+      } else if (c == ',' && !quoted) {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  // The position after the first '\n' from `from`, or the end of the file.
+  private static long lineEnd(Path path, long from, long size) {
+    for (long window = 1 << 16; from < size; window *= 2) {
+      var bytes = Fichiers.map(path, from, Math.min(window, size - from));
+      for (int i = 0; i < bytes.limit(); i++) {
+        if (bytes.get(i) == '\n')
+          return from + i + 1;
+      }
+      if (from + bytes.limit() == size)
+        break;
+    }
+    return size;
+  }
+
+  // the starts of the chunks, then the end of the file
+  private static long[] bounds(Path path, long start, long size) {
+    var data = size - start;
+    var count = (int) Math.max((data + MAX_CHUNK - 1) / MAX_CHUNK, Math.min(Parallel.parallelism, data / MIN_CHUNK));
+    count = Math.max(1, count);
+    var bounds = new long[count + 1];
+    bounds[0] = start;
+    for (int i = 1; i < count; i++) {
+      bounds[i] = Math.max(bounds[i - 1], lineEnd(path, start + data * i / count - 1, size));
+    }
+    bounds[count] = size;
+    return bounds;
+  }
+
+  private static final class Task extends RecursiveAction {
+    private final Path path;
+    private final long[] bounds;
+    private final Column[] columns;
+    private final int[] targets;
+    private final Chunk[] chunks;
+    private final int from;
+    private final int to;
+
+    Task(Path path, long[] bounds, Column[] columns, int[] targets, Chunk[] chunks, int from, int to) {
+      this.path = path;
+      this.bounds = bounds;
+      this.columns = columns;
+      this.targets = targets;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        chunks[from] = parse(path, bounds[from], bounds[to], columns, targets);
+        return;
+      }
+      var middle = (from + to) >>> 1;
+      invokeAll(new Task(path, bounds, columns, targets, chunks, from, middle),
+          new Task(path, bounds, columns, targets, chunks, middle, to));
+    }
+  }
+
+  // The columns of the lines of a chunk. A Chaine column holds the codes of
+  // its values in the dictionary of the chunk.
+  private static final class Chunk {
+    final int[][] ints;
+    final double[][] doubles;
+    final Strings[] strings;
+    int rows;
+
+    Chunk(Column[] columns, int capacity) {
+      ints = new int[columns.length][];
+      doubles = new double[columns.length][];
+      strings = new Strings[columns.length];
+      for (int c = 0; c < columns.length; c++) {
+        if (columns[c].kind == FLOTTANT)
+          doubles[c] = new double[capacity];
+        else
+          ints[c] = new int[capacity];
+        if (columns[c].kind == CHAINE)
+          strings[c] = new Strings();
+      }
+    }
+
+    // makes room for one more line
+    void reserve() {
+      for (int c = 0; c < ints.length; c++) {
+        if (ints[c] != null && ints[c].length == rows)
+          ints[c] = Arrays.copyOf(ints[c], rows + (rows >> 1) + 16);
+        if (doubles[c] != null && doubles[c].length == rows)
+          doubles[c] = Arrays.copyOf(doubles[c], rows + (rows >> 1) + 16);
+      }
+    }
+  }
+
+  private static Chunk parse(Path path, long from, long to, Column[] columns, int[] targets) {
+    var bytes = Fichiers.map(path, from, to - from);
+    // about 16 bytes per field
+    var chunk = new Chunk(columns, (int) Math.min(Integer.MAX_VALUE - 8, (to - from) / (16 * targets.length) + 16));
+    new Tokenizer(path, from, bytes, chunk, columns, targets).lines();
+    return chunk;
+  }
+
+  private static final class Tokenizer {
+    private final Path path;
+    private final long base;
+    private final ByteBuffer bytes;
+    private final int limit;
+    private final Chunk chunk;
+    private final Column[] columns;
+    private final int[] targets;
+    private int pos;
+
+    Tokenizer(Path path, long base, ByteBuffer bytes, Chunk chunk, Column[] columns, int[] targets) {
+      this.path = path;
+      this.base = base;
+      this.bytes = bytes;
+      this.limit = bytes.limit();
+      this.chunk = chunk;
+      this.columns = columns;
+      this.targets = targets;
+    }
+
+    void lines() {
+      while (pos < limit) {
+        // empty lines are skipped
+        if (bytes.get(pos) == '\n') {
+          pos++;
+          continue;
+        }
+        if (bytes.get(pos) == '\r' && pos + 1 < limit && bytes.get(pos + 1) == '\n') {
+          pos += 2;
+          continue;
+        }
+
+        chunk.reserve();
+        for (int field = 0; field < targets.length; field++) {
+          if (field > 0) {
+            if (pos >= limit || bytes.get(pos) != ',')
+              throw error(pos, "il manque des champs (" + field + " au lieu de " + targets.length + ").");
+            pos++;
+          }
+          var c = targets[field];
+          if (c < 0)
+            skip();
+          else if (columns[c].kind == ENTIER)
+            chunk.ints[c][chunk.rows] = integer(c);
+          else if (columns[c].kind == FLOTTANT)
+            chunk.doubles[c][chunk.rows] = floating(c);
+          else
+            chunk.ints[c][chunk.rows] = string(c);
+        }
+
+        if (pos < limit && bytes.get(pos) == ',')
+          throw error(pos, "il y a plus de " + targets.length + " champs.");
+        if (pos < limit && bytes.get(pos) == '\r')
+          pos++;
+        if (pos < limit && bytes.get(pos) != '\n')
+          throw error(pos, "un champ se termine par `" + (char) bytes.get(pos) + "`.");
+        pos++;
+        chunk.rows++;
+      }
+    }
+
+    private static boolean isEnd(byte b) {
+      return b == ',' || b == '\n' || b == '\r';
+    }
+
+    private void skip() {
+      if (pos < limit && bytes.get(pos) == '"') {
+        quoted();
+        return;
+      }
+      while (pos < limit && !isEnd(bytes.get(pos))) {
+        pos++;
+      }
+    }
+
+    private int integer(int c) {
+      var start = pos;
+      if (pos < limit && bytes.get(pos) == '"')
+        return parseInt(c, start, quoted());
+
+      var negative = pos < limit && bytes.get(pos) == '-';
+      if (pos < limit && (negative || bytes.get(pos) == '+'))
+        pos++;
+      var digits = pos;
+      long value = 0;
+      while (pos < limit) {
+        var digit = bytes.get(pos) - '0';
+        if (digit < 0 || digit > 9)
+          break;
+        value = value * 10 + digit;
+        if (value > 1L << 31)
+          throw error(start, "`" + field(start) + "` (colonne `" + columns[c].name + "`) dépasse un `entier`.");
+        pos++;
+      }
+      if (pos == digits || pos < limit && !isEnd(bytes.get(pos)))
+        throw notA(c, start, "un `entier`");
+      value = negative ? -value : value;
+      if (value > Integer.MAX_VALUE)
+        throw error(start, "`" + field(start) + "` (colonne `" + columns[c].name + "`) dépasse un `entier`.");
+      return (int) value;
+    }
+
+    // Decimals of up to 19 digits whose mantissa fits in 53 bits and whose
+    // power of ten is exact are a single multiplication or division, which
+    // rounds correctly (Clinger's fast path). The others go through
+    // Double.parseDouble.
+    private double floating(int c) {
+      var start = pos;
+      if (pos < limit && bytes.get(pos) == '"')
+        return parseDouble(c, start, quoted());
+
+      var negative = pos < limit && bytes.get(pos) == '-';
+      if (pos < limit && (negative || bytes.get(pos) == '+'))
+        pos++;
+      long mantissa = 0;
+      int significant = 0, scale = 0;
+      var any = false;
+      var exact = true;
+      var point = false;
+      for (; pos < limit; pos++) {
+        var b = bytes.get(pos);
+        if (b == '.' && !point) {
+          point = true;
+          continue;
+        }
+        var digit = b - '0';
+        if (digit < 0 || digit > 9)
+          break;
+        any = true;
+        if (mantissa == 0 && digit == 0) {
+          if (point)
+            scale--;
+        } else if (significant < 19) {
+          mantissa = mantissa * 10 + digit;
+          significant++;
+          if (point)
+            scale--;
+        } else {
+          exact = false;
+        }
+      }
+      if (any && pos < limit && (bytes.get(pos) == 'e' || bytes.get(pos) == 'E')) {
+        pos++;
+        var negativeExponent = pos < limit && bytes.get(pos) == '-';
+        if (pos < limit && (negativeExponent || bytes.get(pos) == '+'))
+          pos++;
+        var digits = pos;
+        int exponent = 0;
+        while (pos < limit && bytes.get(pos) >= '0' && bytes.get(pos) <= '9') {
+          exponent = Math.min(exponent * 10 + bytes.get(pos) - '0', 100000);
+          pos++;
+        }
+        if (pos == digits)
+          any = false;
+        scale += negativeExponent ? -exponent : exponent;
+      }
+      if (pos < limit && !isEnd(bytes.get(pos)) || !any) {
+        // `nan`, `inf`...
+        while (pos < limit && !isEnd(bytes.get(pos))) {
+          pos++;
+        }
+        return parseDouble(c, start, text(start, pos));
+      }
+      if (!exact || mantissa >= EXACT || scale < -22 || scale > 22)
+        return parseDouble(c, start, text(start, pos));
+
+      var value = scale < 0 ? mantissa / POWERS[-scale] : mantissa * POWERS[scale];
+      return negative ? -value : value;
+    }
+
+    private int string(int c) {
+      if (pos < limit && bytes.get(pos) == '"')
+        return chunk.strings[c].code(quoted().getBytes(StandardCharsets.UTF_8));
+      var start = pos;
+      int hash = 0;
+      byte b;
+      while (pos < limit && !isEnd(b = bytes.get(pos))) {
+        hash = 31 * hash + b;
+        pos++;
+      }
+      return chunk.strings[c].code(bytes, start, pos, hash);
+    }
+
+    // the text of a quoted field, after which `pos` is
+    private String quoted() {
+      var start = pos;
+      var text = new ByteArray();
+      pos++;
+      while (true) {
+        if (pos >= limit || bytes.get(pos) == '\n')
+          throw error(start, "un champ entre guillemets doit se terminer sur sa ligne.");
+        var b = bytes.get(pos++);
+        if (b == '"' && pos < limit && bytes.get(pos) == '"') {
+          text.add(b);
+          pos++;
+        } else if (b == '"') {
+          return text.toString();
+        } else {
+          text.add(b);
+        }
+      }
+    }
+
+    private int parseInt(int c, int start, String text) {
+      try {
+        return Integer.parseInt(text);
+      } catch (NumberFormatException e) {
+        throw notA(c, start, "un `entier`");
+      }
+    }
+
+    private double parseDouble(int c, int start, String text) {
+      try {
+        return Double.parseDouble(text);
+      } catch (NumberFormatException e) {
+        throw notA(c, start, "un `flottant`");
+      }
+    }
+
+    private RuntimeError notA(int c, int start, String expected) {
+      return error(start, "`" + field(start) + "` (colonne `" + columns[c].name + "`) n'est pas " + expected + ".");
+    }
+
+    // the field from `start`, for the error messages
+    private String field(int start) {
+      var end = start;
+      while (end < limit && !isEnd(bytes.get(end))) {
+        end++;
+      }
+      return text(start, end);
+    }
+
+    private String text(int from, int to) {
+      var text = new byte[to - from];
+      bytes.get(from, text);
+      return new String(text, StandardCharsets.UTF_8);
+    }
+
+    // Counts the lines up to the error: only a failing read pays for it.
+    private RuntimeError error(int at, String message) {
+      var offset = base + at;
+      long line = 1;
+      for (long from = 0; from < offset; from += Fichiers.WINDOW) {
+        var window = Fichiers.map(path, from, Math.min(Fichiers.WINDOW, offset - from));
+        for (int i = 0; i < window.limit(); i++) {
+          if (window.get(i) == '\n')
+            line++;
+        }
+      }
+      return new RuntimeError(null, "Ligne " + line + " de `" + path + "` : " + message);
+    }
+  }
+
+  private static final class ByteArray {
+    private byte[] bytes = new byte[32];
+    private int length;
+
+    void add(byte b) {
+      if (length == bytes.length)
+        bytes = Arrays.copyOf(bytes, 2 * length);
+      bytes[length++] = b;
+    }
+
+    @Override
+    public String toString() {
+      return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+  }
+
+  // The distinct values of a Chaine column in a chunk, numbered in the order
+  // they are first seen: an open addressing table of their bytes.
+  private static final class Strings {
+    private int[] slots = new int[64];
+    private int[] hashes = new int[32];
+    private byte[][] values = new byte[32][];
+    private int size;
+
+    int code(ByteBuffer bytes, int from, int to, int hash) {
+      var mask = slots.length - 1;
+      for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+        var code = slots[slot] - 1;
+        if (code < 0) {
+          var value = new byte[to - from];
+          bytes.get(from, value);
+          return add(slot, value, hash);
+        }
+        if (hashes[code] == hash && equal(values[code], bytes, from, to))
+          return code;
+      }
+    }
+
+    int code(byte[] value) {
+      int hash = 0;
+      for (var b : value) {
+        hash = 31 * hash + b;
+      }
+      return code(ByteBuffer.wrap(value), 0, value.length, hash);
+    }
+
+    private static boolean equal(byte[] value, ByteBuffer bytes, int from, int to) {
+      if (value.length != to - from)
+        return false;
+      for (int i = 0; i < value.length; i++) {
+        if (value[i] != bytes.get(from + i))
+          return false;
+      }
+      return true;
+    }
+
+    private static int mix(int hash) {
+      return hash * 0x9E3779B9 >>> 7;
+    }
+
+    private int add(int slot, byte[] value, int hash) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, 2 * size);
+        hashes = Arrays.copyOf(hashes, 2 * size);
+      }
+      values[size] = value;
+      hashes[size] = hash;
+      slots[slot] = ++size;
+      if (size * 2 > slots.length) {
+        slots = new int[slots.length * 2];
+        var mask = slots.length - 1;
+        for (int code = 0; code < size; code++) {
+          var s = mix(hashes[code]) & mask;
+          while (slots[s] != 0) {
+            s = (s + 1) & mask;
+          }
+          slots[s] = code + 1;
+        }
+      }
+      return size - 1;
+    }
+  }
+
+  // The column `c` of all the chunks. A single chunk gives its arrays as
+  // they are.
+  private static Vec column(Chunk[] chunks, int c, int kind, int rows) {
+    if (kind == FLOTTANT) {
+      var values = chunks.length == 1 ? chunks[0].doubles[c] : new double[rows];
+      for (int i = 0, at = 0; chunks.length > 1 && i < chunks.length; at += chunks[i++].rows) {
+        System.arraycopy(chunks[i].doubles[c], 0, values, at, chunks[i].rows);
+      }
+      return Vec.of(values, rows);
+    }
+    if (kind == ENTIER) {
+      var values = chunks.length == 1 ? chunks[0].ints[c] : new int[rows];
+      for (int i = 0, at = 0; chunks.length > 1 && i < chunks.length; at += chunks[i++].rows) {
+        System.arraycopy(chunks[i].ints[c], 0, values, at, chunks[i].rows);
+      }
+      return Vec.of(values, rows);
+    }
+
+    // the same Chaine for a value in every chunk
+    var decoded = new HashMap<String, Chaine>();
+    var values = new Object[rows];
+    var at = 0;
+    for (var chunk : chunks) {
+      var strings = chunk.strings[c];
+      var chaines = new Chaine[strings.size];
+      for (int code = 0; code < strings.size; code++) {
+        chaines[code] = decoded.computeIfAbsent(new String(strings.values[code], StandardCharsets.UTF_8), Chaine::new);
+      }
+      var codes = chunk.ints[c];
+      for (int row = 0; row < chunk.rows; row++) {
+        values[at++] = chaines[codes[row]];
+      }
+    }
+    return Vec.of(values, rows);
+  }
+}
@@ -1,52 +1,205 @@
 package interpreteur.rouille.java;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+// Tuples are immutable: the common arities get their own class with final
+// fields, the others share an array. The hash is computed on first use and
+// cached, so tuples are cheap keys for a Dico, unless the tuple holds a
+// vecteur or an instance: those can change after the tuple is hashed.
+abstract class Tuple {
+  static final Tuple UNIT = new Tuple0();
 
-class Tuple {
-  List<Object> items;
+  private int hash;
 
-  Tuple(Object... objects) {
-    items = Arrays.asList(objects);
+  static Tuple of(Object... items) {
+    switch (items.length) {
+      case 0:
+        return UNIT;
+      case 2:
+        return new Tuple2(items[0], items[1]);
+      case 3:
+        return new Tuple3(items[0], items[1], items[2]);
+      default:
+        return new TupleN(items);
+    }
   }
 
+  abstract int size();
+
+  abstract Object get(int index);
+
   boolean isEmpty() {
-    return items.isEmpty();
+    return size() == 0;
   }
 
-  void add(Object o) {
-    items.add(o);
+  // entiers are compared without going through Integer.equals
+  static boolean same(Object a, Object b) {
+    if (a == b)
+      return true;
+    if (a instanceof Integer && b instanceof Integer)
+      return (int) a == (int) b;
+    return a.equals(b);
   }
 
   @Override
   public String toString() {
-    if (isEmpty()) {
-      return "()";
+    var builder = new StringBuilder("(");
+    for (int i = 0; i < size(); i++) {
+      if (i > 0)
+        builder.append(", ");
+      builder.append(get(i));
     }
-    var res = items.stream()
-        .map(Object::toString)
-        .collect(Collectors.joining(", "));
-    res = res.substring(1, res.length() - 1);
-    return "(" + res + ")";
+    return builder.append(")").toString();
   }
 
   @Override
   public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
     if (!(obj instanceof Tuple)) {
       return false;
     }
-    var otherItems = ((Tuple) obj).items;
+    var other = (Tuple) obj;
 
-    if (items.size() != otherItems.size()) {
+    if (size() != other.size()) {
       return false;
     }
-    for (int i = 0; i < items.size(); i++) {
-      if (!items.get(i).equals(otherItems.get(i))) {
+    for (int i = 0; i < size(); i++) {
+      if (!same(get(i), other.get(i))) {
         return false;
       }
     }
 
     return true;
   }
+
+  @Override
+  public int hashCode() {
+    var h = hash;
+    if (h == 0) {
+      h = 1;
+      var immutable = true;
+      for (int i = 0; i < size(); i++) {
+        var item = get(i);
+        h = 31 * h + item.hashCode();
+        immutable &= immutable(item);
+      }
+      if (immutable)
+        hash = h;
+    }
+    return h;
+  }
+
+  // the hash of a nested tuple has just been computed, it is only cached if
+  // the tuple is immutable
+  private static boolean immutable(Object item) {
+    if (item instanceof Tuple)
+      return ((Tuple) item).hash != 0;
+    return !(item instanceof Vec || item instanceof Instance);
+  }
+}
+
+final class Tuple0 extends Tuple {
+  @Override
+  int size() {
+    return 0;
+  }
+
+  @Override
+  Object get(int index) {
+    throw new IndexOutOfBoundsException(index);
+  }
+}
+
+final class Tuple2 extends Tuple {
+  final Object first;
+  final Object second;
+
+  Tuple2(Object first, Object second) {
+    this.first = first;
+    this.second = second;
+  }
+
+  @Override
+  int size() {
+    return 2;
+  }
+
+  @Override
+  Object get(int index) {
+    switch (index) {
+      case 0:
+        return first;
+      case 1:
+        return second;
+      default:
+        throw new IndexOutOfBoundsException(index);
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof Tuple2) {
+      var other = (Tuple2) obj;
+      return same(first, other.first) && same(second, other.second);
+    }
+    return super.equals(obj);
+  }
+}
+
+final class Tuple3 extends Tuple {
+  final Object first;
+  final Object second;
+  final Object third;
+
+  Tuple3(Object first, Object second, Object third) {
+    this.first = first;
+    this.second = second;
+    this.third = third;
+  }
+
+  @Override
+  int size() {
+    return 3;
+  }
+
+  @Override
+  Object get(int index) {
+    switch (index) {
+      case 0:
+        return first;
+      case 1:
+        return second;
+      case 2:
+        return third;
+      default:
+        throw new IndexOutOfBoundsException(index);
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof Tuple3) {
+      var other = (Tuple3) obj;
+      return same(first, other.first) && same(second, other.second) && same(third, other.third);
+    }
+    return super.equals(obj);
+  }
+}
+
+final class TupleN extends Tuple {
+  private final Object[] items;
+
+  TupleN(Object[] items) {
+    this.items = items;
+  }
+
+  @Override
+  int size() {
+    return items.length;
+  }
+
+  @Override
+  Object get(int index) {
+    return items[index];
+  }
 }
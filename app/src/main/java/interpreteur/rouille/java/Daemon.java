@@ -0,0 +1,327 @@
+package interpreteur.rouille.java;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// `rouille --serve` keeps a JVM running on a unix domain socket, so that the
+// scripts run with a warm JIT and without scanning, parsing and checking
+// them again: the compiled scripts are cached by path, and compiled again
+// when the file changes. Every execution gets its own interpreter state.
+// `rouille --client script` sends the script's absolute path, its working
+// directory (the script reads its files relative to it, not to the
+// daemon's) and its arguments, then prints what the daemon sends back (its
+// stdout and stderr lines, then its exit code), and runs the script itself
+// when no daemon answers.
+//
+// The socket is in a directory that only its owner can open, created with
+// mode 0700 when it is missing: the daemon refuses to listen anywhere else,
+// and the client only connects to a socket of its own user. Any process of
+// that user can still run scripts with the user's rights, as with a shell.
+//
+// The client is a JVM as well, and pays for its startup (about 150 ms for
+// a script that then runs warm): bin/rouille-client is a Python client of
+// the same protocol, which answers in about 40 ms and runs `java -jar`
+// itself when no daemon answers.
+//
+// -Drouille.socket          the socket (default: $XDG_RUNTIME_DIR/rouille.sock,
+//                           or rouille-$USER/rouille.sock in the temporary
+//                           directory)
+// -Drouille.concurrence     scripts running at the same time, the others wait
+//                           (default: the number of processors)
+// -Drouille.inactivite      seconds without any script before the daemon
+//                           stops, 0 to never stop (default: 600)
+class Daemon {
+  private static final byte OUT = 'o', ERR = 'e', EXIT = 'x';
+  // paths and arguments, which the kernel caps well below this
+  private static final int MAX_STRING = 1 << 20;
+  private static final int MAX_ARGUMENTS = 1 << 16;
+  private static final Set<PosixFilePermission> PRIVATE = PosixFilePermissions.fromString("rwx------");
+
+  private static final class Entry {
+    final FileTime modified;
+    final long size;
+    final CompiledScript script;
+
+    Entry(FileTime modified, long size, CompiledScript script) {
+      this.modified = modified;
+      this.size = size;
+      this.script = script;
+    }
+  }
+
+  private final ConcurrentHashMap<Path, Entry> scripts = new ConcurrentHashMap<>();
+  private final Semaphore slots;
+  private final long idleMillis;
+  private final AtomicInteger running = new AtomicInteger();
+  private volatile long lastActivity = System.currentTimeMillis();
+
+  private Daemon(int concurrency, long idleMillis) {
+    this.slots = new Semaphore(concurrency, true);
+    this.idleMillis = idleMillis;
+  }
+
+  static Path socket() {
+    var configured = System.getProperty("rouille.socket");
+    if (configured != null)
+      return Paths.get(configured);
+    var runtime = System.getenv("XDG_RUNTIME_DIR");
+    if (runtime != null)
+      return Paths.get(runtime, "rouille.sock");
+    return Paths.get(System.getProperty("java.io.tmpdir"), "rouille-" + System.getProperty("user.name"),
+        "rouille.sock");
+  }
+
+  // The reason why the directory of the socket isn't private, or null.
+  private static String unsafe(Path socket) throws IOException {
+    var directory = socket.toAbsolutePath().getParent();
+    var user = directory.getFileSystem().getUserPrincipalLookupService()
+        .lookupPrincipalByName(System.getProperty("user.name"));
+    if (!Files.getOwner(directory).equals(user))
+      return directory + " n'appartient pas à " + user.getName();
+    var posix = Files.getFileAttributeView(directory, PosixFileAttributeView.class);
+    if (posix != null && !PRIVATE.containsAll(posix.readAttributes().permissions()))
+      return directory + " est ouvert à d'autres utilisateurs que " + user.getName();
+    if (Files.exists(socket) && !Files.getOwner(socket).equals(user))
+      return socket + " n'appartient pas à " + user.getName();
+    return null;
+  }
+
+  static void serve() throws IOException {
+    var concurrency = Integer.getInteger("rouille.concurrence", Runtime.getRuntime().availableProcessors());
+    var idleSeconds = Long.getLong("rouille.inactivite", 600);
+    serve(socket(), concurrency, idleSeconds * 1000);
+  }
+
+  // returns when the daemon stops, after idleMillis without any script
+  static void serve(Path socket, int concurrency, long idleMillis) throws IOException {
+    new Daemon(concurrency, idleMillis).listen(socket);
+  }
+
+  private void listen(Path path) throws IOException {
+    var directory = path.toAbsolutePath().getParent();
+    if (!Files.exists(directory))
+      Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PRIVATE));
+    var unsafe = unsafe(path);
+    if (unsafe != null)
+      throw new IOException("Le serveur rouille n'écoute que dans un répertoire privé : " + unsafe);
+    if (Files.exists(path)) {
+      if (connect(path) != null)
+        throw new IOException("Un serveur rouille écoute déjà sur " + path);
+      Files.delete(path);
+    }
+
+    var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(path));
+    Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+    path.toFile().deleteOnExit();
+    if (idleMillis > 0)
+      watchIdleness(server);
+
+    ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+      var thread = new Thread(runnable, "rouille-client");
+      thread.setDaemon(true);
+      return thread;
+    });
+    while (server.isOpen()) {
+      SocketChannel client;
+      try {
+        client = server.accept();
+      } catch (IOException e) {
+        // closed by the idleness watch
+        break;
+      }
+      running.incrementAndGet();
+      connections.execute(() -> handle(client));
+    }
+    Files.deleteIfExists(path);
+  }
+
+  private void watchIdleness(ServerSocketChannel server) {
+    var watch = new Thread(() -> {
+      while (true) {
+        try {
+          Thread.sleep(Math.min(idleMillis, 1000));
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (running.get() == 0 && System.currentTimeMillis() - lastActivity >= idleMillis) {
+          try {
+            server.close();
+          } catch (IOException e) {
+          }
+          return;
+        }
+      }
+    }, "rouille-inactivite");
+    watch.setDaemon(true);
+    watch.start();
+  }
+
+  private void handle(SocketChannel client) {
+    try (client) {
+      var input = new DataInputStream(Channels.newInputStream(client));
+      var path = readString(input, MAX_STRING);
+      var directory = readString(input, MAX_STRING);
+      var count = input.readInt();
+      if (count < 0 || count > MAX_ARGUMENTS)
+        throw new IOException(count + " arguments");
+      var arguments = new ArrayList<String>();
+      for (int n = count; n > 0; n--) {
+        arguments.add(readString(input, MAX_STRING));
+      }
+
+      var output = new DataOutputStream(Channels.newOutputStream(client));
+      Consumer<String> out = line -> send(output, OUT, line);
+      Consumer<String> err = line -> send(output, ERR, line);
+      slots.acquire();
+      int status;
+      try {
+        status = run(Paths.get(path), Paths.get(directory), arguments, out, err);
+      } catch (RuntimeException e) {
+        // the client still gets an exit code, and the daemon goes on
+        err.accept("Erreur interne : " + e);
+        status = 70;
+      } finally {
+        slots.release();
+      }
+      synchronized (output) {
+        output.writeByte(EXIT);
+        output.writeInt(status);
+        output.flush();
+      }
+    } catch (IOException | InterruptedException e) {
+      // the client went away, or didn't speak the protocol
+    } finally {
+      lastActivity = System.currentTimeMillis();
+      running.decrementAndGet();
+    }
+  }
+
+  private int run(Path path, Path directory, List<String> arguments, Consumer<String> out, Consumer<String> err) {
+    CompiledScript script;
+    try {
+      script = compiled(path);
+    } catch (IOException e) {
+      err.accept("Impossible de lire " + path + " : " + e.getMessage());
+      return 66;
+    } catch (RouilleException e) {
+      App.report(e, out, err);
+      return 65;
+    }
+    return App.run(script, arguments, directory, out, err);
+  }
+
+  private CompiledScript compiled(Path path) throws IOException, RouilleException {
+    var modified = Files.getLastModifiedTime(path);
+    var size = Files.size(path);
+    var entry = scripts.get(path);
+    if (entry != null && entry.modified.equals(modified) && entry.size == size)
+      return entry.script;
+
+    var source = new String(Files.readAllBytes(path), Charset.defaultCharset());
+    var script = RouilleEngine.compile(source);
+    scripts.put(path, new Entry(modified, size, script));
+    return script;
+  }
+
+  // The lines of a script are written by the thread running it and by its
+  // tasks, so a frame is written at once.
+  private static void send(DataOutputStream output, byte kind, String line) {
+    try {
+      synchronized (output) {
+        output.writeByte(kind);
+        writeString(output, line);
+        output.flush();
+      }
+    } catch (IOException e) {
+      // the client went away, the script still runs to the end
+    }
+  }
+
+  // The exit code of the script, or -1 when no daemon listens on the socket.
+  static int forward(String script, List<String> arguments) throws IOException {
+    return forward(socket(), script, arguments, System.out::println, System.err::println);
+  }
+
+  static int forward(Path socket, String script, List<String> arguments, Consumer<String> out,
+      Consumer<String> err) throws IOException {
+    if (!Files.exists(socket))
+      return -1;
+    var unsafe = unsafe(socket);
+    if (unsafe != null) {
+      err.accept("Le serveur de " + socket + " est ignoré : " + unsafe);
+      return -1;
+    }
+    var client = connect(socket);
+    if (client == null)
+      return -1;
+
+    try (client) {
+      var output = new DataOutputStream(Channels.newOutputStream(client));
+      writeString(output, Paths.get(script).toAbsolutePath().normalize().toString());
+      writeString(output, Paths.get("").toAbsolutePath().toString());
+      output.writeInt(arguments.size());
+      for (var argument : arguments) {
+        writeString(output, argument);
+      }
+      output.flush();
+
+      var input = new DataInputStream(Channels.newInputStream(client));
+      while (true) {
+        var kind = input.readByte();
+        if (kind == EXIT)
+          return input.readInt();
+        var line = readString(input, Integer.MAX_VALUE);
+        (kind == ERR ? err : out).accept(line);
+      }
+    }
+  }
+
+  private static SocketChannel connect(Path path) {
+    try {
+      return SocketChannel.open(UnixDomainSocketAddress.of(path));
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  // not writeUTF, which is limited to 64KB
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    var bytes = string.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static String readString(DataInputStream input, int max) throws IOException {
+    var length = input.readInt();
+    if (length < 0 || length > max)
+      throw new IOException("Chaîne de " + length + " octets");
+    var bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
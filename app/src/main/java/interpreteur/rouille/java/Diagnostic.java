@@ -0,0 +1,85 @@
+package interpreteur.rouille.java;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// An error found while compiling or running a script.
+public final class Diagnostic {
+  public enum Phase {
+    COMPILATION, EXECUTION,
+  }
+
+  private final Phase phase;
+  private final int line;
+  private final int column;
+  private final String lexeme;
+  private final String message;
+
+  Diagnostic(Phase phase, int line, int column, String lexeme, String message) {
+    this.phase = phase;
+    this.line = line;
+    this.column = column;
+    this.lexeme = lexeme;
+    this.message = message;
+  }
+
+  static Diagnostic of(RuntimeError error) {
+    var token = error.token;
+    return token == null
+        ? new Diagnostic(Phase.EXECUTION, -1, -1, null, error.getMessage())
+        : new Diagnostic(Phase.EXECUTION, token.line, token.column, token.lexeme, error.getMessage());
+  }
+
+  public Phase phase() {
+    return phase;
+  }
+
+  // 0 based, -1 when unknown
+  public int line() {
+    return line;
+  }
+
+  public int column() {
+    return column;
+  }
+
+  // the token the error is about, null if there is none
+  public String lexeme() {
+    return lexeme;
+  }
+
+  public String message() {
+    return message;
+  }
+
+  // the format of the command line interpreter
+  @Override
+  public String toString() {
+    if (phase == Phase.EXECUTION)
+      return message + "\n[line " + line + " column " + column + "]";
+    var where = lexeme == null ? "" : lexeme.isEmpty() ? " at end " : " at `" + lexeme + "` ";
+    return "[line " + line + "] Error" + where + ": " + message;
+  }
+}
+
+// Collects the errors of the passes of a single compilation.
+class Diagnostics {
+  private final List<Diagnostic> errors = new ArrayList<>();
+
+  void error(Token token, String message) {
+    var lexeme = token.type == TokenType.EOF ? "" : token.lexeme;
+    errors.add(new Diagnostic(Diagnostic.Phase.COMPILATION, token.line, token.column, lexeme, message));
+  }
+
+  void error(int line, String message) {
+    errors.add(new Diagnostic(Diagnostic.Phase.COMPILATION, line, -1, null, message));
+  }
+
+  boolean hadError() {
+    return !errors.isEmpty();
+  }
+
+  List<Diagnostic> list() {
+    return List.copyOf(errors);
+  }
+}
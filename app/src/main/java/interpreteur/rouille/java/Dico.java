@@ -0,0 +1,275 @@
+package interpreteur.rouille.java;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Hash map with open addressing (linear probing, backward shift deletion, so
+// no tombstones). While every key is an entier the keys stay unboxed in an
+// int[]; the first key of another type switches the table to Object[] keys,
+// next to an int[] of their hashes: a probe compares the hashes before
+// calling equals, and a resize or a deletion doesn't hash the keys again.
+// A slot is free when its value is null, rouille values are never null.
+class Dico {
+  private static final int MIN_CAPACITY = 8;
+
+  private int[] intKeys;
+  private Object[] keys;
+  private int[] hashes;
+  private Object[] values;
+  private int size = 0;
+  private int mask;
+  private int shift;
+
+  Dico() {
+    allocate(MIN_CAPACITY);
+    intKeys = new int[MIN_CAPACITY];
+  }
+
+  int size() {
+    return size;
+  }
+
+  Object get(Object key) {
+    var slot = find(key);
+    return slot < 0 ? null : values[slot];
+  }
+
+  boolean containsKey(Object key) {
+    return find(key) >= 0;
+  }
+
+  Object put(Object key, Object value) {
+    if (intKeys != null && !(key instanceof Integer))
+      boxKeys();
+    if ((size + 1) * 4 > values.length * 3)
+      resize(values.length * 2);
+
+    if (intKeys == null)
+      return put(key, key.hashCode(), value);
+    int k = (int) key;
+    int slot = intIndex(k);
+    while (values[slot] != null) {
+      if (intKeys[slot] == k)
+        return replace(slot, value);
+      slot = (slot + 1) & mask;
+    }
+    intKeys[slot] = k;
+    values[slot] = value;
+    size++;
+    return null;
+  }
+
+  private Object put(Object key, int hash, Object value) {
+    int slot = intIndex(hash);
+    while (values[slot] != null) {
+      if (hashes[slot] == hash && sameKey(keys[slot], key))
+        return replace(slot, value);
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    hashes[slot] = hash;
+    values[slot] = value;
+    size++;
+    return null;
+  }
+
+  private Object replace(int slot, Object value) {
+    var previous = values[slot];
+    values[slot] = value;
+    return previous;
+  }
+
+  Object remove(Object key) {
+    var slot = find(key);
+    if (slot < 0)
+      return null;
+    var removed = values[slot];
+    size--;
+
+    // shift back the following entries of the cluster into the hole
+    var hole = slot;
+    var next = (slot + 1) & mask;
+    while (values[next] != null) {
+      var home = intIndex(intKeys != null ? intKeys[next] : hashes[next]);
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        move(next, hole);
+        hole = next;
+      }
+      next = (next + 1) & mask;
+    }
+    values[hole] = null;
+    if (keys != null)
+      keys[hole] = null;
+    return removed;
+  }
+
+  private int find(Object key) {
+    if (intKeys != null) {
+      if (!(key instanceof Integer))
+        return -1;
+      int k = (int) key;
+      int slot = intIndex(k);
+      while (values[slot] != null) {
+        if (intKeys[slot] == k)
+          return slot;
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+
+    int hash = key.hashCode();
+    int slot = intIndex(hash);
+    while (values[slot] != null) {
+      if (hashes[slot] == hash && sameKey(keys[slot], key))
+        return slot;
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private static boolean sameKey(Object a, Object b) {
+    return a == b || a.equals(b);
+  }
+
+  // Fibonacci hashing, the top bits of the product pick the slot.
+  private int intIndex(int key) {
+    return (key * 0x9E3779B9) >>> shift;
+  }
+
+  private void move(int from, int to) {
+    values[to] = values[from];
+    if (intKeys != null)
+      intKeys[to] = intKeys[from];
+    else {
+      keys[to] = keys[from];
+      hashes[to] = hashes[from];
+    }
+  }
+
+  private void allocate(int capacity) {
+    values = new Object[capacity];
+    mask = capacity - 1;
+    shift = Integer.numberOfLeadingZeros(capacity) + 1;
+  }
+
+  private void resize(int capacity) {
+    var oldIntKeys = intKeys;
+    var oldKeys = keys;
+    var oldHashes = hashes;
+    var oldValues = values;
+    allocate(capacity);
+    if (oldIntKeys != null) {
+      intKeys = new int[capacity];
+    } else {
+      keys = new Object[capacity];
+      hashes = new int[capacity];
+    }
+    size = 0;
+
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] == null)
+        continue;
+      if (oldIntKeys != null)
+        put(oldIntKeys[i], oldValues[i]);
+      else
+        put(oldKeys[i], oldHashes[i], oldValues[i]);
+    }
+  }
+
+  private void boxKeys() {
+    var oldIntKeys = intKeys;
+    var oldValues = values;
+    allocate(values.length);
+    intKeys = null;
+    keys = new Object[values.length];
+    hashes = new int[values.length];
+    size = 0;
+
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null)
+        put(oldIntKeys[i], oldValues[i]);
+    }
+  }
+
+  // The (key, value) pairs, in the order of the table. An insertion during
+  // the iteration may move the entries: the pairs are those of the table as
+  // it was at the start.
+  Iterator<Object> entries() {
+    var intKeys = this.intKeys;
+    var keys = this.keys;
+    var values = this.values;
+    return new Iterator<>() {
+      private int slot = next(0);
+
+      private int next(int from) {
+        while (from < values.length && values[from] == null) {
+          from++;
+        }
+        return from;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return slot < values.length;
+      }
+
+      @Override
+      public Object next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        var entry = Tuple.of(intKeys != null ? (Object) intKeys[slot] : keys[slot], values[slot]);
+        slot = next(slot + 1);
+        return entry;
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    var builder = new StringBuilder("{");
+    var first = true;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == null)
+        continue;
+      if (!first)
+        builder.append(", ");
+      first = false;
+      builder.append(intKeys != null ? (Object) intKeys[i] : keys[i]).append(": ").append(values[i]);
+    }
+    return builder.append("}").toString();
+  }
+
+  @Native("nouveau")
+  static Dico nouveau() {
+    return new Dico();
+  }
+
+  @Native("insere")
+  static void insere(Interpreter interpreter, Dico dico, Object cle, Object valeur) {
+    interpreter.allocate(null, 1);
+    dico.put(cle, valeur);
+  }
+
+  // a missing key gives `()`, like a `si` without `sinon`
+  @Native("obtiens")
+  static Object obtiens(Dico dico, Object cle) {
+    var value = dico.get(cle);
+    return value == null ? Tuple.UNIT : value;
+  }
+
+  @Native("contient")
+  static boolean contient(Dico dico, Object cle) {
+    return dico.containsKey(cle);
+  }
+
+  @Native("retire")
+  static Object retire(Dico dico, Object cle) {
+    var value = dico.remove(cle);
+    return value == null ? Tuple.UNIT : value;
+  }
+
+  @Native("taille")
+  static int taille(Dico dico) {
+    return dico.size();
+  }
+}
@@ -0,0 +1,234 @@
+package interpreteur.rouille.java;
+
+// The integers of every width other than i32 and i64, which are plain
+// Integer and Long values. All the widths are computed on primitive longs:
+// the operands are unboxed once, the operation is checked for overflow
+// (Math.*Exact, then the range of the width) and only the result is boxed.
+// u64 and usize use the 64 bits of the long as an unsigned value.
+final class Entier {
+  enum Largeur {
+    I8("i8", 8, true), I16("i16", 16, true), I32("i32", 32, true), I64("i64", 64, true),
+    U8("u8", 8, false), U16("u16", 16, false), U32("u32", 32, false), U64("u64", 64, false),
+    USIZE("usize", 64, false);
+
+    final String name;
+    final boolean signed;
+    final long min;
+    final long max;
+    // small values are shared, like Integer.valueOf
+    private final Entier[] cache = new Entier[256];
+
+    Largeur(String name, int bits, boolean signed) {
+      this.name = name;
+      this.signed = signed;
+      if (bits == 64) {
+        this.min = signed ? Long.MIN_VALUE : 0;
+        this.max = signed ? Long.MAX_VALUE : -1;
+      } else {
+        this.min = signed ? -(1L << (bits - 1)) : 0;
+        this.max = signed ? (1L << (bits - 1)) - 1 : (1L << bits) - 1;
+      }
+    }
+
+    static Largeur of(String name) {
+      for (var largeur : values()) {
+        if (largeur.name.equals(name))
+          return largeur;
+      }
+      return null;
+    }
+
+    // the width of an integer value, null if the value is not an integer
+    static Largeur of(Object value) {
+      if (value instanceof Integer)
+        return I32;
+      if (value instanceof Long)
+        return I64;
+      if (value instanceof Entier)
+        return ((Entier) value).largeur;
+      return null;
+    }
+
+    boolean wide() {
+      return min == Long.MIN_VALUE || max == -1;
+    }
+
+    boolean contains(long value) {
+      return wide() || value >= min && value <= max;
+    }
+
+    Object box(long value) {
+      switch (this) {
+        case I32:
+          return (int) value;
+        case I64:
+          return value;
+        default:
+          var slot = value - min;
+          if (slot >= 0 && slot < cache.length) {
+            var cached = cache[(int) slot];
+            if (cached == null)
+              cache[(int) slot] = cached = new Entier(value, this);
+            return cached;
+          }
+          return new Entier(value, this);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  final long value;
+  final Largeur largeur;
+
+  private Entier(long value, Largeur largeur) {
+    this.value = value;
+    this.largeur = largeur;
+  }
+
+  static long bits(Object value) {
+    if (value instanceof Integer)
+      return (int) value;
+    if (value instanceof Long)
+      return (long) value;
+    return ((Entier) value).value;
+  }
+
+  // `left operator right` for two integers of the given width
+  static Object operation(Token operator, Largeur largeur, long left, long right) {
+    if (!largeur.signed && largeur.wide())
+      return unsigned(operator, largeur, left, right);
+
+    try {
+      switch (operator.type) {
+        case MINUS:
+          return checked(operator, largeur, Math.subtractExact(left, right));
+        case SLASH:
+          return checked(operator, largeur, division(operator, largeur, left, right) / right);
+        case STAR:
+          return checked(operator, largeur, Math.multiplyExact(left, right));
+        case PERCENT:
+          return checked(operator, largeur, division(operator, largeur, left, right) % right);
+        case PLUS:
+          return checked(operator, largeur, Math.addExact(left, right));
+        case GREATER:
+          return left > right;
+        case GREATER_EQUAL:
+          return left >= right;
+        case LESS:
+          return left < right;
+        case LESS_EQUAL:
+          return left <= right;
+        case EQUAL_EQUAL:
+          return left == right;
+        case BANG_EQUAL:
+          return left != right;
+        case AMPERSAND:
+          return largeur.box(left & right);
+        case BITWISE_OR:
+          return largeur.box(left | right);
+        default:
+          throw new RuntimeError(operator, "Unreachable");
+      }
+    } catch (ArithmeticException e) {
+      throw overflow(operator, largeur);
+    }
+  }
+
+  // u64 and usize: the long is read as unsigned
+  private static Object unsigned(Token operator, Largeur largeur, long left, long right) {
+    switch (operator.type) {
+      case MINUS:
+        if (Long.compareUnsigned(left, right) < 0)
+          throw overflow(operator, largeur);
+        return largeur.box(left - right);
+      case SLASH:
+        return largeur.box(Long.divideUnsigned(left, division(operator, largeur, left, right)));
+      case STAR:
+        var product = left * right;
+        if (left != 0 && Long.divideUnsigned(product, left) != right)
+          throw overflow(operator, largeur);
+        return largeur.box(product);
+      case PERCENT:
+        return largeur.box(Long.remainderUnsigned(left, division(operator, largeur, left, right)));
+      case PLUS:
+        var sum = left + right;
+        if (Long.compareUnsigned(sum, left) < 0)
+          throw overflow(operator, largeur);
+        return largeur.box(sum);
+      case GREATER:
+        return Long.compareUnsigned(left, right) > 0;
+      case GREATER_EQUAL:
+        return Long.compareUnsigned(left, right) >= 0;
+      case LESS:
+        return Long.compareUnsigned(left, right) < 0;
+      case LESS_EQUAL:
+        return Long.compareUnsigned(left, right) <= 0;
+      case EQUAL_EQUAL:
+        return left == right;
+      case BANG_EQUAL:
+        return left != right;
+      case AMPERSAND:
+        return largeur.box(left & right);
+      case BITWISE_OR:
+        return largeur.box(left | right);
+      default:
+        throw new RuntimeError(operator, "Unreachable");
+    }
+  }
+
+  // `operator value` for an integer of the given width
+  static Object unary(Token operator, Largeur largeur, long value) {
+    if (operator.type == TokenType.MINUS) {
+      if (!largeur.signed)
+        throw new RuntimeError(operator, "L'opérateur unaire `-` ne s'applique pas aux entiers non signés (`"
+            + largeur + "`).");
+      if (value == largeur.min)
+        throw overflow(operator, largeur);
+      return largeur.box(-value);
+    }
+    // bitwise not
+    return largeur.box(largeur.signed || largeur.wide() ? ~value : value ^ largeur.max);
+  }
+
+  // the divisor, once it is known to be valid
+  static long division(Token operator, Largeur largeur, long left, long right) {
+    if (right == 0)
+      throw new RuntimeError(operator, "Division par zéro.");
+    if (largeur.signed && right == -1 && left == largeur.min)
+      throw overflow(operator, largeur);
+    return right;
+  }
+
+  static RuntimeError overflow(Token operator, Largeur largeur) {
+    return new RuntimeError(operator, "Dépassement de capacité de `" + largeur + "` avec l'opérateur `"
+        + operator.lexeme + "`.");
+  }
+
+  private static Object checked(Token operator, Largeur largeur, long value) {
+    if (!largeur.contains(value))
+      throw overflow(operator, largeur);
+    return largeur.box(value);
+  }
+
+  @Override
+  public String toString() {
+    return largeur.signed ? Long.toString(value) : Long.toUnsignedString(value);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Entier))
+      return false;
+    var other = (Entier) obj;
+    return value == other.value && largeur == other.largeur;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(value) + largeur.ordinal();
+  }
+}
@@ -3,32 +3,68 @@ package interpreteur.rouille.java;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Environment {
+  // A mutable variable captured by a function (see Resolver.Closure). The
+  // closure and the scope of the variable hold the same cell, getAt and
+  // assignAt go through it.
+  static final class Cell {
+    Object value;
+
+    Cell(Object value) {
+      this.value = value;
+    }
+  }
+
+
   final Optional<Environment> enclosing;
-  private final Map<String, Object> values = new HashMap<>();
-  private final Map<String, Boolean> mutables = new HashMap<>();
+  private final Map<Symbol, Object> values;
+  private final Map<Symbol, Boolean> mutables;
 
+  // The globals are shared by every task, the local environments
+  // belong to a single thread.
   Environment() {
-    enclosing = Optional.empty();
+    this(Optional.empty(), true);
   }
 
   Environment(Environment enclosing) {
-    this.enclosing = Optional.of(enclosing);
+    this(Optional.of(enclosing), false);
   }
 
-  void define(String name, Object value, boolean mutable) {
+  private Environment(Optional<Environment> enclosing, boolean shared) {
+    this.enclosing = enclosing;
+    values = shared ? new ConcurrentHashMap<>() : new HashMap<>();
+    mutables = shared ? new ConcurrentHashMap<>() : new HashMap<>();
+  }
+
+  // the globals of an interpreter, above the natives
+  static Environment globals(Environment natives) {
+    return new Environment(Optional.of(natives), true);
+  }
+
+  void define(Symbol name, Object value, boolean mutable) {
     values.put(name, value);
     mutables.put(name, mutable);
   }
 
-  void define(String name, Object value) {
+  void define(Symbol name, Object value) {
     define(name, value, false);
   }
 
+  void define(String name, Object value) {
+    define(Symbol.of(name), value, false);
+  }
+
+  void clear() {
+    values.clear();
+    mutables.clear();
+  }
+
   Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
+    var value = values.get(name.symbol);
+    if (value != null) {
+      return value;
     }
 
     if (enclosing.isPresent())
@@ -38,14 +74,14 @@ public class Environment {
   }
 
   public void assign(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
-      if (!mutables.get(name.lexeme))
+    if (values.containsKey(name.symbol)) {
+      if (!mutables.get(name.symbol))
         throw new RuntimeError(name, "cannot assign twice to immutable variable `" + name.lexeme + "`");
 
-      if (values.get(name.lexeme).getClass() != value.getClass())
+      if (values.get(name.symbol).getClass() != value.getClass())
         throw new RuntimeError(name, "mismatched types");
 
-      values.put(name.lexeme, value);
+      values.put(name.symbol, value);
       return;
     } else if (enclosing.isPresent()) {
       enclosing.get().assign(name, value);
@@ -56,10 +92,22 @@ public class Environment {
   }
 
   public void assignAt(Integer distance, Token name, Object value) {
-    ancestor(distance).values.put(name.lexeme, value);
+    var values = ancestor(distance).values;
+    var previous = values.put(name.symbol, value);
+    if (previous instanceof Cell) {
+      values.put(name.symbol, previous);
+      ((Cell) previous).value = value;
+    }
+  }
+
+  public Object getAt(Integer distance, Symbol name) {
+    var value = ancestor(distance).values.get(name);
+    return value instanceof Cell ? ((Cell) value).value : value;
   }
 
-  public Object getAt(Integer distance, String name) {
+  // the value copied into the closure of a function: the cell itself for a
+  // captured mutable variable
+  Object captureAt(int distance, Symbol name) {
     return ancestor(distance).values.get(name);
   }
 
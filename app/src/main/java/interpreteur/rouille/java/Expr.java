@@ -3,7 +3,7 @@ package interpreteur.rouille.java;
 import java.util.List;
 import java.util.Optional;
 
-abstract class Expr {
+abstract sealed class Expr {
   interface Visitor<R> {
     R visitBinaryExpr(Binary expr);
     R visitCallExpr(Call expr);
@@ -15,10 +15,41 @@ abstract class Expr {
     R visitVariableExpr(Variable expr);
     R visitBlockExpr(Block expr);
     R visitIfExpr(If expr);
+    R visitIndexExpr(Index expr);
+    R visitArrayExpr(Array expr);
+    R visitRepeatExpr(Repeat expr);
+    R visitGetExpr(Get expr);
+    R visitConstructExpr(Construct expr);
+    R visitLoopExpr(Loop expr);
 
   }
-  static class Binary extends Expr {
+
+  static final int BINARY = 0;
+  static final int CALL = 1;
+  static final int GROUPING = 2;
+  static final int LITERAL = 3;
+  static final int TUPLE = 4;
+  static final int LOGICAL = 5;
+  static final int UNARY = 6;
+  static final int VARIABLE = 7;
+  static final int BLOCK = 8;
+  static final int IF = 9;
+  static final int INDEX = 10;
+  static final int ARRAY = 11;
+  static final int REPEAT = 12;
+  static final int GET = 13;
+  static final int CONSTRUCT = 14;
+  static final int LOOP = 15;
+
+  final int kind;
+
+  private Expr(int kind) {
+    this.kind = kind;
+  }
+
+  static final class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
+      super(BINARY);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -32,10 +63,12 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    Type.Kind operands;
   }
 
-  static class Call extends Expr {
+  static final class Call extends Expr {
     Call(Expr callee, Token paren, List<Expr> arguments) {
+      super(CALL);
       this.callee = callee;
       this.paren = paren;
       this.arguments = arguments;
@@ -49,10 +82,13 @@ abstract class Expr {
     final Expr callee;
     final Token paren;
     final List<Expr> arguments;
+    Maths.Intrinsic intrinsic;
+    Type.Kind operands;
   }
 
-  static class Grouping extends Expr {
+  static final class Grouping extends Expr {
     Grouping(Expr expression) {
+      super(GROUPING);
       this.expression = expression;
     }
 
@@ -64,8 +100,9 @@ abstract class Expr {
     final Expr expression;
   }
 
-  static class Literal extends Expr {
+  static final class Literal extends Expr {
     Literal(Object value) {
+      super(LITERAL);
       this.value = value;
     }
 
@@ -74,11 +111,13 @@ abstract class Expr {
       return visitor.visitLiteralExpr(this);
     }
     
-    final Object value;
+    Object value;
+    boolean untyped;
   }
 
-  static class Tuple extends Expr {
+  static final class Tuple extends Expr {
     Tuple(List<Expr> expressions) {
+      super(TUPLE);
       this.expressions = expressions;
     }
 
@@ -90,8 +129,9 @@ abstract class Expr {
     final List<Expr> expressions;
   }
 
-  static class Logical extends Expr {
+  static final class Logical extends Expr {
     Logical(Expr left, Token operator, Expr right) {
+      super(LOGICAL);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -105,10 +145,12 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    boolean proven;
   }
 
-  static class Unary extends Expr {
+  static final class Unary extends Expr {
     Unary(Token operator, Expr right) {
+      super(UNARY);
       this.operator = operator;
       this.right = right;
     }
@@ -120,10 +162,12 @@ abstract class Expr {
     
     final Token operator;
     final Expr right;
+    Type.Kind operand;
   }
 
-  static class Variable extends Expr {
+  static final class Variable extends Expr {
     Variable(Token name) {
+      super(VARIABLE);
       this.name = name;
     }
 
@@ -135,8 +179,9 @@ abstract class Expr {
     final Token name;
   }
 
-  static class Block extends Expr {
+  static final class Block extends Expr {
     Block(List<Stmt> statements, Optional<Expr> returnedValue) {
+      super(BLOCK);
       this.statements = statements;
       this.returnedValue = returnedValue;
     }
@@ -150,8 +195,9 @@ abstract class Expr {
     final Optional<Expr> returnedValue;
   }
 
-  static class If extends Expr {
+  static final class If extends Expr {
     If(Token ifToken, Expr condition, Expr thenBranch, Optional<Expr> elseBranch) {
+      super(IF);
       this.ifToken = ifToken;
       this.condition = condition;
       this.thenBranch = thenBranch;
@@ -167,6 +213,113 @@ abstract class Expr {
     final Expr condition;
     final Expr thenBranch;
     final Optional<Expr> elseBranch;
+    boolean proven;
+  }
+
+  static final class Index extends Expr {
+    Index(Expr object, Token bracket, Expr index) {
+      super(INDEX);
+      this.object = object;
+      this.bracket = bracket;
+      this.index = index;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitIndexExpr(this);
+    }
+    
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+  }
+
+  static final class Array extends Expr {
+    Array(Token bracket, List<Expr> elements) {
+      super(ARRAY);
+      this.bracket = bracket;
+      this.elements = elements;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitArrayExpr(this);
+    }
+    
+    final Token bracket;
+    final List<Expr> elements;
+  }
+
+  static final class Repeat extends Expr {
+    Repeat(Token bracket, Expr value, Expr count) {
+      super(REPEAT);
+      this.bracket = bracket;
+      this.value = value;
+      this.count = count;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitRepeatExpr(this);
+    }
+    
+    final Token bracket;
+    final Expr value;
+    final Expr count;
+  }
+
+  static final class Get extends Expr {
+    Get(Expr object, Token name) {
+      super(GET);
+      this.object = object;
+      this.name = name;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitGetExpr(this);
+    }
+    
+    final Expr object;
+    final Token name;
+    Structure.Field cache;
+  }
+
+  static final class Construct extends Expr {
+    Construct(Expr.Variable structure, List<Token> fields, List<Expr> values) {
+      super(CONSTRUCT);
+      this.structure = structure;
+      this.fields = fields;
+      this.values = values;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitConstructExpr(this);
+    }
+    
+    final Expr.Variable structure;
+    final List<Token> fields;
+    final List<Expr> values;
+    Structure.Layout cache;
+  }
+
+  static final class Loop extends Expr {
+    Loop(Token keyword, Optional<Token> label, Expr.Block body) {
+      super(LOOP);
+      this.keyword = keyword;
+      this.label = label;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitLoopExpr(this);
+    }
+    
+    final Token keyword;
+    final Optional<Token> label;
+    final Expr.Block body;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
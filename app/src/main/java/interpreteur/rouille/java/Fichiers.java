@@ -0,0 +1,195 @@
+package interpreteur.rouille.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// The natives reading files. The files are mapped in memory rather than
+// read through a buffer: `lignes` goes through a file a window at a time
+// and gives views on the mapped bytes of its lines, which are only decoded
+// when the script uses them (see Chaine), so a file of any size is read in
+// constant memory, without copying the lines that are skipped.
+class Fichiers {
+  // the size of the windows `lignes` maps, grown for a longer line
+  static final int WINDOW = 1 << 26;
+  private static final int MAX_WINDOW = Integer.MAX_VALUE - 8;
+
+  private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+  private static final long LOWS = 0x0101010101010101L;
+  private static final long HIGHS = 0x8080808080808080L;
+
+  @Native("lignes")
+  static Lignes lignes(Interpreter interpreter, Chaine chemin) {
+    var path = interpreter.path(chemin);
+    // fails here rather than at the start of the loop
+    size(path);
+    return new Lignes(path);
+  }
+
+  @Native("lis_tout")
+  static Chaine lisTout(Interpreter interpreter, Chaine chemin) {
+    var path = interpreter.path(chemin);
+    var size = size(path);
+    if (size > MAX_WINDOW)
+      throw new RuntimeError(null, "`" + path + "` est trop grand pour `lis_tout` (" + size + " octets), "
+          + "il se lit avec `lignes`.");
+    interpreter.allocate(null, size);
+    var bytes = new byte[(int) size];
+    map(path, 0, size).get(bytes);
+    return new Chaine(new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  // the `longueur` bytes from `debut`, fewer at the end of the file
+  @Native(value = "lis_octets", parametres = { "chemin", "debut", "longueur" })
+  static Vec lisOctets(Interpreter interpreter, Chaine chemin, long debut, int longueur) {
+    var path = interpreter.path(chemin);
+    var size = size(path);
+    if (debut < 0 || longueur < 0)
+      throw new RuntimeError(null, "Le début et la longueur de `lis_octets` doivent être positifs.");
+    var count = (int) Math.max(0, Math.min(longueur, size - debut));
+    interpreter.allocate(null, count);
+    var octets = new Vec();
+    if (count == 0)
+      return octets;
+    var bytes = map(path, debut, count);
+    for (int i = 0; i < count; i++) {
+      octets.push(Entier.Largeur.U8.box(bytes.get(i) & 0xff));
+    }
+    return octets;
+  }
+
+  @Native("taille_fichier")
+  static long tailleFichier(Interpreter interpreter, Chaine chemin) {
+    return size(interpreter.path(chemin));
+  }
+
+  static long size(Path path) {
+    try {
+      return Files.size(path);
+    } catch (IOException e) {
+      throw unreadable(path, e);
+    }
+  }
+
+  // The mapping stays valid once the channel is closed, until the buffer
+  // is collected: there is no file left open when a loop is left early.
+  static MappedByteBuffer map(Path path, long position, long size) {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    } catch (IOException e) {
+      throw unreadable(path, e);
+    }
+  }
+
+  private static RuntimeError unreadable(Path path, IOException e) {
+    var reason = e instanceof java.nio.file.NoSuchFileException ? "il n'existe pas" : String.valueOf(e.getMessage());
+    return new RuntimeError(null, "Impossible de lire `" + path + "` : " + reason + ".");
+  }
+
+  // The lines of a file, without their `\n` or `\r\n`, for `pour`. Each
+  // loop over it reads the file again from its start.
+  static final class Lignes implements Iterable<Object> {
+    private final Path path;
+
+    Lignes(Path path) {
+      this.path = path;
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+      return new Reader(path, size(path));
+    }
+
+    @Override
+    public String toString() {
+      return "<lignes " + path + ">";
+    }
+  }
+
+  private static final class Reader implements Iterator<Object> {
+    private final Path path;
+    private final long size;
+    // the mapped window, and the position of its first byte in the file
+    private ByteBuffer window;
+    private long base;
+    // the start of the next line, in the window
+    private int start;
+
+    Reader(Path path, long size) {
+      this.path = path;
+      this.size = size;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return base + start < size;
+    }
+
+    @Override
+    public Object next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      if (window == null)
+        remap(WINDOW);
+
+      var end = newline(window, start);
+      while (end < 0 && base + window.limit() < size) {
+        // the line goes on after the window: map one that starts with it
+        var length = window.limit() - start;
+        if (length >= MAX_WINDOW)
+          throw new RuntimeError(null, "Une ligne de `" + path + "` est trop longue (plus de " + MAX_WINDOW
+              + " octets).");
+        remap(length < WINDOW / 2 ? WINDOW : (int) Math.min(MAX_WINDOW, 2L * length));
+        end = newline(window, length);
+      }
+
+      int next;
+      if (end < 0) {
+        // the last line, without a newline
+        end = window.limit();
+        next = end;
+      } else {
+        next = end + 1;
+      }
+      if (end > start && window.get(end - 1) == '\r')
+        end--;
+      var line = new Chaine(window.slice(start, end - start));
+      start = next;
+      return line;
+    }
+
+    private void remap(int capacity) {
+      base += start;
+      start = 0;
+      window = map(path, base, Math.min(capacity, size - base)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // The index of the first '\n' from `from`, -1 if there is none. Eight
+    // bytes at a time: the high bit of a byte of `found` is set when that
+    // byte is a '\n', or when a byte before it in the file is one (the
+    // borrows only go up), so the lowest one is the first newline.
+    private static int newline(ByteBuffer bytes, int from) {
+      var limit = bytes.limit();
+      var i = from;
+      for (; i + 8 <= limit; i += 8) {
+        var word = bytes.getLong(i) ^ NEWLINES;
+        var found = (word - LOWS) & ~word & HIGHS;
+        if (found != 0)
+          return i + (Long.numberOfTrailingZeros(found) >>> 3);
+      }
+      for (; i < limit; i++) {
+        if (bytes.get(i) == '\n')
+          return i;
+      }
+      return -1;
+    }
+  }
+}
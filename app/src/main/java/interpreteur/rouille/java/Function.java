@@ -5,10 +5,19 @@ import java.util.List;
 public class Function implements Callable {
   private final Stmt.Function declaration;
   private final Environment closure;
+  // The TypeChecker trusts the annotations inside the body, so they are
+  // checked here, once per call.
+  private final Type[] guards;
+  private final Type returnGuard;
 
   Function(Stmt.Function declaration, Environment closure) {
     this.declaration = declaration;
     this.closure = closure;
+    this.guards = new Type[declaration.types.size()];
+    for (int i = 0; i < guards.length; i++) {
+      guards[i] = guard(declaration.types.get(i));
+    }
+    this.returnGuard = declaration.returnType.map(Function::guard).orElse(null);
   }
 
   @Override
@@ -19,21 +28,96 @@ public class Function implements Callable {
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
     var environment = new Environment(closure);
-    for (int i = 0; i < declaration.params.size(); i++) {
-      environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    for (int i = 0; i < arguments.size(); i++) {
+      bind(environment, i, arguments.get(i));
     }
+    return run(interpreter, environment);
+  }
+
+  // the arguments go straight to the environment of the call
+  @Override
+  public Object call0(Interpreter interpreter) {
+    return run(interpreter, new Environment(closure));
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    var environment = new Environment(closure);
+    bind(environment, 0, a);
+    return run(interpreter, environment);
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    var environment = new Environment(closure);
+    bind(environment, 0, a);
+    bind(environment, 1, b);
+    return run(interpreter, environment);
+  }
 
+  @Override
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    var environment = new Environment(closure);
+    bind(environment, 0, a);
+    bind(environment, 1, b);
+    bind(environment, 2, c);
+    return run(interpreter, environment);
+  }
+
+  @Override
+  public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+    var environment = new Environment(closure);
+    bind(environment, 0, a);
+    bind(environment, 1, b);
+    bind(environment, 2, c);
+    bind(environment, 3, d);
+    return run(interpreter, environment);
+  }
+
+  private void bind(Environment environment, int i, Object argument) {
+    if (guards[i] != null && !guards[i].admits(argument)) {
+      throw new RuntimeError(declaration.params.get(i), "Le paramètre `" + declaration.params.get(i).lexeme
+          + "` de `" + declaration.name.lexeme + "` doit être de type `" + declaration.types.get(i) + "`.");
+    }
+    environment.define(declaration.params.get(i).symbol, argument);
+  }
+
+  private Object run(Interpreter interpreter, Environment environment) {
+    // a generator runs when its values are read
+    if (declaration.suspending != null)
+      return new Generateur.Interpreted(declaration, environment);
+    interpreter.enter(declaration.name);
+    try {
+      return invoke(interpreter, environment);
+    } catch (StackOverflowError e) {
+      // the frames below are gone, this one has room to build the error
+      throw interpreter.stackOverflow(declaration.name);
+    } finally {
+      interpreter.leave();
+    }
+  }
+
+  private Object invoke(Interpreter interpreter, Environment environment) {
+    Object result = Tuple.UNIT;
     try {
       interpreter.executeBlock(declaration.body, environment);
     } catch (Return e) {
-      return e.value;
+      result = e.value;
     }
 
-    return new Tuple();
+    if (returnGuard != null && !returnGuard.admits(result)) {
+      throw new RuntimeError(declaration.name, "La fonction `" + declaration.name.lexeme
+          + "` doit renvoyer une valeur de type `" + declaration.returnType.get() + "`.");
+    }
+    return result;
   }
 
   @Override
   public String toString() {
     return "<fn " + declaration.name.lexeme + ">";
   }
+
+  private static Type guard(Type type) {
+    return type.runtimeClass() == null ? null : type;
+  }
 }
@@ -0,0 +1,407 @@
+package interpreteur.rouille.java;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+
+// The itérateur returned by the call of a function with a `produit`. The
+// function doesn't run when it is called: each value read resumes it until
+// its next `produit`, which suspends it and gives that value. It is read
+// once, a second loop over it goes on where the first one stopped.
+//
+// A generator is a state machine, not a thread: all it keeps between two
+// values is where it stopped and its variables, in a few objects, so
+// resuming it costs about a call, and one that never returns runs in
+// constant memory. The Interpreter resumes the AST of the function
+// (Interpreted), `rouille build` compiles it into a switch over the places
+// where it can stop (see CodeGenerator.generator).
+abstract class Generateur extends Iterateur {
+  private final String name;
+  private boolean running;
+  private boolean done;
+
+  Generateur(String name) {
+    this.name = name;
+  }
+
+  // runs the function until its next `produit` and returns its value, or
+  // null once it has returned
+  abstract Object resume(Interpreter interpreter);
+
+  private Object next(Interpreter interpreter) {
+    if (done)
+      return null;
+    if (running)
+      throw new RuntimeError(null, "Le générateur `" + name + "` ne peut pas se lire lui-même.");
+    running = true;
+    try {
+      var value = resume(interpreter);
+      done = value == null;
+      return value;
+    } catch (RuntimeException | Error e) {
+      // an error ends it, like a `renvoie`
+      done = true;
+      throw e;
+    } finally {
+      running = false;
+    }
+  }
+
+  @Override
+  void each(Interpreter interpreter, Sink sink) {
+    Object value;
+    while ((value = next(interpreter)) != null) {
+      if (!sink.accept(value))
+        return;
+    }
+  }
+
+  @Override
+  Iterator<?> iterator(Interpreter interpreter) {
+    return new Iterator<Object>() {
+      // resumed by hasNext, not read yet
+      private Object next;
+
+      @Override
+      public boolean hasNext() {
+        if (next == null)
+          next = Generateur.this.next(interpreter);
+        return next != null;
+      }
+
+      @Override
+      public Object next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        var value = next;
+        next = null;
+        return value;
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "<générateur " + name + ">";
+  }
+
+  // The statements and the expressions where a function can stop: its
+  // `produit`, and the statements, blocks, `si` and loops around them (see
+  // Resolver.suspendable). The state machines take these apart, everything
+  // else runs whole, as in any function.
+  static Set<Object> suspending(List<Stmt> body) {
+    var suspending = new HashSet<Object>();
+    suspends(body, suspending);
+    return suspending;
+  }
+
+  private static boolean suspends(List<Stmt> statements, Set<Object> suspending) {
+    var found = false;
+    for (var statement : statements) {
+      found |= suspends(statement, suspending);
+    }
+    return found;
+  }
+
+  private static boolean suspends(Stmt stmt, Set<Object> suspending) {
+    var found = false;
+    if (stmt instanceof Stmt.Yield)
+      found = true;
+    else if (stmt instanceof Stmt.Expression)
+      found = suspends(((Stmt.Expression) stmt).expression, suspending);
+    else if (stmt instanceof Stmt.Return)
+      found = suspends(((Stmt.Return) stmt).value, suspending);
+    else if (stmt instanceof Stmt.While)
+      found = suspends(((Stmt.While) stmt).body, suspending);
+    else if (stmt instanceof Stmt.For)
+      found = suspends(((Stmt.For) stmt).body, suspending);
+    else if (stmt instanceof Stmt.ForEach)
+      found = suspends(((Stmt.ForEach) stmt).body, suspending);
+    if (found)
+      suspending.add(stmt);
+    return found;
+  }
+
+  private static boolean suspends(Expr expr, Set<Object> suspending) {
+    var found = false;
+    if (expr instanceof Expr.Block) {
+      var block = (Expr.Block) expr;
+      found = suspends(block.statements, suspending);
+      if (block.returnedValue.isPresent())
+        found |= suspends(block.returnedValue.get(), suspending);
+    } else if (expr instanceof Expr.If) {
+      var branches = (Expr.If) expr;
+      found = suspends(branches.thenBranch, suspending);
+      if (branches.elseBranch.isPresent())
+        found |= suspends(branches.elseBranch.get(), suspending);
+    } else if (expr instanceof Expr.Loop) {
+      found = suspends(((Expr.Loop) expr).body, suspending);
+    }
+    if (found)
+      suspending.add(expr);
+    return found;
+  }
+
+  // A function resumed by the Interpreter. Its state is a stack of frames,
+  // one per block or loop it is in, with the environments the Interpreter
+  // would have made for them so that the distances of the Resolver hold.
+  // The frames only take apart the statements that suspend the function,
+  // they hand the others to the Interpreter.
+  static final class Interpreted extends Generateur {
+    private final Stmt.Function declaration;
+    private final Set<Object> suspending;
+    // the innermost frame, null once the function has returned
+    private Frame frame;
+    // the value of the `produit` that stopped the function
+    private Object produced;
+
+    Interpreted(Stmt.Function declaration, Environment environment) {
+      super(declaration.name.lexeme);
+      this.declaration = declaration;
+      this.suspending = declaration.suspending;
+      this.frame = new Block(null, environment, declaration.body, Optional.empty());
+    }
+
+    @Override
+    Object resume(Interpreter interpreter) {
+      interpreter.enter(declaration.name);
+      var previous = interpreter.environment();
+      try {
+        while (frame != null) {
+          interpreter.environment(frame.environment);
+          frame = frame.step(interpreter);
+          // an `arrête` or a `continue` leaves the frames up to its loop
+          while (frame != null && interpreter.jumping()) {
+            frame = frame.jumped(interpreter);
+          }
+          if (produced != null) {
+            var value = produced;
+            produced = null;
+            return value;
+          }
+        }
+        return null;
+      } catch (Return e) {
+        frame = null;
+        return null;
+      } catch (StackOverflowError e) {
+        throw interpreter.stackOverflow(declaration.name);
+      } finally {
+        interpreter.environment(previous);
+        interpreter.leave();
+      }
+    }
+
+    // The frame of a statement that suspends the function, run in the
+    // environment of `parent`, which goes on once it is done. A `produit`
+    // needs none: the function stops right after it.
+    private Frame statement(Stmt statement, Frame parent, Interpreter interpreter) {
+      switch (statement.kind) {
+        case Stmt.YIELD:
+          produced = interpreter.evaluate(((Stmt.Yield) statement).value);
+          return parent;
+        case Stmt.EXPRESSION:
+          return expression(((Stmt.Expression) statement).expression, parent, parent.environment, interpreter);
+        case Stmt.RETURN:
+          // nothing goes on after its value
+          return expression(((Stmt.Return) statement).value, null, parent.environment, interpreter);
+        case Stmt.WHILE:
+          return new While(parent, (Stmt.While) statement);
+        case Stmt.FOR:
+          return new For(parent, (Stmt.For) statement, interpreter);
+        case Stmt.FOR_EACH:
+          return new ForEach(parent, (Stmt.ForEach) statement, interpreter);
+        default:
+          throw new IllegalStateException("Unreachable");
+      }
+    }
+
+    // The frame of a block, a `si` or a `boucle` whose value is not used.
+    // A `si` chooses its branch right away.
+    private Frame expression(Expr expr, Frame parent, Environment environment, Interpreter interpreter) {
+      switch (expr.kind) {
+        case Expr.BLOCK:
+          var block = (Expr.Block) expr;
+          return new Block(parent, new Environment(environment), block.statements, block.returnedValue);
+        case Expr.LOOP:
+          return new Forever(parent, environment, (Expr.Loop) expr);
+        case Expr.IF:
+          var branches = (Expr.If) expr;
+          var condition = interpreter.evaluate(branches.condition);
+          if (!branches.proven && !(condition instanceof Boolean))
+            throw new RuntimeError(branches.ifToken, "La condition d'un `si` doit être un booléen.");
+          var branch = (boolean) condition ? Optional.of(branches.thenBranch) : branches.elseBranch;
+          if (branch.isEmpty())
+            return parent;
+          if (!suspending.contains(branch.get())) {
+            interpreter.evaluate(branch.get());
+            return parent;
+          }
+          return expression(branch.get(), parent, environment, interpreter);
+        default:
+          throw new IllegalStateException("Unreachable");
+      }
+    }
+
+    private abstract class Frame {
+      final Frame parent;
+      final Environment environment;
+
+      Frame(Frame parent, Environment environment) {
+        this.parent = parent;
+        this.environment = environment;
+      }
+
+      // Runs the next part of the construct, in its environment: returns
+      // the frame to go on with, itself, the frame of a construct inside
+      // it, or its parent once it is done.
+      abstract Frame step(Interpreter interpreter);
+
+      // after an `arrête` or a `continue` inside it
+      Frame jumped(Interpreter interpreter) {
+        return parent;
+      }
+    }
+
+    private final class Block extends Frame {
+      private final List<Stmt> statements;
+      private final Optional<Expr> returnedValue;
+      private int next = 0;
+
+      Block(Frame parent, Environment environment, List<Stmt> statements, Optional<Expr> returnedValue) {
+        super(parent, environment);
+        this.statements = statements;
+        this.returnedValue = returnedValue;
+      }
+
+      @Override
+      Frame step(Interpreter interpreter) {
+        if (next < statements.size()) {
+          var statement = statements.get(next++);
+          if (suspending.contains(statement))
+            return statement(statement, this, interpreter);
+          interpreter.execute(statement);
+          return this;
+        }
+        if (returnedValue.isEmpty())
+          return parent;
+        if (suspending.contains(returnedValue.get()))
+          return expression(returnedValue.get(), parent, environment, interpreter);
+        interpreter.evaluate(returnedValue.get());
+        return parent;
+      }
+    }
+
+    // runs its body, in a new environment, until it is left
+    private abstract class Loop extends Frame {
+      Loop(Frame parent, Environment environment) {
+        super(parent, environment);
+      }
+
+      Frame body(Expr.Block body) {
+        return new Block(this, new Environment(environment), body.statements, body.returnedValue);
+      }
+
+      @Override
+      Frame jumped(Interpreter interpreter) {
+        return interpreter.leaves() ? parent : this;
+      }
+    }
+
+    private final class While extends Loop {
+      private final Stmt.While stmt;
+
+      While(Frame parent, Stmt.While stmt) {
+        super(parent, parent.environment);
+        this.stmt = stmt;
+      }
+
+      @Override
+      Frame step(Interpreter interpreter) {
+        var condition = interpreter.evaluate(stmt.condition);
+        if (!stmt.proven && !(condition instanceof Boolean))
+          throw new RuntimeError(stmt.whileToken, "La condition d'un `tant` doit être un booléen.");
+        if (!(boolean) condition)
+          return parent;
+        interpreter.tick(stmt.whileToken);
+        return body(stmt.body);
+      }
+    }
+
+    // the variable is in an environment of its own, like in the Interpreter,
+    // and every width counts on a long like its wideFor
+    private final class For extends Loop {
+      private final Stmt.For stmt;
+      private final Entier.Largeur largeur;
+      private final long step;
+      private final long count;
+      private long i;
+      private long n = 0;
+
+      For(Frame parent, Stmt.For stmt, Interpreter interpreter) {
+        super(parent, new Environment(parent.environment));
+        this.stmt = stmt;
+        largeur = stmt.largeur != null ? stmt.largeur : Entier.Largeur.I32;
+        i = Operations.bound(stmt.forToken, largeur, interpreter.evaluate(stmt.start));
+        var end = Operations.bound(stmt.forToken, largeur, interpreter.evaluate(stmt.end));
+        step = stmt.step.isPresent()
+            ? Operations.bound(stmt.forToken, largeur, interpreter.evaluate(stmt.step.get()))
+            : 1;
+        count = Operations.count(stmt.forToken, largeur, i, end, step, stmt.inclusive);
+        environment.define(stmt.name.symbol, largeur.box(i));
+      }
+
+      @Override
+      Frame step(Interpreter interpreter) {
+        if (n == count)
+          return parent;
+        interpreter.tick(stmt.forToken);
+        environment.assignAt(0, stmt.name, largeur.box(i));
+        n++;
+        i += step;
+        return body(stmt.body);
+      }
+    }
+
+    private final class ForEach extends Loop {
+      private final Stmt.ForEach stmt;
+      private final Iterator<?> values;
+
+      ForEach(Frame parent, Stmt.ForEach stmt, Interpreter interpreter) {
+        super(parent, new Environment(parent.environment));
+        this.stmt = stmt;
+        values = Operations.iterator(interpreter, stmt.forToken, interpreter.evaluate(stmt.iterable));
+        environment.define(stmt.name.symbol, Tuple.UNIT);
+      }
+
+      @Override
+      Frame step(Interpreter interpreter) {
+        var value = Operations.next(stmt.forToken, values);
+        if (value == null)
+          return parent;
+        interpreter.tick(stmt.forToken);
+        environment.assignAt(0, stmt.name, value);
+        return body(stmt.body);
+      }
+    }
+
+    // a `boucle`, whose value is not used
+    private final class Forever extends Loop {
+      private final Expr.Loop expr;
+
+      Forever(Frame parent, Environment environment, Expr.Loop expr) {
+        super(parent, environment);
+        this.expr = expr;
+      }
+
+      @Override
+      Frame step(Interpreter interpreter) {
+        interpreter.tick(expr.keyword);
+        return body(expr.body);
+      }
+    }
+  }
+}
@@ -1,10 +1,16 @@
 package interpreteur.rouille.java;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import interpreteur.rouille.java.Expr.Binary;
 import interpreteur.rouille.java.Expr.Call;
@@ -23,37 +29,188 @@ public class Interpreter implements
     Expr.Visitor<Object>,
     Stmt.Visitor<Void> {
 
-  final Environment globals = new Environment();
-  private Environment environment = globals;
+  final Environment globals;
+  private Environment environment;
   public boolean repl_mode = false;
-  private Map<Object, Integer> locals = new HashMap<>();
+  // filled by the Resolver, only read while running
+  private final Map<Object, Integer> locals;
+  private Consumer<String> output = System.out::println;
+  private final Interpreter root;
+  private volatile boolean spawnedTasks = false;
+  // shared with the workers, see Budget.Meter
+  private Budget.Meter meter = Budget.Meter.UNLIMITED;
+  // the directory the relative paths of the files are resolved against,
+  // null for the JVM's: a script run by the daemon reads its client's
+  private Path directory;
+  // loop iterations and calls, then cells, left in this interpreter's slices
+  private long ticks;
+  private long cells;
+  private int depth;
+  // An `arrête` or a `continue` doesn't throw: it sets `jump`, then the
+  // statements and the blocks up to its loop return early when they see it
+  // (see Resolver.leavable). `jumps` is the number of loops it still has to
+  // leave before its own, `broken` the value of the `boucle` it leaves.
+  private static final int NONE = 0, BREAK = 1, CONTINUE = 2;
+  private int jump = NONE;
+  private int jumps;
+  private Object broken;
+
+  Interpreter(Map<Object, Integer> locals) {
+    globals = Environment.globals(Natives.ENVIRONMENT);
+    environment = globals;
+    this.locals = locals;
+    root = this;
+  }
+
+  // Worker state: shares the globals and the resolved variables of `parent`,
+  // but walks its own environments so it can run on another thread.
+  private Interpreter(Interpreter parent) {
+    globals = parent.globals;
+    environment = globals;
+    locals = parent.locals;
+    repl_mode = parent.repl_mode;
+    output = parent.output;
+    root = parent.root;
+    meter = parent.meter;
+    directory = parent.directory;
+    depth = parent.depth;
+  }
+
+  Interpreter fork() {
+    return new Interpreter(this);
+  }
+
+  // a worker that may outlive the call that created it
+  Interpreter spawn() {
+    root.spawnedTasks = true;
+    return fork();
+  }
+
+  boolean spawnedTasks() {
+    return spawnedTasks;
+  }
 
-  Interpreter() {
-    Natives.load(globals);
+  // forgets the globals of the previous execution
+  void reset(Consumer<String> output, Budget budget, Path directory) {
+    globals.clear();
+    environment = globals;
+    this.output = output;
+    meter = budget.start();
+    this.directory = directory;
+    ticks = 0;
+    cells = 0;
+    depth = 0;
+    jump = NONE;
   }
 
-  void interpret(List<Stmt> statements) {
+  // a loop iteration
+  void tick(Token at) {
+    if (--ticks < 0)
+      ticks = meter.fuel(at);
+  }
+
+  // a function call, until the matching `leave()`
+  void enter(Token at) {
+    tick(at);
+    if (++depth > meter.maxDepth) {
+      depth--;
+      throw meter.tooDeep(at);
+    }
+  }
+
+  void leave() {
+    depth--;
+  }
+
+  RuntimeError stackOverflow(Token at) {
+    return new RuntimeError(at, "La pile d'appels est pleine (" + depth + " appels imbriqués).");
+  }
+
+  // A rouille call nests several Java frames (the metering, the dispatch,
+  // the visitor), so the scripts run on threads with a stack of their own,
+  // of -Drouille.pile MB, instead of the caller's. There are at most
+  // -Drouille.executions of them (default: the number of processors), the
+  // other executions wait for one.
+  private static final long STACK_SIZE = Long.getLong("rouille.pile", 64) << 20;
+  private static final int EXECUTIONS = Integer.getInteger("rouille.executions",
+      Runtime.getRuntime().availableProcessors());
+  private static final ThreadPoolExecutor executions = new ThreadPoolExecutor(EXECUTIONS, EXECUTIONS,
+      60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        var thread = new Thread(null, runnable, "rouille", STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  static {
+    executions.allowCoreThreadTimeOut(true);
+  }
+
+  // Runs `execution` on one of these threads, and throws what it throws.
+  // When the caller is interrupted, the script stops at its next slice of
+  // fuel (see Budget.Meter).
+  static <T> T onStack(Supplier<T> execution) {
+    var future = executions.submit(execution::get);
     try {
-      for (Stmt statement : statements) {
-        // TODO: check that top level statements are only function definition (or
-        // constants?) (only in !repl_mode)
-        execute(statement);
-      }
-      // this is a hacky way of executing the main function
-      if (!repl_mode) {
-        var main = new Expr.Call(new Expr.Variable(new Token("principale")), null, new ArrayList<>());
-        evaluate(main);
-      }
-    } catch (RuntimeError e) {
-      App.runtimeError(e);
+      return future.get();
+    } catch (ExecutionException e) {
+      var cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw interrupted(null);
     }
   }
 
+  static RuntimeError interrupted(Token at) {
+    return new RuntimeError(at, "L'exécution a été interrompue.");
+  }
+
+  // the file a native reads
+  Path path(Chaine chemin) {
+    var path = Path.of(chemin.toString());
+    return directory == null ? path : directory.resolve(path);
+  }
+
+  void allocate(Token at, long count) {
+    if ((cells -= count) < 0)
+      cells = meter.allocations(at, -cells);
+  }
+
+  // a Generateur runs the statements of its function in its own
+  // environments, between its values
+  Environment environment() {
+    return environment;
+  }
+
+  void environment(Environment environment) {
+    this.environment = environment;
+  }
+
+  // returns the value of `principale`, or null in repl mode
+  Object interpret(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      // TODO: check that top level statements are only function definition (or
+      // constants?) (only in !repl_mode)
+      execute(statement);
+    }
+    // this is a hacky way of executing the main function
+    if (!repl_mode) {
+      var main = new Expr.Call(new Expr.Variable(new Token("principale")), null, new ArrayList<>());
+      return evaluate(main);
+    }
+    return null;
+  }
+
   @Override
   public Void visitExpressionStmt(Expression stmt) {
     var value = evaluate(stmt.expression);
     if (repl_mode) {
-      System.out.println(stringify(value));
+      output.accept(Operations.stringify(value));
     }
     return null;
   }
@@ -61,20 +218,32 @@ public class Interpreter implements
   @Override
   public Void visitPrintStmt(Print stmt) {
     var value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
+    output.accept(Operations.stringify(value));
     return null;
   }
 
   @Override
   public Void visitVarStmt(Var stmt) {
     var value = evaluate(stmt.initializer);
-    environment.define(stmt.name.lexeme, value, stmt.mutable);
+    if (jump != NONE)
+      return null;
+    if (stmt.guard != null && !stmt.guard.admits(value)) {
+      throw new RuntimeError(stmt.name, "La variable `" + stmt.name.lexeme + "` est de type `" + stmt.guard
+          + "` mais reçoit `" + Operations.stringify(value) + "`.");
+    }
+    environment.define(stmt.name.symbol, stmt.cell ? new Environment.Cell(value) : value, stmt.mutable);
     return null;
   }
 
   @Override
   public Void visitAssignStmt(Assign stmt) {
     var value = evaluate(stmt.value);
+    if (jump != NONE)
+      return null;
+    if (stmt.guard != null && !stmt.guard.admits(value)) {
+      throw new RuntimeError(stmt.name, "La variable `" + stmt.name.lexeme + "` est de type `" + stmt.guard
+          + "` mais reçoit `" + Operations.stringify(value) + "`.");
+    }
 
     var distance = locals.get(stmt);
     if (distance != null) {
@@ -88,29 +257,201 @@ public class Interpreter implements
 
   @Override
   public Void visitWhileStmt(While stmt) {
-    if (stmt.body.returnedValue.isPresent()) {
-      throw new RuntimeError(stmt.whileToken,
-          "Le block d'un `tant` ne peut pas contenir de valeur de retour implicite.");
-    }
     var firstLoop = evaluate(stmt.condition);
-    if (!(firstLoop instanceof Boolean)) {
+    if (!stmt.proven && !(firstLoop instanceof Boolean)) {
       throw new RuntimeError(stmt.whileToken, "La condition d'un `tant` doit être un booléen.");
     }
 
     if ((boolean) firstLoop) {
       evaluate(stmt.body);
+      if (jump != NONE && leaves())
+        return null;
       while ((boolean) evaluate(stmt.condition)) {
+        tick(stmt.whileToken);
+        evaluate(stmt.body);
+        if (jump != NONE && leaves())
+          return null;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public Void visitForEachStmt(Stmt.ForEach stmt) {
+    var iterator = Operations.iterator(this, stmt.forToken, evaluate(stmt.iterable));
+
+    var previousEnv = this.environment;
+    try {
+      this.environment = new Environment(previousEnv);
+      this.environment.define(stmt.name.symbol, Tuple.UNIT);
+      Object value;
+      while ((value = Operations.next(stmt.forToken, iterator)) != null) {
+        tick(stmt.forToken);
+        this.environment.assignAt(0, stmt.name, value);
+        evaluate(stmt.body);
+        if (jump != NONE && leaves())
+          break;
+      }
+    } finally {
+      this.environment = previousEnv;
+    }
+
+    return null;
+  }
+
+  @Override
+  public Object visitLoopExpr(Expr.Loop expr) {
+    while (true) {
+      tick(expr.keyword);
+      evaluate(expr.body);
+      if (jump != NONE && leaves()) {
+        var value = broken;
+        broken = null;
+        return value;
+      }
+    }
+  }
+
+  // an `arrête` or a `continue` is leaving the statements being run
+  boolean jumping() {
+    return jump != NONE;
+  }
+
+  // After the body of a loop has been left by a jump: true if the loop
+  // stops, false if it goes on with its next iteration.
+  boolean leaves() {
+    if (jumps > 0) {
+      // the jump is for an enclosing loop
+      jumps--;
+      return true;
+    }
+    var stops = jump == BREAK;
+    jump = NONE;
+    return stops;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    broken = stmt.value.isPresent() ? evaluate(stmt.value.get()) : Tuple.UNIT;
+    jumps = stmt.loops;
+    jump = BREAK;
+    return null;
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    jumps = stmt.loops;
+    jump = CONTINUE;
+    return null;
+  }
+
+  @Override
+  public Void visitStructStmt(Stmt.Struct stmt) {
+    environment.define(stmt.name.symbol, new Structure(stmt.name, stmt.fields));
+    return null;
+  }
+
+  @Override
+  public Void visitSetFieldStmt(Stmt.SetField stmt) {
+    var instance = Operations.instance(evaluate(stmt.object), stmt.name);
+    var value = evaluate(stmt.value);
+    if (jump != NONE)
+      return null;
+    var field = stmt.cache;
+    if (field == null || field.structure != instance.structure) {
+      field = instance.structure.field(stmt.name);
+      stmt.cache = field;
+    }
+    instance.fields[field.slot] = value;
+    return null;
+  }
+
+  @Override
+  public Void visitSetIndexStmt(Stmt.SetIndex stmt) {
+    var object = evaluate(stmt.object);
+    var index = evaluate(stmt.index);
+    var value = evaluate(stmt.value);
+    if (jump != NONE)
+      return null;
+    Operations.setIndex(stmt.bracket, object, index, value);
+    return null;
+  }
+
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    if (stmt.largeur != null && stmt.largeur != Entier.Largeur.I32)
+      return wideFor(stmt);
+
+    int start = rangeBound(stmt.forToken, stmt.start);
+    int end = rangeBound(stmt.forToken, stmt.end);
+    int step = stmt.step.isPresent() ? rangeBound(stmt.forToken, stmt.step.get()) : 1;
+    // the bounds are checked once here, the loop itself only counts
+    var count = Operations.count(stmt.forToken, Entier.Largeur.I32, start, end, step, stmt.inclusive);
+
+    var previousEnv = this.environment;
+    try {
+      this.environment = new Environment(previousEnv);
+      this.environment.define(stmt.name.symbol, start);
+      int i = start;
+      for (long n = 0; n < count; n++, i += step) {
+        tick(stmt.forToken);
+        this.environment.assignAt(0, stmt.name, i);
         evaluate(stmt.body);
+        if (jump != NONE && leaves())
+          break;
       }
+    } finally {
+      this.environment = previousEnv;
+    }
+
+    return null;
+  }
+
+  // The other widths count on the bits of a long, which wrap like the
+  // values of the width.
+  private Void wideFor(Stmt.For stmt) {
+    var largeur = stmt.largeur;
+    var start = Operations.bound(stmt.forToken, largeur, evaluate(stmt.start));
+    var end = Operations.bound(stmt.forToken, largeur, evaluate(stmt.end));
+    var step = stmt.step.isPresent() ? Operations.bound(stmt.forToken, largeur, evaluate(stmt.step.get())) : 1;
+    var count = Operations.count(stmt.forToken, largeur, start, end, step, stmt.inclusive);
+
+    var previousEnv = this.environment;
+    try {
+      this.environment = new Environment(previousEnv);
+      this.environment.define(stmt.name.symbol, largeur.box(start));
+      var i = start;
+      for (long n = 0; n < count; n++, i += step) {
+        tick(stmt.forToken);
+        this.environment.assignAt(0, stmt.name, largeur.box(i));
+        evaluate(stmt.body);
+        if (jump != NONE && leaves())
+          break;
+      }
+    } finally {
+      this.environment = previousEnv;
     }
 
     return null;
   }
 
+  private int rangeBound(Token forToken, Expr expr) {
+    var value = evaluate(expr);
+    if (value instanceof Integer)
+      return (int) value;
+    return (int) Operations.bound(forToken, Entier.Largeur.I32, value);
+  }
+
   @Override
   public Void visitFunctionStmt(Stmt.Function stmt) {
-    var function = new Function(stmt, environment);
-    environment.define(stmt.name.lexeme, function);
+    // the captures are copied after the definition, so that a recursive
+    // function finds itself
+    var closure = stmt.captures.isEmpty() ? globals : new Environment(globals);
+    environment.define(stmt.name.symbol, new Function(stmt, closure));
+    for (var capture : stmt.captures) {
+      closure.define(capture.name.symbol, environment.captureAt(locals.get(capture), capture.name.symbol));
+    }
     return null;
   }
 
@@ -119,9 +460,20 @@ public class Interpreter implements
     throw new Return(evaluate(stmt.value));
   }
 
+  // the Generateur of the function runs its `produit`
+  @Override
+  public Void visitYieldStmt(Stmt.Yield stmt) {
+    throw new IllegalStateException("Unreachable");
+  }
+
   @Override
   public Object visitLogicalExpr(Expr.Logical expr) {
     var left = evaluate(expr.left);
+    if (expr.proven) {
+      if (expr.operator.type == TokenType.OR ? (boolean) left : !(boolean) left)
+        return left;
+      return evaluate(expr.right);
+    }
     if (!(left instanceof Boolean)) {
       throw new RuntimeError(expr.operator,
           "L'opérande gauche de l'operateur logique `" + expr.operator.lexeme + "` doit être un booléen");
@@ -154,7 +506,7 @@ public class Interpreter implements
   @Override
   public Object visitIfExpr(If expr) {
     var condition = evaluate(expr.condition);
-    if (!(condition instanceof Boolean)) {
+    if (!expr.proven && !(condition instanceof Boolean)) {
       throw new RuntimeError(expr.ifToken, "La condition d'un `si` doit être un booléen.");
     }
 
@@ -163,7 +515,7 @@ public class Interpreter implements
     } else if (expr.elseBranch.isPresent()) {
       return evaluate(expr.elseBranch.get());
     } else {
-      return new Tuple();
+      return Tuple.UNIT;
     }
   }
 
@@ -177,166 +529,87 @@ public class Interpreter implements
     Object left = evaluate(expr.left);
     Object right = evaluate(expr.right);
 
-    switch (expr.operator.type) {
-      case MINUS:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left - (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left - (int) right;
-        else
-          // TODO: Implement binary - for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `-` doivent être des nombres du même type.");
-      case SLASH:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left / (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left / (int) right;
-        else
-          // TODO: Implement binary / for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `/` doivent être des nombres du même type.");
-      case STAR:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left * (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left * (int) right;
-        else
-          // TODO: Implement binary * for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `*` doivent être des nombres du même type.");
-      case PERCENT:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left % (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left % (int) right;
-        else
-          // TODO: Implement binary % for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `%` doivent être des nombres du même type.");
-      case PLUS:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left + (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left + (int) right;
-        else if (right instanceof String && left instanceof String)
-          return (String) left + (String) right;
-        else
-          // TODO: Implement binary + for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `+` doivent être des nombres du même type (ou des chaines...).");
-      case GREATER:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left > (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left > (int) right;
-        else
-          // TODO: Implement binary > for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `>` doivent être des nombres du même type.");
-      case GREATER_EQUAL:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left >= (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left >= (int) right;
-        else
-          // TODO: Implement binary >= for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `>=` doivent être des nombres du même type.");
-      case LESS:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left < (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left < (int) right;
-        else
-          // TODO: Implement binary < for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `<` doivent être des nombres du même type.");
-      case LESS_EQUAL:
-        if (right instanceof Double && left instanceof Double)
-          return (double) left <= (double) right;
-        else if (right instanceof Integer && left instanceof Integer)
-          return (int) left <= (int) right;
-        else
-          // TODO: Implement binary <= for all rust's number types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `<=` doivent être des nombres du même type.");
-      case EQUAL_EQUAL:
-        return left.equals(right);
-      case BANG_EQUAL:
-        return !left.equals(right);
-      case AMPERSAND:
-        if (right instanceof Integer && left instanceof Integer)
-          return (int) left & (int) right;
-        else
-          // TODO: Implement binary & for all rust's integer types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `&` doivent être des nombres entiers.");
-      case BITWISE_OR:
-        if (right instanceof Integer && left instanceof Integer)
-          return (int) left | (int) right;
-        else
-          // TODO: Implement binary | for all rust's integer types
-          throw new RuntimeError(expr.operator,
-              "Les deux operandes de l'operateur binarire `|` doivent être des nombres entiers.");
-      default:
-        break;
-    }
+    // operand types proven by the TypeChecker
+    if (expr.operands == Type.Kind.ENTIER)
+      return Operations.integer(expr.operator, (int) left, (int) right);
+    else if (expr.operands == Type.Kind.FLOTTANT)
+      return Operations.floating(expr.operator, (double) left, (double) right);
 
-    throw new RuntimeError(null, "Unreachable");
+    if (right instanceof Chaine && left instanceof Chaine && expr.operator.type == TokenType.PLUS)
+      allocate(expr.operator, ((Chaine) right).length());
+    return Operations.binary(expr.operator, left, right, untyped(expr.left), untyped(expr.right));
+  }
+
+  private static boolean untyped(Expr expr) {
+    return expr instanceof Expr.Literal && ((Expr.Literal) expr).untyped;
   }
 
   @Override
   public Object visitCallExpr(Call expr) {
+    if (expr.intrinsic != null)
+      return intrinsic(expr);
     var callee = evaluate(expr.callee);
 
-    var arguments = new ArrayList<>();
-    for (var arg : expr.arguments) {
-      arguments.add(evaluate(arg));
-    }
-
-    if (!(callee instanceof Callable)) {
-      throw new RuntimeError(expr.paren, "Seules les fonctions peuvent être appelées");
+    // the arguments are evaluated from left to right, like any Java arguments
+    var arguments = expr.arguments;
+    switch (arguments.size()) {
+      case 0:
+        return Operations.call0(this, expr.paren, callee);
+      case 1:
+        return Operations.call1(this, expr.paren, callee, evaluate(arguments.get(0)));
+      case 2:
+        return Operations.call2(this, expr.paren, callee, evaluate(arguments.get(0)), evaluate(arguments.get(1)));
+      case 3:
+        return Operations.call3(this, expr.paren, callee, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+            evaluate(arguments.get(2)));
+      case 4:
+        return Operations.call4(this, expr.paren, callee, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+            evaluate(arguments.get(2)), evaluate(arguments.get(3)));
+      default:
+        var values = new ArrayList<>(arguments.size());
+        for (var arg : arguments) {
+          values.add(evaluate(arg));
+        }
+        return Operations.call(this, expr.paren, callee, values);
     }
+  }
 
-    var function = (Callable) callee;
-
-    if (arguments.size() != function.arity()) {
-      throw new RuntimeError(expr.paren,
-          "Mauvais nombre d'arguments passé en paramètre (" +
-              function.arity() + " attendus mais " + arguments.size() + " reçus)");
+  // a math function, computed without calling its native (see Maths)
+  private Object intrinsic(Call expr) {
+    var intrinsic = expr.intrinsic;
+    var x = evaluate(expr.arguments.get(0));
+    if (intrinsic.arity == 1) {
+      if (expr.operands == Type.Kind.FLOTTANT)
+        return intrinsic.apply((double) x);
+      if (expr.operands == Type.Kind.ENTIER)
+        return Maths.abs(expr.paren, (int) x);
+      return intrinsic.call(expr.paren, x);
     }
 
-    return function.call(this, arguments);
+    var y = evaluate(expr.arguments.get(1));
+    if (expr.operands == Type.Kind.FLOTTANT)
+      return intrinsic.apply((double) x, (double) y);
+    if (expr.operands == Type.Kind.ENTIER)
+      return intrinsic.apply((int) x, (int) y);
+    return intrinsic.call(expr.paren, x, y, untyped(expr.arguments.get(0)), untyped(expr.arguments.get(1)));
   }
 
   @Override
   public Object visitUnaryExpr(Unary expr) {
     Object right = evaluate(expr.right);
 
-    switch (expr.operator.type) {
-      case MINUS:
-        if (right instanceof Double)
-          return -(double) right;
-        else if (right instanceof Integer)
-          return -(int) right;
-        else
-          // TODO: Implement unary - for all rust's number types
-          throw new RuntimeError(expr.operator, "Les Operandes de l'operateur unaire `-` doivent être des nombres.");
-      case BANG:
-        if (right instanceof Boolean)
-          return !(boolean) right;
-        else if (right instanceof Integer)
-          // in rust, i_ and u_ implements unary not, and it's bitwise
-          // but java doesn't, so we XOR it with ones
-          return (int) right ^ Integer.MAX_VALUE;
-        else
-          // TODO: Implement unary ! for all rust's integer types
-          throw new RuntimeError(expr.operator,
-              "Les Operandes de l'operateur unaire `!` doivent être des entiers (u_ ou i_).");
-      default:
-        throw new RuntimeError(null, "Unreachable");
-    }
+    if (expr.operand == Type.Kind.ENTIER)
+      try {
+        return expr.operator.type == TokenType.MINUS ? Math.negateExact((int) right) : ~(int) right;
+      } catch (ArithmeticException e) {
+        throw Entier.overflow(expr.operator, Entier.Largeur.I32);
+      }
+    else if (expr.operand == Type.Kind.FLOTTANT)
+      return -(double) right;
+    else if (expr.operand == Type.Kind.BOOL)
+      return !(boolean) right;
+
+    return Operations.unary(expr.operator, right);
   }
 
   @Override
@@ -351,20 +624,181 @@ public class Interpreter implements
 
   @Override
   public Object visitTupleExpr(Expr.Tuple expr) {
-    var items = new ArrayList<Object>();
-    for (var e : expr.expressions) {
-      items.add(evaluate(e));
+    var expressions = expr.expressions;
+    allocate(null, expressions.size());
+    switch (expressions.size()) {
+      case 0:
+        return Tuple.UNIT;
+      case 2:
+        return new Tuple2(evaluate(expressions.get(0)), evaluate(expressions.get(1)));
+      case 3:
+        return new Tuple3(evaluate(expressions.get(0)), evaluate(expressions.get(1)),
+            evaluate(expressions.get(2)));
+      default:
+        var items = new Object[expressions.size()];
+        for (int i = 0; i < items.length; i++) {
+          items[i] = evaluate(expressions.get(i));
+        }
+        return new TupleN(items);
     }
+  }
 
-    return new Tuple(items);
+  @Override
+  public Object visitGetExpr(Expr.Get expr) {
+    var instance = Operations.instance(evaluate(expr.object), expr.name);
+    var field = expr.cache;
+    if (field == null || field.structure != instance.structure) {
+      field = instance.structure.field(expr.name);
+      expr.cache = field;
+    }
+    return instance.fields[field.slot];
   }
 
-  private Object evaluate(Expr expr) {
-    return expr.accept(this);
+  @Override
+  public Object visitConstructExpr(Expr.Construct expr) {
+    var structure = Operations.structure(evaluate(expr.structure), expr.structure.name);
+    var layout = expr.cache;
+    if (layout == null || layout.structure != structure) {
+      layout = structure.layout(expr.structure.name, expr.fields);
+      expr.cache = layout;
+    }
+
+    allocate(expr.structure.name, layout.slots.length);
+    var fields = new Object[layout.slots.length];
+    for (int i = 0; i < fields.length; i++) {
+      fields[layout.slots[i]] = evaluate(expr.values.get(i));
+    }
+    return new Instance(layout.structure, fields);
   }
 
-  private void execute(Stmt statement) {
-    statement.accept(this);
+  @Override
+  public Object visitIndexExpr(Expr.Index expr) {
+    var object = evaluate(expr.object);
+    var index = evaluate(expr.index);
+    return Operations.index(expr.bracket, object, index);
+  }
+
+  @Override
+  public Object visitArrayExpr(Expr.Array expr) {
+    allocate(expr.bracket, expr.elements.size());
+    var vec = new Vec();
+    for (var e : expr.elements) {
+      vec.push(evaluate(e));
+    }
+    return vec;
+  }
+
+  @Override
+  public Object visitRepeatExpr(Expr.Repeat expr) {
+    var value = evaluate(expr.value);
+    var count = Operations.repeatCount(expr.bracket, evaluate(expr.count));
+    allocate(expr.bracket, count);
+    return Vec.filled(value, count);
+  }
+
+  // -Drouille.dispatch=switch dispatches on the node's tag, which calls the
+  // visit methods directly instead of a megamorphic accept() followed by an
+  // interface call. It is slower on HotSpot (see `make bench-dispatch`): the
+  // accept() of each node class keeps its own profile, so its visit call
+  // is monomorphic and inlined, while the switch is one big method that the
+  // JIT stops inlining into.
+  private static final boolean SWITCH_DISPATCH = "switch".equals(System.getProperty("rouille.dispatch"));
+
+  Object evaluate(Expr expr) {
+    if (!SWITCH_DISPATCH)
+      return expr.accept(this);
+    switch (expr.kind) {
+      case Expr.BINARY:
+        return visitBinaryExpr((Expr.Binary) expr);
+      case Expr.CALL:
+        return visitCallExpr((Expr.Call) expr);
+      case Expr.GROUPING:
+        return visitGroupingExpr((Expr.Grouping) expr);
+      case Expr.LITERAL:
+        return visitLiteralExpr((Expr.Literal) expr);
+      case Expr.TUPLE:
+        return visitTupleExpr((Expr.Tuple) expr);
+      case Expr.LOGICAL:
+        return visitLogicalExpr((Expr.Logical) expr);
+      case Expr.UNARY:
+        return visitUnaryExpr((Expr.Unary) expr);
+      case Expr.VARIABLE:
+        return visitVariableExpr((Expr.Variable) expr);
+      case Expr.BLOCK:
+        return visitBlockExpr((Expr.Block) expr);
+      case Expr.IF:
+        return visitIfExpr((Expr.If) expr);
+      case Expr.INDEX:
+        return visitIndexExpr((Expr.Index) expr);
+      case Expr.ARRAY:
+        return visitArrayExpr((Expr.Array) expr);
+      case Expr.REPEAT:
+        return visitRepeatExpr((Expr.Repeat) expr);
+      case Expr.GET:
+        return visitGetExpr((Expr.Get) expr);
+      case Expr.CONSTRUCT:
+        return visitConstructExpr((Expr.Construct) expr);
+      case Expr.LOOP:
+        return visitLoopExpr((Expr.Loop) expr);
+      default:
+        throw new IllegalStateException("Unreachable");
+    }
+  }
+
+  void execute(Stmt statement) {
+    if (!SWITCH_DISPATCH) {
+      statement.accept(this);
+      return;
+    }
+    switch (statement.kind) {
+      case Stmt.EXPRESSION:
+        visitExpressionStmt((Stmt.Expression) statement);
+        break;
+      case Stmt.FUNCTION:
+        visitFunctionStmt((Stmt.Function) statement);
+        break;
+      case Stmt.PRINT:
+        visitPrintStmt((Stmt.Print) statement);
+        break;
+      case Stmt.RETURN:
+        visitReturnStmt((Stmt.Return) statement);
+        break;
+      case Stmt.VAR:
+        visitVarStmt((Stmt.Var) statement);
+        break;
+      case Stmt.ASSIGN:
+        visitAssignStmt((Stmt.Assign) statement);
+        break;
+      case Stmt.SET_INDEX:
+        visitSetIndexStmt((Stmt.SetIndex) statement);
+        break;
+      case Stmt.SET_FIELD:
+        visitSetFieldStmt((Stmt.SetField) statement);
+        break;
+      case Stmt.WHILE:
+        visitWhileStmt((Stmt.While) statement);
+        break;
+      case Stmt.FOR:
+        visitForStmt((Stmt.For) statement);
+        break;
+      case Stmt.FOR_EACH:
+        visitForEachStmt((Stmt.ForEach) statement);
+        break;
+      case Stmt.STRUCT:
+        visitStructStmt((Stmt.Struct) statement);
+        break;
+      case Stmt.BREAK:
+        visitBreakStmt((Stmt.Break) statement);
+        break;
+      case Stmt.CONTINUE:
+        visitContinueStmt((Stmt.Continue) statement);
+        break;
+      case Stmt.YIELD:
+        visitYieldStmt((Stmt.Yield) statement);
+        break;
+      default:
+        throw new IllegalStateException("Unreachable");
+    }
   }
 
   Object executeBlock(List<Stmt> statements, Environment environment) {
@@ -373,12 +807,14 @@ public class Interpreter implements
 
   Object executeBlock(List<Stmt> statements, Optional<Expr> returnedValue, Environment environment) {
     var previousEnv = this.environment;
-    Object result = new Tuple();
+    Object result = Tuple.UNIT;
     try {
       this.environment = environment;
 
       for (var statement : statements) {
         execute(statement);
+        if (jump != NONE)
+          return result;
       }
       if (returnedValue.isPresent())
         result = evaluate(returnedValue.get());
@@ -389,25 +825,12 @@ public class Interpreter implements
     return result;
   }
 
-  public void resolve(Object exprOrStmt, int depth) {
-    locals.put(exprOrStmt, depth);
-  }
-
   private Object lookUpVariable(Token name, Expr expr) {
     Integer distance = locals.get(expr);
     if (distance != null) {
-      return environment.getAt(distance, name.lexeme);
+      return environment.getAt(distance, name.symbol);
     } else {
       return globals.get(name);
     }
   }
-
-  private String stringify(Object o) {
-    if (o == null)
-      return "Null 🤨 🤬";
-    else if (o instanceof Boolean)
-      return ((boolean) o) ? "vrai" : "faux";
-    else
-      return o.toString();
-  }
 }
@@ -0,0 +1,576 @@
+package interpreteur.rouille.java;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Lazy iterators. `iter(valeurs)` (a vecteur, the `lignes` of a file, a
+// dico or an iterator), `intervalle(debut, fin)`, `entrees(dico)` and the
+// functions with a `produit` (see Generateur) make one; `map`, `filtre`,
+// `prend`, `saute` and `zip` wrap one in another, without reading it;
+// `somme`, `compte`, `plie` and `collecte` read one. The adaptors also take
+// a vecteur, a dico or lines directly.
+//
+// A terminal operation pushes the values of the source through the sinks of
+// the adaptors into its own: the whole pipeline is a single loop, with no
+// collection in between. The entiers and flottants of an intervalle or of
+// a vecteur are pushed unboxed (acceptInt, acceptDouble) until a rouille
+// function needs them as objects. A `pour` pulls the values one at a time
+// instead (iterator).
+//
+// The pairs of `zip` and `entrees` are spread over the parameters of a
+// function that takes one per element: `map(zip(a, b), multiplie)` calls
+// `multiplie(x, y)`.
+abstract class Iterateur {
+  interface Sink {
+    // false to stop the iteration
+    boolean accept(Object value);
+
+    default boolean acceptInt(int value) {
+      return accept(value);
+    }
+
+    default boolean acceptDouble(double value) {
+      return accept(value);
+    }
+  }
+
+  // pushes the values to the sink until it returns false
+  abstract void each(Interpreter interpreter, Sink sink);
+
+  abstract Iterator<?> iterator(Interpreter interpreter);
+
+  @Override
+  public String toString() {
+    return "<iterateur>";
+  }
+
+  static Iterateur of(Object value, String name) {
+    if (value instanceof Iterateur)
+      return (Iterateur) value;
+    if (value instanceof Vec)
+      return new Values((Vec) value);
+    if (value instanceof Dico)
+      return new Pulled(((Dico) value)::entries);
+    if (value instanceof Fichiers.Lignes)
+      return new Pulled((Fichiers.Lignes) value);
+    throw new RuntimeError(null,
+        "Le paramètre de `" + name + "` doit être un itérateur, un vecteur, un dictionnaire ou des lignes.");
+  }
+
+  private static Callable function(Object value, String name) {
+    if (!(value instanceof Callable))
+      throw new RuntimeError(null, "Le paramètre `f` de `" + name + "` doit être une fonction.");
+    return (Callable) value;
+  }
+
+  // f(value), or f(a, b) for a pair (a, b) when f takes two parameters
+  private static Object apply(Interpreter interpreter, Callable f, Object value, String name) {
+    if (f.arity() == 1)
+      return f.call1(interpreter, value);
+    if (f.arity() == 2 && value instanceof Tuple && ((Tuple) value).size() == 2)
+      return f.call2(interpreter, ((Tuple) value).get(0), ((Tuple) value).get(1));
+    throw new RuntimeError(null, "La fonction de `" + name + "` doit avoir un paramètre (ou deux pour une paire), pas "
+        + f.arity() + ".");
+  }
+
+  private static boolean test(Interpreter interpreter, Callable f, Object value) {
+    var kept = apply(interpreter, f, value, "filtre");
+    if (!(kept instanceof Boolean))
+      throw new RuntimeError(null, "La fonction de `filtre` doit renvoyer un booléen.");
+    return (boolean) kept;
+  }
+
+  // [start, end)
+  private static final class Range extends Iterateur {
+    private final int start;
+    private final int end;
+
+    Range(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    void each(Interpreter interpreter, Sink sink) {
+      for (int i = start; i < end; i++) {
+        interpreter.tick(null);
+        if (!sink.acceptInt(i))
+          return;
+      }
+    }
+
+    @Override
+    Iterator<?> iterator(Interpreter interpreter) {
+      return new Iterator<Object>() {
+        private int next = start;
+
+        @Override
+        public boolean hasNext() {
+          return next < end;
+        }
+
+        @Override
+        public Object next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          return next++;
+        }
+      };
+    }
+  }
+
+  private static final class Values extends Iterateur {
+    private final Vec vec;
+
+    Values(Vec vec) {
+      this.vec = vec;
+    }
+
+    @Override
+    void each(Interpreter interpreter, Sink sink) {
+      vec.each(interpreter, sink);
+    }
+
+    @Override
+    Iterator<?> iterator(Interpreter interpreter) {
+      return vec.iterator();
+    }
+  }
+
+  // the lines of a file or the entries of a dico
+  private static final class Pulled extends Iterateur {
+    private final Iterable<?> values;
+
+    Pulled(Iterable<?> values) {
+      this.values = values;
+    }
+
+    @Override
+    void each(Interpreter interpreter, Sink sink) {
+      for (var values = this.values.iterator(); values.hasNext();) {
+        interpreter.tick(null);
+        if (!sink.accept(values.next()))
+          return;
+      }
+    }
+
+    @Override
+    Iterator<?> iterator(Interpreter interpreter) {
+      return values.iterator();
+    }
+  }
+
+  private static final class Map extends Iterateur {
+    private final Iterateur source;
+    private final Callable f;
+
+    Map(Iterateur source, Callable f) {
+      this.source = source;
+      this.f = f;
+    }
+
+    @Override
+    void each(Interpreter interpreter, Sink sink) {
+      source.each(interpreter, value -> sink.accept(apply(interpreter, f, value, "map")));
+    }
+
+    @Override
+    Iterator<?> iterator(Interpreter interpreter) {
+      var values = source.iterator(interpreter);
+      return new Iterator<Object>() {
+        @Override
+        public boolean hasNext() {
+          return values.hasNext();
+        }
+
+        @Override
+        public Object next() {
+          return apply(interpreter, f, values.next(), "map");
+        }
+      };
+    }
+  }
+
+  private static final class Filter extends Iterateur {
+    private final Iterateur source;
+    private final Callable f;
+
+    Filter(Iterateur source, Callable f) {
+      this.source = source;
+      this.f = f;
+    }
+
+    @Override
+    void each(Interpreter interpreter, Sink sink) {
+      source.each(interpreter, new Sink() {
+        @Override
+        public boolean accept(Object value) {
+          return !test(interpreter, f, value) || sink.accept(value);
+        }
+
+        @Override
+        public boolean acceptInt(int value) {
+          return !test(interpreter, f, value) || sink.acceptInt(value);
+        }
+
+        @Override
+        public boolean acceptDouble(double value) {
+          return !test(interpreter, f, value) || sink.acceptDouble(value);
+        }
+      });
+    }
+
+    @Override
+    Iterator<?> iterator(Interpreter interpreter) {
+      var values = source.iterator(interpreter);
+      return new Iterator<Object>() {
+        // the next value kept, null until it is looked for
+        private Object next;
+
+        @Override
+        public boolean hasNext() {
+          while (next == null && values.hasNext()) {
+            var value = values.next();
+            if (test(interpreter, f, value))
+              next = value;
+          }
+          return next != null;
+        }
+
+        @Override
+        public Object next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          var value = next;
+          next = null;
+          return value;
+        }
+      };
+    }
+  }
+
+  // the first `count` values
+  private static final class Take extends Iterateur {
+    private final Iterateur source;
+    private final int count;
+
+    Take(Iterateur source, int count) {
+      this.source = source;
+      this.count = count;
+    }
+
+    @Override
+    void each(Interpreter interpreter, Sink sink) {
+      if (count <= 0)
+        return;
+      source.each(interpreter, new Sink() {
+        private int taken;
+
+        @Override
+        public boolean accept(Object value) {
+          return sink.accept(value) && ++taken < count;
+        }
+
+        @Override
+        public boolean acceptInt(int value) {
+          return sink.acceptInt(value) && ++taken < count;
+        }
+
+        @Override
+        public boolean acceptDouble(double value) {
+          return sink.acceptDouble(value) && ++taken < count;
+        }
+      });
+    }
+
+    @Override
+    Iterator<?> iterator(Interpreter interpreter) {
+      var values = source.iterator(interpreter);
+      return new Iterator<Object>() {
+        private int taken;
+
+        @Override
+        public boolean hasNext() {
+          return taken < count && values.hasNext();
+        }
+
+        @Override
+        public Object next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          taken++;
+          return values.next();
+        }
+      };
+    }
+  }
+
+  // all but the first `count` values
+  private static final class Skip extends Iterateur {
+    private final Iterateur source;
+    private final int count;
+
+    Skip(Iterateur source, int count) {
+      this.source = source;
+      this.count = count;
+    }
+
+    @Override
+    void each(Interpreter interpreter, Sink sink) {
+      source.each(interpreter, new Sink() {
+        private int skipped;
+
+        @Override
+        public boolean accept(Object value) {
+          return skipped++ < count || sink.accept(value);
+        }
+
+        @Override
+        public boolean acceptInt(int value) {
+          return skipped++ < count || sink.acceptInt(value);
+        }
+
+        @Override
+        public boolean acceptDouble(double value) {
+          return skipped++ < count || sink.acceptDouble(value);
+        }
+      });
+    }
+
+    @Override
+    Iterator<?> iterator(Interpreter interpreter) {
+      var values = source.iterator(interpreter);
+      for (int i = 0; i < count && values.hasNext(); i++) {
+        values.next();
+      }
+      return values;
+    }
+  }
+
+  // the pairs of the values of both, as long as both have one
+  private static final class Zip extends Iterateur {
+    private final Iterateur first;
+    private final Iterateur second;
+
+    Zip(Iterateur first, Iterateur second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    void each(Interpreter interpreter, Sink sink) {
+      var seconds = second.iterator(interpreter);
+      first.each(interpreter, value -> seconds.hasNext() && sink.accept(Tuple.of(value, seconds.next())));
+    }
+
+    @Override
+    Iterator<?> iterator(Interpreter interpreter) {
+      var firsts = first.iterator(interpreter);
+      var seconds = second.iterator(interpreter);
+      return new Iterator<Object>() {
+        @Override
+        public boolean hasNext() {
+          return firsts.hasNext() && seconds.hasNext();
+        }
+
+        @Override
+        public Object next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          return Tuple.of(firsts.next(), seconds.next());
+        }
+      };
+    }
+  }
+
+  // The sum of entiers or of flottants, unboxed while they are i32 or
+  // flottants; the other values are added like the `+` operator does.
+  private static final class Sum implements Sink {
+    private static final int EMPTY = 0, INTS = 1, DOUBLES = 2, OTHERS = 3;
+    private static final Token PLUS = new Token(TokenType.PLUS, "+", 0, 0);
+
+    private int kind = EMPTY;
+    private int ints;
+    private double doubles;
+    private Object others;
+
+    @Override
+    public boolean acceptInt(int value) {
+      if (kind != EMPTY && kind != INTS)
+        return add(value);
+      kind = INTS;
+      var sum = ints + value;
+      if (((ints ^ sum) & (value ^ sum)) < 0)
+        throw new RuntimeError(null, "Dépassement de capacité de `i32` avec `somme`.");
+      ints = sum;
+      return true;
+    }
+
+    @Override
+    public boolean acceptDouble(double value) {
+      if (kind != EMPTY && kind != DOUBLES)
+        return add(value);
+      kind = DOUBLES;
+      doubles += value;
+      return true;
+    }
+
+    @Override
+    public boolean accept(Object value) {
+      if (value instanceof Integer)
+        return acceptInt((int) value);
+      if (value instanceof Double)
+        return acceptDouble((double) value);
+      return add(value);
+    }
+
+    private boolean add(Object value) {
+      if (kind == EMPTY) {
+        others = value;
+      } else {
+        try {
+          others = Operations.binary(PLUS, result(), value, false, false);
+        } catch (RuntimeError e) {
+          throw new RuntimeError(null, e.getMessage());
+        }
+      }
+      kind = OTHERS;
+      return true;
+    }
+
+    Object result() {
+      switch (kind) {
+        case DOUBLES:
+          return doubles;
+        case OTHERS:
+          return others;
+        default:
+          return ints;
+      }
+    }
+  }
+
+  @Native("iter")
+  static Iterateur iter(Object valeurs) {
+    return of(valeurs, "iter");
+  }
+
+  @Native(value = "intervalle", parametres = { "debut", "fin" })
+  static Iterateur intervalle(int debut, int fin) {
+    return new Range(debut, fin);
+  }
+
+  @Native("entrees")
+  static Iterateur entrees(Dico dico) {
+    return new Pulled(dico::entries);
+  }
+
+  @Native(value = "map", parametres = { "valeurs", "f" })
+  static Iterateur map(Object valeurs, Object f) {
+    return new Map(of(valeurs, "map"), function(f, "map"));
+  }
+
+  @Native(value = "filtre", parametres = { "valeurs", "f" })
+  static Iterateur filtre(Object valeurs, Object f) {
+    return new Filter(of(valeurs, "filtre"), function(f, "filtre"));
+  }
+
+  @Native(value = "prend", parametres = { "valeurs", "nombre" })
+  static Iterateur prend(Object valeurs, int nombre) {
+    return new Take(of(valeurs, "prend"), nombre);
+  }
+
+  @Native(value = "saute", parametres = { "valeurs", "nombre" })
+  static Iterateur saute(Object valeurs, int nombre) {
+    return new Skip(of(valeurs, "saute"), nombre);
+  }
+
+  @Native(value = "zip", parametres = { "premiers", "seconds" })
+  static Iterateur zip(Object premiers, Object seconds) {
+    return new Zip(of(premiers, "zip"), of(seconds, "zip"));
+  }
+
+  @Native("somme")
+  static Object somme(Interpreter interpreter, Object valeurs) {
+    var sum = new Sum();
+    of(valeurs, "somme").each(interpreter, sum);
+    return sum.result();
+  }
+
+  @Native("compte")
+  static int compte(Interpreter interpreter, Object valeurs) {
+    var count = new Sink() {
+      int count;
+
+      @Override
+      public boolean accept(Object value) {
+        return acceptInt(0);
+      }
+
+      @Override
+      public boolean acceptInt(int value) {
+        if (++count < 0)
+          throw new RuntimeError(null, "Dépassement de capacité de `i32` avec `compte`.");
+        return true;
+      }
+
+      @Override
+      public boolean acceptDouble(double value) {
+        return acceptInt(0);
+      }
+    };
+    of(valeurs, "compte").each(interpreter, count);
+    return count.count;
+  }
+
+  // f(f(f(initial, a), b), c)...; for pairs, f(accumulateur, x, y)
+  @Native(value = "plie", parametres = { "valeurs", "initial", "f" })
+  static Object plie(Interpreter interpreter, Object valeurs, Object initial, Object f) {
+    var function = function(f, "plie");
+    var fold = new Sink() {
+      Object accumulated = initial;
+
+      @Override
+      public boolean accept(Object value) {
+        if (function.arity() == 2)
+          accumulated = function.call2(interpreter, accumulated, value);
+        else if (function.arity() == 3 && value instanceof Tuple && ((Tuple) value).size() == 2)
+          accumulated = function.call3(interpreter, accumulated, ((Tuple) value).get(0), ((Tuple) value).get(1));
+        else
+          throw new RuntimeError(null, "La fonction de `plie` doit avoir deux paramètres (ou trois pour une paire), pas "
+              + function.arity() + ".");
+        return true;
+      }
+    };
+    of(valeurs, "plie").each(interpreter, fold);
+    return fold.accumulated;
+  }
+
+  @Native("collecte")
+  static Vec collecte(Interpreter interpreter, Object valeurs) {
+    var vec = new Vec();
+    of(valeurs, "collecte").each(interpreter, new Sink() {
+      @Override
+      public boolean accept(Object value) {
+        interpreter.allocate(null, 1);
+        vec.push(value);
+        return true;
+      }
+
+      @Override
+      public boolean acceptInt(int value) {
+        interpreter.allocate(null, 1);
+        vec.pushInt(value);
+        return true;
+      }
+
+      @Override
+      public boolean acceptDouble(double value) {
+        interpreter.allocate(null, 1);
+        vec.pushDouble(value);
+        return true;
+      }
+    });
+    return vec;
+  }
+}
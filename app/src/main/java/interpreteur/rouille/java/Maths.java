@@ -0,0 +1,225 @@
+package interpreteur.rouille.java;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The math natives. A call to one of them that no declaration of the script
+// shadows is an intrinsic: the Resolver marks the call, the TypeChecker
+// gives it the type of its result, and the Interpreter and the
+// CodeGenerator compute it in place on the unboxed arguments, without
+// looking the native up or calling it. Used as a value (`soit f = racine;`),
+// a math function is the native below.
+class Maths {
+  enum Intrinsic {
+    RACINE("racine", 1, "Math.sqrt"),
+    PUISSANCE("puissance", 2, "Math.pow"),
+    EXP("exp", 1, "Math.exp"),
+    LN("ln", 1, "Math.log"),
+    SIN("sin", 1, "Math.sin"),
+    COS("cos", 1, "Math.cos"),
+    TAN("tan", 1, "Math.tan"),
+    ATAN2("atan2", 2, "Math.atan2"),
+    PLANCHER("plancher", 1, "Math.floor"),
+    PLAFOND("plafond", 1, "Math.ceil"),
+    // the only ones that also take entiers
+    ABS("abs", 1, "Math.abs"),
+    MIN("min", 2, "Math.min"),
+    MAX("max", 2, "Math.max");
+
+    private static final Map<Symbol, Intrinsic> BY_NAME = new HashMap<>();
+
+    static {
+      for (var intrinsic : values()) {
+        BY_NAME.put(Symbol.of(intrinsic.name), intrinsic);
+      }
+    }
+
+    final String name;
+    final int arity;
+    // the Java method computing it on doubles, for the CodeGenerator
+    final String java;
+
+    Intrinsic(String name, int arity, String java) {
+      this.name = name;
+      this.arity = arity;
+      this.java = java;
+    }
+
+    static Intrinsic of(Symbol name) {
+      return BY_NAME.get(name);
+    }
+
+    boolean numeric() {
+      return this == ABS || this == MIN || this == MAX;
+    }
+
+    double apply(double x) {
+      switch (this) {
+        case RACINE:
+          return Math.sqrt(x);
+        case EXP:
+          return Math.exp(x);
+        case LN:
+          return Math.log(x);
+        case SIN:
+          return Math.sin(x);
+        case COS:
+          return Math.cos(x);
+        case TAN:
+          return Math.tan(x);
+        case PLANCHER:
+          return Math.floor(x);
+        case PLAFOND:
+          return Math.ceil(x);
+        case ABS:
+          return Math.abs(x);
+        default:
+          throw new IllegalStateException(name);
+      }
+    }
+
+    double apply(double x, double y) {
+      switch (this) {
+        case PUISSANCE:
+          return Math.pow(x, y);
+        case ATAN2:
+          return Math.atan2(x, y);
+        case MIN:
+          return Math.min(x, y);
+        case MAX:
+          return Math.max(x, y);
+        default:
+          throw new IllegalStateException(name);
+      }
+    }
+
+    // min and max of two i32
+    int apply(int x, int y) {
+      return this == MIN ? Math.min(x, y) : Math.max(x, y);
+    }
+
+    // With arguments whose types are only known at runtime. An untyped
+    // argument is an unsuffixed integer literal, which takes the width of
+    // the other one like an operand of Operations.binary.
+    Object call(Token paren, Object x) {
+      if (this == ABS)
+        return abs(paren, x);
+      return apply(flottant(paren, x));
+    }
+
+    Object call(Token paren, Object x, Object y, boolean xUntyped, boolean yUntyped) {
+      if (this != MIN && this != MAX)
+        return apply(flottant(paren, x), flottant(paren, y));
+      if (x instanceof Double && y instanceof Double)
+        return apply((double) x, (double) y);
+
+      var largeur = Entier.Largeur.of(x);
+      var other = Entier.Largeur.of(y);
+      if (largeur == null || other == null)
+        throw new RuntimeError(paren, "Les paramètres de `" + name + "` doivent être des nombres du même type.");
+      long a = Entier.bits(x), b = Entier.bits(y);
+      if (largeur != other && Operations.adapts(xUntyped, other, a))
+        largeur = other;
+      else if (largeur != other && !Operations.adapts(yUntyped, largeur, b))
+        throw new RuntimeError(paren, "Les paramètres de `" + name + "` doivent être des entiers de même largeur (`"
+            + largeur + "` et `" + other + "`).");
+      var compare = largeur.signed ? Long.compare(a, b) : Long.compareUnsigned(a, b);
+      return largeur.box((this == MIN ? compare <= 0 : compare >= 0) ? a : b);
+    }
+
+    private double flottant(Token paren, Object value) {
+      if (!(value instanceof Double))
+        throw new RuntimeError(paren, "Le paramètre de `" + name + "` doit être un flottant.");
+      return (double) value;
+    }
+  }
+
+  static int abs(Token paren, int value) {
+    if (value == Integer.MIN_VALUE)
+      throw overflow(paren, Entier.Largeur.I32);
+    return Math.abs(value);
+  }
+
+  private static Object abs(Token paren, Object value) {
+    if (value instanceof Double)
+      return Math.abs((double) value);
+    var largeur = Entier.Largeur.of(value);
+    if (largeur == null)
+      throw new RuntimeError(paren, "Le paramètre de `abs` doit être un nombre.");
+    if (!largeur.signed)
+      throw new RuntimeError(paren, "`abs` ne s'applique pas aux entiers non signés (`" + largeur + "`).");
+    var bits = Entier.bits(value);
+    if (bits == largeur.min)
+      throw overflow(paren, largeur);
+    return largeur.box(Math.abs(bits));
+  }
+
+  private static RuntimeError overflow(Token paren, Entier.Largeur largeur) {
+    return new RuntimeError(paren, "Dépassement de capacité de `" + largeur + "` avec `abs`.");
+  }
+
+  @Native("racine")
+  static double racine(double x) {
+    return Math.sqrt(x);
+  }
+
+  @Native("puissance")
+  static double puissance(double x, double y) {
+    return Math.pow(x, y);
+  }
+
+  @Native("exp")
+  static double exp(double x) {
+    return Math.exp(x);
+  }
+
+  @Native("ln")
+  static double ln(double x) {
+    return Math.log(x);
+  }
+
+  @Native("sin")
+  static double sin(double x) {
+    return Math.sin(x);
+  }
+
+  @Native("cos")
+  static double cos(double x) {
+    return Math.cos(x);
+  }
+
+  @Native("tan")
+  static double tan(double x) {
+    return Math.tan(x);
+  }
+
+  @Native("atan2")
+  static double atan2(double y, double x) {
+    return Math.atan2(y, x);
+  }
+
+  @Native("plancher")
+  static double plancher(double x) {
+    return Math.floor(x);
+  }
+
+  @Native("plafond")
+  static double plafond(double x) {
+    return Math.ceil(x);
+  }
+
+  @Native("abs")
+  static Object abs(Object x) {
+    return Intrinsic.ABS.call(null, x);
+  }
+
+  @Native("min")
+  static Object min(Object x, Object y) {
+    return Intrinsic.MIN.call(null, x, y, false, false);
+  }
+
+  @Native("max")
+  static Object max(Object x, Object y) {
+    return Intrinsic.MAX.call(null, x, y, false, false);
+  }
+}
@@ -0,0 +1,23 @@
+package interpreteur.rouille.java;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// A static method that is a native of rouille, named `value`. Natives.bind
+// adapts it to a Callable: the arguments are checked and converted to the
+// types of its parameters (an `int` takes an entier that fits in an i32, a
+// `long` one that fits in an i64, a `Vec` takes a vecteur...). A first
+// parameter of type Interpreter gets the calling interpreter, and a `void`
+// result becomes `()`.
+//
+// `parametres` names the parameters in the error messages, when the method
+// is compiled without their names.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface Native {
+  String value();
+
+  String[] parametres() default {};
+}
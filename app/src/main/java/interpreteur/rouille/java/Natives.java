@@ -1,21 +1,259 @@
 package interpreteur.rouille.java;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.Map;
 
 class Natives {
+  // (the binding of the @Native methods comes first: loading ENVIRONMENT uses it)
+
+  // What the error messages call the values of the types natives take.
+  private static final Map<Class<?>, String> EXPECTED = Map.of(
+      double.class, "un flottant",
+      boolean.class, "un booléen",
+      Chaine.class, "une chaine",
+      Vec.class, "un vecteur",
+      Dico.class, "un dictionnaire",
+      Callable.class, "une fonction",
+      Tasks.Handle.class, "une tâche",
+      Tasks.Channel.class, "un canal");
+
+  private static final MethodHandle IDENTITY = MethodHandles.identity(Object.class);
+  private static final MethodHandle UNIT = MethodHandles.constant(Object.class, Tuple.UNIT);
+  private static final MethodHandle EXPECT, INTEGER, WIDE;
+
+  static {
+    var lookup = MethodHandles.lookup();
+    try {
+      EXPECT = lookup.findStatic(Natives.class, "expect",
+          MethodType.methodType(Object.class, Class.class, Object.class, String.class, String.class));
+      INTEGER = lookup.findStatic(Natives.class, "integer",
+          MethodType.methodType(int.class, Object.class, String.class, String.class));
+      WIDE = lookup.findStatic(Natives.class, "wide",
+          MethodType.methodType(long.class, Object.class, String.class, String.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  // The converter of a parameter type, as a (value, native, parameter)type
+  // handle, cached per type. IDENTITY for Object, which takes anything.
+  private static final ClassValue<MethodHandle> CONVERTERS = new ClassValue<>() {
+    @Override
+    protected MethodHandle computeValue(Class<?> type) {
+      if (type == Object.class)
+        return IDENTITY;
+      if (type == int.class)
+        return INTEGER;
+      if (type == long.class)
+        return WIDE;
+      var expected = EXPECTED.get(type);
+      if (expected == null)
+        return null;
+      var boxed = MethodType.methodType(type).wrap().returnType();
+      // expect(boxed, value, native, expected), which doesn't name the parameter
+      var converter = MethodHandles.insertArguments(EXPECT, 3, expected);
+      converter = MethodHandles.insertArguments(converter, 0, boxed);
+      converter = MethodHandles.dropArguments(converter, 2, String.class);
+      return converter.asType(MethodType.methodType(type, Object.class, String.class, String.class));
+    }
+  };
+
+  // shared by every interpreter, the natives hold no state
+  static final Environment ENVIRONMENT = new Environment();
+
+  static {
+    load(ENVIRONMENT);
+  }
+
   public static void load(Environment globals) {
-    globals.define("clock", new Clock());
+    bind(globals, Natives.class, Maths.class, Parallel.class, Tasks.class, Vec.class, Dico.class, Fichiers.class,
+        Csv.class, Iterateur.class);
+  }
+
+  @Native("clock")
+  static double clock() {
+    return (double) System.nanoTime() / 1e9;
+  }
+
+  // Defines the @Native methods of the classes.
+  static void bind(Environment globals, Class<?>... classes) {
+    for (var type : classes) {
+      for (var method : type.getDeclaredMethods()) {
+        var annotation = method.getAnnotation(Native.class);
+        if (annotation == null)
+          continue;
+        var arity = method.getParameterCount() - (takesInterpreter(method) ? 1 : 0);
+        globals.define(annotation.value(), new NativeFunction(annotation.value(), arity, adapt(method, annotation)));
+      }
+    }
+  }
+
+  // The method as a (Interpreter, Object...)Object handle: the converters
+  // of its parameters are filters in front of it, the boxing of its result
+  // is behind it.
+  private static MethodHandle adapt(Method method, Native annotation) {
+    if (!Modifier.isStatic(method.getModifiers()))
+      throw new IllegalArgumentException("@Native " + method + " must be static");
+
+    MethodHandle handle;
+    try {
+      handle = MethodHandles.lookup().unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException(e);
+    }
+
+    var offset = takesInterpreter(method) ? 1 : 0;
+    var parameters = method.getParameters();
+    var filters = new MethodHandle[parameters.length - offset];
+    for (int i = 0; i < filters.length; i++) {
+      var parameter = parameters[offset + i];
+      var converter = CONVERTERS.get(parameter.getType());
+      if (converter == null)
+        throw new IllegalArgumentException("@Native " + method + " can't take a " + parameter.getType());
+      var name = i < annotation.parametres().length ? annotation.parametres()[i] : parameter.getName();
+      filters[i] = converter == IDENTITY ? null : MethodHandles.insertArguments(converter, 1, annotation.value(), name);
+    }
+    handle = MethodHandles.filterArguments(handle, offset, filters);
+
+    if (method.getReturnType() == void.class)
+      handle = MethodHandles.filterReturnValue(handle, UNIT);
+    if (offset == 0)
+      handle = MethodHandles.dropArguments(handle, 0, Interpreter.class);
+    return handle.asType(MethodType.genericMethodType(filters.length).insertParameterTypes(0, Interpreter.class));
+  }
+
+  private static boolean takesInterpreter(Method method) {
+    return method.getParameterCount() > 0 && method.getParameterTypes()[0] == Interpreter.class;
+  }
+
+  static <T> T expect(Class<T> type, Object value, String name, String expected) {
+    if (!type.isInstance(value))
+      throw new RuntimeError(null, "Le paramètre de `" + name + "` doit être " + expected + ".");
+    return type.cast(value);
+  }
+
+  // an entier of any width, as long as it fits in an i32
+  static int integer(Object value, String name, String param) {
+    if (value instanceof Integer)
+      return (int) value;
+    if (Entier.Largeur.of(value) == null)
+      throw new RuntimeError(null, "Le paramètre `" + param + "` de `" + name + "` doit être un entier.");
+    var bits = Entier.bits(value);
+    if (bits != (int) bits || Entier.Largeur.of(value).wide() && !Entier.Largeur.of(value).signed && bits < 0)
+      throw new RuntimeError(null, "Le paramètre `" + param + "` de `" + name + "` (" + value + ") est trop grand.");
+    return (int) bits;
+  }
+
+  // an entier of any width, as long as it fits in an i64
+  static long wide(Object value, String name, String param) {
+    var largeur = Entier.Largeur.of(value);
+    if (largeur == null)
+      throw new RuntimeError(null, "Le paramètre `" + param + "` de `" + name + "` doit être un entier.");
+    var bits = Entier.bits(value);
+    if (largeur.wide() && !largeur.signed && bits < 0)
+      throw new RuntimeError(null, "Le paramètre `" + param + "` de `" + name + "` (" + value + ") est trop grand.");
+    return bits;
+  }
+
+  static Callable function(Object value, int arity, String name, String param) {
+    if (!(value instanceof Callable) || ((Callable) value).arity() != arity)
+      throw new RuntimeError(null,
+          "Le paramètre `" + param + "` de `" + name + "` doit être une fonction à " + arity + " paramètre(s).");
+    return (Callable) value;
   }
 }
 
-class Clock implements Callable {
+// A @Native method bound by Natives.bind. Its handle has exactly the type
+// of the calls, (Interpreter, Object...)Object, so they are invokeExact
+// calls; the calls with a list of arguments spread it in an array.
+final class NativeFunction implements Callable {
+  private final String name;
+  private final int arity;
+  private final MethodHandle handle;
+  private final MethodHandle spreader;
+
+  NativeFunction(String name, int arity, MethodHandle handle) {
+    this.name = name;
+    this.arity = arity;
+    this.handle = handle;
+    this.spreader = handle.asSpreader(Object[].class, arity);
+  }
+
   @Override
   public int arity() {
-    return 0;
+    return arity;
   }
 
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
-    return (double) System.nanoTime() / 1e9;
+    try {
+      return (Object) spreader.invokeExact(interpreter, arguments.toArray());
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object call0(Interpreter interpreter) {
+    try {
+      return (Object) handle.invokeExact(interpreter);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    try {
+      return (Object) handle.invokeExact(interpreter, a);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    try {
+      return (Object) handle.invokeExact(interpreter, a, b);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    try {
+      return (Object) handle.invokeExact(interpreter, a, b, c);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  @Override
+  public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+    try {
+      return (Object) handle.invokeExact(interpreter, a, b, c, d);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  // natives don't declare checked exceptions
+  private static RuntimeException rethrow(Throwable e) {
+    if (e instanceof Error)
+      throw (Error) e;
+    if (e instanceof RuntimeException)
+      return (RuntimeException) e;
+    return new IllegalStateException(e);
+  }
+
+  @Override
+  public String toString() {
+    return "<native fn " + name + ">";
   }
 }
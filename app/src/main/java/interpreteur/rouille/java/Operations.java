@@ -0,0 +1,366 @@
+package interpreteur.rouille.java;
+
+import java.util.Iterator;
+import java.util.List;
+
+// The operations on values whose types are only known at runtime, with
+// their checks and error messages. They are shared by the Interpreter and
+// the programs compiled by `rouille build`, so both behave the same.
+final class Operations {
+  private Operations() {
+  }
+
+  // `left operator right`. An operand is untyped when it is an unsuffixed
+  // integer literal.
+  static Object binary(Token operator, Object left, Object right, boolean leftUntyped, boolean rightUntyped) {
+    if (left instanceof Integer && right instanceof Integer)
+      return integer(operator, (int) left, (int) right);
+    if (left instanceof Double && right instanceof Double && !isBitwise(operator))
+      return floating(operator, (double) left, (double) right);
+
+    var largeur = Entier.Largeur.of(left);
+    var rightLargeur = Entier.Largeur.of(right);
+    if (largeur != null && rightLargeur != null) {
+      if (largeur != rightLargeur && adapts(leftUntyped, rightLargeur, Entier.bits(left)))
+        largeur = rightLargeur;
+      else if (largeur != rightLargeur && !adapts(rightUntyped, largeur, Entier.bits(right)))
+        throw new RuntimeError(operator, "Les deux operandes de l'operateur binarire `" + operator.lexeme
+            + "` doivent être des entiers de même largeur (`" + largeur + "` et `" + rightLargeur + "`).");
+      return Entier.operation(operator, largeur, Entier.bits(left), Entier.bits(right));
+    }
+
+    switch (operator.type) {
+      case PLUS:
+        if (right instanceof Chaine && left instanceof Chaine)
+          return ((Chaine) left).concat((Chaine) right);
+        throw new RuntimeError(operator,
+            "Les deux operandes de l'operateur binarire `+` doivent être des nombres du même type (ou des chaines...).");
+      case EQUAL_EQUAL:
+        return left.equals(right);
+      case BANG_EQUAL:
+        return !left.equals(right);
+      case AMPERSAND:
+      case BITWISE_OR:
+        throw new RuntimeError(operator, "Les deux operandes de l'operateur binarire `" + operator.lexeme
+            + "` doivent être des nombres entiers.");
+      default:
+        throw new RuntimeError(operator, "Les deux operandes de l'operateur binarire `" + operator.lexeme
+            + "` doivent être des nombres du même type.");
+    }
+  }
+
+  private static boolean isBitwise(Token operator) {
+    return operator.type == TokenType.AMPERSAND || operator.type == TokenType.BITWISE_OR;
+  }
+
+  // An unsuffixed integer literal next to a value only typed at runtime
+  // takes the width of that value, like the TypeChecker does when both
+  // types are known.
+  static boolean adapts(boolean untyped, Entier.Largeur largeur, long value) {
+    return untyped && largeur.contains(value) && (largeur.signed || value >= 0);
+  }
+
+  // i32, overflows are errors like in a debug build of rust
+  static Object integer(Token operator, int left, int right) {
+    try {
+      switch (operator.type) {
+        case MINUS:
+          return Math.subtractExact(left, right);
+        case SLASH:
+          return left / (int) Entier.division(operator, Entier.Largeur.I32, left, right);
+        case STAR:
+          return Math.multiplyExact(left, right);
+        case PERCENT:
+          return left % (int) Entier.division(operator, Entier.Largeur.I32, left, right);
+        case PLUS:
+          return Math.addExact(left, right);
+        case GREATER:
+          return left > right;
+        case GREATER_EQUAL:
+          return left >= right;
+        case LESS:
+          return left < right;
+        case LESS_EQUAL:
+          return left <= right;
+        case EQUAL_EQUAL:
+          return left == right;
+        case BANG_EQUAL:
+          return left != right;
+        case AMPERSAND:
+          return left & right;
+        case BITWISE_OR:
+          return left | right;
+        default:
+          throw new RuntimeError(operator, "Unreachable");
+      }
+    } catch (ArithmeticException e) {
+      throw Entier.overflow(operator, Entier.Largeur.I32);
+    }
+  }
+
+  static Object floating(Token operator, double left, double right) {
+    switch (operator.type) {
+      case MINUS:
+        return left - right;
+      case SLASH:
+        return left / right;
+      case STAR:
+        return left * right;
+      case PERCENT:
+        return left % right;
+      case PLUS:
+        return left + right;
+      case GREATER:
+        return left > right;
+      case GREATER_EQUAL:
+        return left >= right;
+      case LESS:
+        return left < right;
+      case LESS_EQUAL:
+        return left <= right;
+      // same as Double.equals, like the unchecked path
+      case EQUAL_EQUAL:
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+      case BANG_EQUAL:
+        return Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+      default:
+        throw new RuntimeError(operator, "Unreachable");
+    }
+  }
+
+  // `operator value`
+  static Object unary(Token operator, Object right) {
+    switch (operator.type) {
+      case MINUS:
+        if (right instanceof Double)
+          return -(double) right;
+        else if (Entier.Largeur.of(right) != null)
+          return Entier.unary(operator, Entier.Largeur.of(right), Entier.bits(right));
+        else
+          throw new RuntimeError(operator, "Les Operandes de l'operateur unaire `-` doivent être des nombres.");
+      case BANG:
+        if (right instanceof Boolean)
+          return !(boolean) right;
+        else if (Entier.Largeur.of(right) != null)
+          // in rust, i_ and u_ implements unary not, and it's bitwise
+          return Entier.unary(operator, Entier.Largeur.of(right), Entier.bits(right));
+        else
+          throw new RuntimeError(operator,
+              "Les Operandes de l'operateur unaire `!` doivent être des entiers (u_ ou i_).");
+      default:
+        throw new RuntimeError(null, "Unreachable");
+    }
+  }
+
+  static Object index(Token bracket, Object object, Object index) {
+    try {
+      return vector(object, bracket).get(index(index, bracket));
+    } catch (RuntimeError e) {
+      throw e.token == null ? new RuntimeError(bracket, e.getMessage()) : e;
+    }
+  }
+
+  static void setIndex(Token bracket, Object object, Object index, Object value) {
+    try {
+      vector(object, bracket).set(index(index, bracket), value);
+    } catch (RuntimeError e) {
+      throw e.token == null ? new RuntimeError(bracket, e.getMessage()) : e;
+    }
+  }
+
+  // `[value; count]`
+  static int repeatCount(Token bracket, Object count) {
+    if (Entier.Largeur.of(count) == null || Entier.bits(count) < 0 || Entier.bits(count) > Integer.MAX_VALUE) {
+      throw new RuntimeError(bracket, "Le nombre d'éléments d'un vecteur doit être un entier positif.");
+    }
+    return (int) Entier.bits(count);
+  }
+
+  // A bound or the step of a counted `pour`, whose width the TypeChecker
+  // has chosen (i32 when it doesn't know it), as the bits of a long.
+  static long bound(Token forToken, Entier.Largeur largeur, Object value) {
+    var actual = Entier.Largeur.of(value);
+    if (actual == null)
+      throw new RuntimeError(forToken, "Les bornes et le pas d'un `pour` doivent être des entiers.");
+    if (actual != largeur)
+      throw new RuntimeError(forToken, "Les bornes et le pas de ce `pour` doivent être des entiers `" + largeur
+          + "`, pas `" + actual + "`.");
+    return Entier.bits(value);
+  }
+
+  // The number of values of a counted `pour`, at most Long.MAX_VALUE: u64
+  // and usize compare their bits as unsigned, and a step of an unsigned
+  // width is never negative.
+  static long count(Token forToken, Entier.Largeur largeur, long start, long end, long step, boolean inclusive) {
+    if (step == 0)
+      throw new RuntimeError(forToken, "Le pas d'un `pour` ne peut pas être nul.");
+
+    long span;
+    if (largeur.signed) {
+      if (!inclusive && end == (step > 0 ? Long.MIN_VALUE : Long.MAX_VALUE))
+        return 0;
+      var last = inclusive ? end : step > 0 ? end - 1 : end + 1;
+      if (step > 0 ? last < start : last > start)
+        return 0;
+      span = step > 0 ? last - start : start - last;
+      // -Long.MIN_VALUE is 2^63 as an unsigned long
+      step = step > 0 ? step : -step;
+    } else {
+      if (!inclusive && end == 0)
+        return 0;
+      var last = inclusive ? end : end - 1;
+      if (Long.compareUnsigned(last, start) < 0)
+        return 0;
+      span = last - start;
+    }
+    var count = Long.divideUnsigned(span, step) + 1;
+    return count <= 0 ? Long.MAX_VALUE : count;
+  }
+
+  private static Vec vector(Object object, Token bracket) {
+    if (!(object instanceof Vec)) {
+      throw new RuntimeError(bracket, "Seuls les vecteurs peuvent être indexés.");
+    }
+    return (Vec) object;
+  }
+
+  private static int index(Object index, Token bracket) {
+    if (index instanceof Integer)
+      return (int) index;
+    if (Entier.Largeur.of(index) == null) {
+      throw new RuntimeError(bracket, "L'index d'un vecteur doit être un entier.");
+    }
+    var value = Entier.bits(index);
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new RuntimeError(bracket, "L'index " + stringify(index) + " est hors des limites du vecteur.");
+    }
+    return (int) value;
+  }
+
+  // the values of `pour name dans value`: those of a vecteur, the entries of
+  // a dico, or the values of an iterator or of a native that gives them one
+  // at a time, like `lignes`
+  static Iterator<?> iterator(Interpreter interpreter, Token forToken, Object value) {
+    if (value instanceof Vec)
+      return ((Vec) value).iterator();
+    if (value instanceof Dico)
+      return ((Dico) value).entries();
+    if (!(value instanceof Iterable) && !(value instanceof Iterateur))
+      throw new RuntimeError(forToken,
+          "Un `pour` parcourt un intervalle, un vecteur, un dictionnaire, un itérateur ou des lignes.");
+    try {
+      if (value instanceof Iterateur)
+        return ((Iterateur) value).iterator(interpreter);
+      return ((Iterable<?>) value).iterator();
+    } catch (RuntimeError e) {
+      throw located(e, forToken);
+    }
+  }
+
+  // the next value of a `pour`, null after the last one
+  static Object next(Token forToken, Iterator<?> iterator) {
+    try {
+      return iterator.hasNext() ? iterator.next() : null;
+    } catch (RuntimeError e) {
+      throw located(e, forToken);
+    }
+  }
+
+  static Instance instance(Object object, Token name) {
+    if (!(object instanceof Instance)) {
+      throw new RuntimeError(name, "Seules les structures ont des champs.");
+    }
+    return (Instance) object;
+  }
+
+  static Structure structure(Object structure, Token name) {
+    if (!(structure instanceof Structure)) {
+      throw new RuntimeError(name, "`" + name.lexeme + "` n'est pas une structure.");
+    }
+    return (Structure) structure;
+  }
+
+  // the value of a call, after the callee and the arguments are evaluated
+  static Object call(Interpreter interpreter, Token paren, Object callee, List<Object> arguments) {
+    var function = callable(paren, callee, arguments.size());
+    try {
+      return function.call(interpreter, arguments);
+    } catch (RuntimeError e) {
+      throw located(e, paren);
+    }
+  }
+
+  static Object call0(Interpreter interpreter, Token paren, Object callee) {
+    var function = callable(paren, callee, 0);
+    try {
+      return function.call0(interpreter);
+    } catch (RuntimeError e) {
+      throw located(e, paren);
+    }
+  }
+
+  static Object call1(Interpreter interpreter, Token paren, Object callee, Object a) {
+    var function = callable(paren, callee, 1);
+    try {
+      return function.call1(interpreter, a);
+    } catch (RuntimeError e) {
+      throw located(e, paren);
+    }
+  }
+
+  static Object call2(Interpreter interpreter, Token paren, Object callee, Object a, Object b) {
+    var function = callable(paren, callee, 2);
+    try {
+      return function.call2(interpreter, a, b);
+    } catch (RuntimeError e) {
+      throw located(e, paren);
+    }
+  }
+
+  static Object call3(Interpreter interpreter, Token paren, Object callee, Object a, Object b, Object c) {
+    var function = callable(paren, callee, 3);
+    try {
+      return function.call3(interpreter, a, b, c);
+    } catch (RuntimeError e) {
+      throw located(e, paren);
+    }
+  }
+
+  static Object call4(Interpreter interpreter, Token paren, Object callee, Object a, Object b, Object c, Object d) {
+    var function = callable(paren, callee, 4);
+    try {
+      return function.call4(interpreter, a, b, c, d);
+    } catch (RuntimeError e) {
+      throw located(e, paren);
+    }
+  }
+
+  private static Callable callable(Token paren, Object callee, int arguments) {
+    if (!(callee instanceof Callable)) {
+      throw new RuntimeError(paren, "Seules les fonctions peuvent être appelées");
+    }
+
+    var function = (Callable) callee;
+
+    if (arguments != function.arity()) {
+      throw new RuntimeError(paren,
+          "Mauvais nombre d'arguments passé en paramètre (" +
+              function.arity() + " attendus mais " + arguments + " reçus)");
+    }
+    return function;
+  }
+
+  // natives don't know where they were called from
+  private static RuntimeError located(RuntimeError e, Token paren) {
+    return e.token == null ? new RuntimeError(paren, e.getMessage()) : e;
+  }
+
+  static String stringify(Object o) {
+    if (o == null)
+      return "Null 🤨 🤬";
+    else if (o instanceof Boolean)
+      return ((boolean) o) ? "vrai" : "faux";
+    else
+      return o.toString();
+  }
+}
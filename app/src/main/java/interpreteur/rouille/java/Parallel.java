@@ -0,0 +1,126 @@
+package interpreteur.rouille.java;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// Data-parallel natives: the range [debut, fin) is split across a ForkJoinPool
+// and every leaf runs the rouille function on its own forked interpreter.
+// The split only depends on the size of the range and on the parallelism, so
+// the results are deterministic as long as the combiner is associative;
+// par_reduce combines `initial` once, whatever the number of leaves.
+class Parallel {
+  static final int parallelism = Integer.getInteger("rouille.parallelisme",
+      Runtime.getRuntime().availableProcessors());
+  static final ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+  @Native("parallelisme")
+  static int parallelisme() {
+    return parallelism;
+  }
+
+  // about 4 leaves per worker, to even out unbalanced ranges
+  static int grain(int size) {
+    return Math.max(1, size / (parallelism * 4));
+  }
+
+  @Native(value = "par_map", parametres = { "debut", "fin", "f" })
+  static Object parMap(Interpreter interpreter, int start, int end, Object f) {
+    var function = Natives.function(f, 1, "par_map", "f");
+
+    // in long: fin - debut overflows an int for a range over 2^31 values
+    var size = Math.max(0, (long) end - start);
+    if (size > Integer.MAX_VALUE - 8)
+      throw new RuntimeError(null, "`par_map` ne peut pas produire " + size + " valeurs.");
+    var results = new Object[(int) size];
+    if (results.length > 0)
+      pool.invoke(new MapTask(interpreter, function, start, results, 0, results.length));
+    return Tuple.of(results);
+  }
+
+  private static final class MapTask extends RecursiveAction {
+    private final Interpreter interpreter;
+    private final Callable function;
+    private final int start;
+    private final Object[] results;
+    private final int from;
+    private final int to;
+
+    MapTask(Interpreter interpreter, Callable function, int start, Object[] results, int from, int to) {
+      this.interpreter = interpreter;
+      this.function = function;
+      this.start = start;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= grain(results.length)) {
+        var worker = interpreter.fork();
+        for (int i = from; i < to; i++) {
+          results[i] = function.call1(worker, start + i);
+        }
+        return;
+      }
+
+      var middle = (from + to) >>> 1;
+      invokeAll(new MapTask(interpreter, function, start, results, from, middle),
+          new MapTask(interpreter, function, start, results, middle, to));
+    }
+  }
+
+  @Native(value = "par_reduce", parametres = { "debut", "fin", "initial", "f", "combine" })
+  static Object parReduce(Interpreter interpreter, int start, int end, Object initial, Object f, Object c) {
+    var function = Natives.function(f, 1, "par_reduce", "f");
+    var combine = Natives.function(c, 2, "par_reduce", "combine");
+
+    if (end <= start)
+      return initial;
+    // the leaves are ranges of ints, only the size of the whole may not fit
+    var grain = (int) Math.min(Integer.MAX_VALUE, Math.max(1, ((long) end - start) / (parallelism * 4)));
+    var result = pool.invoke(new ReduceTask(interpreter, function, combine, grain, start, end));
+    return combine.call2(interpreter.fork(), initial, result);
+  }
+
+  // A leaf folds its values from the first one, without `initial`, so the
+  // result doesn't depend on the number of leaves.
+  private static final class ReduceTask extends RecursiveTask<Object> {
+    private final Interpreter interpreter;
+    private final Callable function;
+    private final Callable combine;
+    private final int grain;
+    private final int from;
+    private final int to;
+
+    ReduceTask(Interpreter interpreter, Callable function, Callable combine, int grain, int from, int to) {
+      this.interpreter = interpreter;
+      this.function = function;
+      this.combine = combine;
+      this.grain = grain;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Object compute() {
+      if ((long) to - from <= grain) {
+        var worker = interpreter.fork();
+        var accumulator = function.call1(worker, from);
+        for (int i = from + 1; i < to; i++) {
+          accumulator = combine.call2(worker, accumulator, function.call1(worker, i));
+        }
+        return accumulator;
+      }
+
+      var middle = (int) (((long) from + to) >> 1);
+      var left = new ReduceTask(interpreter, function, combine, grain, from, middle);
+      var right = new ReduceTask(interpreter, function, combine, grain, middle, to);
+      right.fork();
+      var leftResult = left.compute();
+      var rightResult = right.join();
+      return combine.call2(interpreter.fork(), leftResult, rightResult);
+    }
+  }
+}
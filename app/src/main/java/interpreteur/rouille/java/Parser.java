@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static interpreteur.rouille.java.TokenType.*;
 
@@ -20,9 +21,14 @@ class Parser {
 
   private final List<Token> tokens;
   private int current = 0;
+  // `si x {` must not read `x {` as a structure literal
+  private boolean noStructLiteral = false;
 
-  Parser(List<Token> tokens) {
+  private final Diagnostics diagnostics;
+
+  Parser(List<Token> tokens, Diagnostics diagnostics) {
     this.tokens = tokens;
+    this.diagnostics = diagnostics;
   }
 
   List<Stmt> parse() {
@@ -32,7 +38,7 @@ class Parser {
       try {
         statements.add(declaration());
       } catch (ParserError e) {
-        App.error(e.token, e.message);
+        diagnostics.error(e.token, e.message);
         synchronize();
         return null;
       }
@@ -45,6 +51,9 @@ class Parser {
     if (match(FUN)) {
       return function("fonction");
     }
+    if (match(STRUCT)) {
+      return structDeclaration();
+    }
 
     return statement();
   }
@@ -63,9 +72,9 @@ class Parser {
     }
     consume(RIGHT_PAREN, "Un `)` est attendu après les paramètres de " + kind);
 
-    // TODO: use `-> type` syntax for function return type hints
+    Optional<Type> returnType = Optional.empty();
     if (match(ARROW))
-      consume(IDENTIFIER, "Un type de retour est attendu après un `->`");
+      returnType = Optional.of(type());
 
     consume(LEFT_BRACE, "Un block est attendu après la déclaration de " + kind);
     var body = block();
@@ -73,15 +82,49 @@ class Parser {
     if (body.returnedValue.isPresent()) {
       statements.add(new Stmt.Return(previous(), body.returnedValue.get()));
     }
-    return new Stmt.Function(name, parameters, statements);
+    return new Stmt.Function(name, parameters, types, returnType, statements);
+  }
+
+  private Stmt structDeclaration() {
+    var name = consume(IDENTIFIER, "Nom de structure attendu");
+    consume(LEFT_BRACE, "Un `{` est attendu après le nom de la structure");
+    var fields = new ArrayList<Token>();
+    var types = new ArrayList<Type>();
+    while (!check(RIGHT_BRACE)) {
+      var field = consume(IDENTIFIER, "Nom de champ attendu");
+      for (var other : fields) {
+        if (other.symbol == field.symbol)
+          throw error(field, "Le champ `" + field.lexeme + "` est déclaré deux fois");
+      }
+      fields.add(field);
+      consume(COLON, "Le type doit être spécifié avec la syntaxe `champ: type`");
+      types.add(type());
+      if (!match(COMMA))
+        break;
+    }
+    consume(RIGHT_BRACE, "Un `}` est attendu après les champs de la structure");
+    return new Stmt.Struct(name, fields, types);
   }
 
   private Type type() {
-    var type = new Type();
-    if (match(AMPERSAND)) {
+    var reference = match(AMPERSAND);
+    Type type;
+    if (match(LEFT_PAREN)) {
+      var elements = new ArrayList<Type>();
+      if (!check(RIGHT_PAREN)) {
+        do {
+          elements.add(type());
+        } while (match(COMMA));
+      }
+      consume(RIGHT_PAREN, "`(` du type tuple jamais fermé");
+      type = Type.tuple(elements);
+    } else {
+      type = new Type();
+      type.setByName(consume(IDENTIFIER, "Un type doit être spécifié après un `:`"));
+    }
+    if (reference) {
       type.reference = true;
     }
-    type.setByName(consume(IDENTIFIER, "Un type doit être spécifié après un `:`"));
     return type;
   }
 
@@ -103,10 +146,18 @@ class Parser {
       return printStatement();
     else if (match(RETURN))
       return returnStatement();
+    else if (match(YIELD))
+      return yieldStatement();
     else if (match(WHILE))
-      return whileStatement();
-    else if (match(LOOP))
-      return loopStatement();
+      return whileStatement(Optional.empty());
+    else if (match(FOR))
+      return forStatement(Optional.empty());
+    else if (check(LABEL) && !checkAhead(2, LOOP))
+      return labelledStatement();
+    else if (match(BREAK))
+      return breakStatement();
+    else if (match(CONTINUE))
+      return continueStatement();
     else if (match(LET))
       return varDeclaration();
     else
@@ -130,22 +181,88 @@ class Parser {
     return new Stmt.Return(token, value);
   }
 
-  private Stmt whileStatement() {
+  // `produit valeur;` gives a value to the loop that reads the generator the
+  // function returns, see Generateur
+  private Stmt yieldStatement() {
+    var token = previous();
+    Expr value = new Expr.Tuple(Arrays.asList());
+    if (!check(SEMICOLON)) {
+      value = expression();
+    }
+
+    consume(SEMICOLON, "Un `;` est attendu après un `produit`");
+    return new Stmt.Yield(token, value);
+  }
+
+  // `'nom: tant ...` and `'nom: pour ...`, the labelled `boucle` is an
+  // expression
+  private Stmt labelledStatement() {
+    var label = Optional.of(advance());
+    consume(COLON, "Un `:` est attendu après le label d'une boucle");
+    if (match(WHILE))
+      return whileStatement(label);
+    consume(FOR, "Une boucle (`tant`, `pour` ou `boucle`) est attendue après un label");
+    return forStatement(label);
+  }
+
+  private Stmt breakStatement() {
+    var token = previous();
+    Optional<Token> label = match(LABEL) ? Optional.of(previous()) : Optional.empty();
+    Optional<Expr> value = Optional.empty();
+    if (!check(SEMICOLON)) {
+      value = Optional.of(expression());
+    }
+
+    consume(SEMICOLON, "Un `;` est attendu après un `arrête`");
+    return new Stmt.Break(token, label, value);
+  }
+
+  private Stmt continueStatement() {
     var token = previous();
-    var condition = expression();
+    Optional<Token> label = match(LABEL) ? Optional.of(previous()) : Optional.empty();
+    consume(SEMICOLON, "Un `;` est attendu après un `continue`");
+    return new Stmt.Continue(token, label);
+  }
+
+  private Stmt whileStatement(Optional<Token> label) {
+    var token = previous();
+    var condition = condition(this::expression);
     consume(LEFT_BRACE, "Il manque un bloc à l'expression `tant`");
     var body = block();
 
-    return new Stmt.While(token, condition, body);
+    return new Stmt.While(token, condition, body, label);
+  }
+
+  private Stmt forStatement(Optional<Token> label) {
+    var token = previous();
+    var name = consume(IDENTIFIER, "Un nom de variable est attendu après un `pour`");
+    consume(IN, "Un `dans` est attendu après la variable d'un `pour`");
+    var start = condition(this::term);
+    if (!check(DOT_DOT) && !check(DOT_DOT_EQUAL)) {
+      // `pour ligne dans lignes(chemin) {`: the values of a vecteur or a native
+      consume(LEFT_BRACE, "Il manque un bloc à l'expression `pour`");
+      return new Stmt.ForEach(token, name, start, block(), label);
+    }
+    var inclusive = match(DOT_DOT_EQUAL);
+    if (!inclusive)
+      consume(DOT_DOT, "Un intervalle `début..fin` est attendu après un `dans`");
+    var end = condition(this::term);
+    Optional<Expr> step = Optional.empty();
+    if (match(STEP)) {
+      step = Optional.of(condition(this::term));
+    }
+    consume(LEFT_BRACE, "Il manque un bloc à l'expression `pour`");
+    var body = block();
+
+    return new Stmt.For(token, name, start, end, inclusive, step, body, label);
   }
 
-  private Stmt loopStatement() {
+  private Expr loopExpression(Optional<Token> label) {
     var token = previous();
-    var condition = new Expr.Literal(true);
     consume(LEFT_BRACE, "Il manque un bloc à l'expression `boucle`");
     var body = block();
 
-    return new Stmt.While(token, condition, body);
+    return new Expr.Loop(token, label, body);
   }
 
   private Stmt assignment() {
@@ -167,12 +284,21 @@ class Parser {
         Token name = ((Expr.Variable) expr).name;
         consume(SEMICOLON, "Un `;` était attendu après l'affectation de la variable");
         return new Stmt.Assign(name, value);
+      } else if (expr instanceof Expr.Get) {
+        var get = (Expr.Get) expr;
+        consume(SEMICOLON, "Un `;` était attendu après l'affectation du champ");
+        return new Stmt.SetField(get.object, get.name, value);
+      } else if (expr instanceof Expr.Index) {
+        var index = (Expr.Index) expr;
+        consume(SEMICOLON, "Un `;` était attendu après l'affectation de l'élément");
+        return new Stmt.SetIndex(index.object, index.bracket, index.index, value);
       } else {
         error(equals, "Le côté gauche de l'affectation n'est pas valide");
       }
     }
 
-    if (!(expr instanceof Expr.If) && !(expr instanceof Expr.Block) && !(expr instanceof Expr.Literal)) {
+    if (!(expr instanceof Expr.If) && !(expr instanceof Expr.Block) && !(expr instanceof Expr.Loop)
+        && !(expr instanceof Expr.Literal)) {
       consume(SEMICOLON, "Un `;` était attendu après la ligne de code");
     }
 
@@ -184,12 +310,40 @@ class Parser {
       return block();
     } else if (match(IF)) {
       return ifExpression();
+    } else if (match(LOOP)) {
+      return loopExpression(Optional.empty());
+    } else if (check(LABEL) && checkAhead(2, LOOP)) {
+      var label = Optional.of(advance());
+      consume(COLON, "Un `:` est attendu après le label d'une boucle");
+      consume(LOOP, "Une boucle est attendue après un label");
+      return loopExpression(label);
     }
 
     return or();
   }
 
+  // parses the expression right before a block
+  private Expr condition(Supplier<Expr> parse) {
+    var previous = noStructLiteral;
+    noStructLiteral = true;
+    try {
+      return parse.get();
+    } finally {
+      noStructLiteral = previous;
+    }
+  }
+
   private Expr.Block block() {
+    var previousNoStructLiteral = noStructLiteral;
+    noStructLiteral = false;
+    try {
+      return blockContent();
+    } finally {
+      noStructLiteral = previousNoStructLiteral;
+    }
+  }
+
+  private Expr.Block blockContent() {
     var statements = new ArrayList<Stmt>();
     Optional<Expr> returnedValue = Optional.empty();
 
@@ -207,7 +361,7 @@ class Parser {
 
   private Expr ifExpression() {
     var token = previous();
-    var condition = expression();
+    var condition = condition(this::expression);
     consume(LEFT_BRACE, "Il manque un bloc à l'expression `si`");
     var thenBranch = block();
     Optional<Expr> elseBranch = Optional.empty();
@@ -319,6 +473,14 @@ class Parser {
     while (true) {
       if (match(LEFT_PAREN)) {
         expr = finishCall(expr);
+      } else if (match(DOT)) {
+        var name = consume(IDENTIFIER, "Un nom de champ est attendu après un `.`");
+        expr = new Expr.Get(expr, name);
+      } else if (match(LEFT_BRACKET)) {
+        var bracket = previous();
+        var index = expression();
+        consume(RIGHT_BRACKET, "Un `]` est attendu après l'index");
+        expr = new Expr.Index(expr, bracket, index);
       } else {
         break;
       }
@@ -346,32 +508,103 @@ class Parser {
     if (match(TRUE))
       return new Expr.Literal(true);
 
-    if (match(INTEGER, FLOAT, STRING))
-      return new Expr.Literal(previous().literal.get());
+    if (match(INTEGER, FLOAT, STRING)) {
+      var literal = new Expr.Literal(previous().literal.get());
+      // Without a suffix, the TypeChecker may change its width. An Entier
+      // is past the i64s: it only fits in a u64, which it already is.
+      literal.untyped = previous().type == INTEGER && previous().lexeme.matches("-?[\\d_]+")
+          && !(literal.value instanceof Entier);
+      return literal;
+    }
 
     if (match(IDENTIFIER)) {
-      return new Expr.Variable(previous());
+      var variable = new Expr.Variable(previous());
+      if (!noStructLiteral && isStructLiteral()) {
+        return structLiteral(variable);
+      }
+      return variable;
+    }
+
+    if (match(LEFT_BRACKET)) {
+      return array();
     }
 
     if (match(LEFT_PAREN)) {
-      var expr = expression();
-      if (match(RIGHT_PAREN)) {
-        return new Expr.Grouping(expr);
-      } else if (check(COMMA)) {
-        var expressions = new ArrayList<Expr>();
-        expressions.add(expr);
-        while (match(COMMA)) {
-          expressions.add(expression());
-        }
-        expr = new Expr.Tuple(expressions);
-        consume(RIGHT_PAREN, "`(` du tuple jamais fermé");
-        return expr;
+      var previousNoStructLiteral = noStructLiteral;
+      noStructLiteral = false;
+      try {
+        return parenthesized();
+      } finally {
+        noStructLiteral = previousNoStructLiteral;
+      }
+    }
+
+    throw error(peek(), "Expression attendue, mot clé trouvé");
+  }
+
+  private Expr parenthesized() {
+    var expr = expression();
+    if (match(RIGHT_PAREN)) {
+      return new Expr.Grouping(expr);
+    } else if (check(COMMA)) {
+      var expressions = new ArrayList<Expr>();
+      expressions.add(expr);
+      while (match(COMMA)) {
+        expressions.add(expression());
       }
+      expr = new Expr.Tuple(expressions);
+      consume(RIGHT_PAREN, "`(` du tuple jamais fermé");
+      return expr;
     }
 
     throw error(peek(), "Expression attendue, mot clé trouvé");
   }
 
+
+  // `Nom {` followed by `}` or `champ:`
+  private boolean isStructLiteral() {
+    if (!check(LEFT_BRACE))
+      return false;
+    var next = tokens.get(current + 1).type;
+    return next == RIGHT_BRACE
+        || next == IDENTIFIER && tokens.get(current + 2).type == COLON;
+  }
+
+  private Expr structLiteral(Expr.Variable structure) {
+    consume(LEFT_BRACE, "Un `{` est attendu après le nom de la structure");
+    var fields = new ArrayList<Token>();
+    var values = new ArrayList<Expr>();
+    while (!check(RIGHT_BRACE)) {
+      fields.add(consume(IDENTIFIER, "Nom de champ attendu"));
+      consume(COLON, "Un `:` est attendu après le nom du champ");
+      values.add(expression());
+      if (!match(COMMA))
+        break;
+    }
+    consume(RIGHT_BRACE, "Un `}` est attendu après les champs de la structure");
+    return new Expr.Construct(structure, fields, values);
+  }
+
+  // `[a, b, c]` or `[valeur; nombre]`
+  private Expr array() {
+    var bracket = previous();
+    var elements = new ArrayList<Expr>();
+    if (!check(RIGHT_BRACKET)) {
+      var first = expression();
+      if (match(SEMICOLON)) {
+        var count = expression();
+        consume(RIGHT_BRACKET, "Un `]` est attendu après le nombre d'éléments");
+        return new Expr.Repeat(bracket, first, count);
+      }
+      elements.add(first);
+      while (match(COMMA)) {
+        elements.add(expression());
+      }
+    }
+    consume(RIGHT_BRACKET, "`[` du vecteur jamais fermé");
+    return new Expr.Array(bracket, elements);
+  }
+
   private Token consume(TokenType type, String message) {
     if (check(type))
       return advance();
@@ -393,8 +626,12 @@ class Parser {
         case FOR:
         case IF:
         case WHILE:
+        case LOOP:
+        case BREAK:
+        case CONTINUE:
         case PRINT:
         case RETURN:
+        case YIELD:
           return;
 
         default:
@@ -430,6 +667,10 @@ class Parser {
     return !isAtEnd() && peek().type == type;
   }
 
+  private boolean checkAhead(int distance, TokenType type) {
+    return current + distance < tokens.size() && tokens.get(current + distance).type == type;
+  }
+
   private Token peek() {
     return tokens.get(current);
   }
@@ -1,8 +1,12 @@
 package interpreteur.rouille.java;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.Stack;
 
 import interpreteur.rouille.java.Expr.Binary;
@@ -25,12 +29,33 @@ import interpreteur.rouille.java.Stmt.While;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-  private final Interpreter interpreter;
-  private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+  // the distance of the scope of each local variable reference
+  private final Map<Object, Integer> locals;
+  // the names declared at the top level, which shadow the math intrinsics
+  private final Set<Symbol> globals;
+  private final Diagnostics diagnostics;
+  private final Stack<Map<Symbol, Boolean>> scopes = new Stack<>();
+  // the declarations of the mutable variables of each scope
+  private final Stack<Map<Symbol, Var>> mutables = new Stack<>();
   private FunctionType currentFunction = FunctionType.NONE;
-
-  Resolver(Interpreter interpreter) {
-    this.interpreter = interpreter;
+  private Closure closure = null;
+  // the loops around the code being resolved, innermost last
+  private List<Loop> loops = new ArrayList<>();
+  // False inside an operand, an argument, a condition... The Interpreter
+  // leaves a loop by returning from the statements and the blocks up to it,
+  // and only the statements check that they are being left, so an `arrête`
+  // or a `continue` can't be in the middle of an expression.
+  private boolean leavable = true;
+  // False where the value of an expression is used. The Generateur suspends
+  // a function between two statements, so a `produit` can only be in a
+  // statement, a block, a `si` or a loop whose value is not used: not in a
+  // `soit` or an assignment either, where an `arrête` can be.
+  private boolean suspendable = true;
+
+  Resolver(Map<Object, Integer> locals, Set<Symbol> globals, Diagnostics diagnostics) {
+    this.locals = locals;
+    this.globals = globals;
+    this.diagnostics = diagnostics;
   }
 
   private enum FunctionType {
@@ -38,9 +63,43 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     FUNCTION,
   }
 
+  // A function being resolved. `depth` is the scope of its parameters, the
+  // captures are the variables of the enclosing scopes it uses.
+  //
+  // A function only keeps these variables: they are copied, when it is
+  // declared, into an environment between its calls and the globals. A
+  // mutable variable captured by a function is declared in a cell, which is
+  // what gets copied, so the function and its scope share the variable.
+  private static class Closure {
+    final Closure enclosing;
+    final int depth;
+    final Map<Symbol, Expr.Variable> captures = new LinkedHashMap<>();
+    // it has a `produit`
+    boolean generator = false;
+
+    Closure(Closure enclosing, int depth) {
+      this.enclosing = enclosing;
+      this.depth = depth;
+    }
+  }
+
+  private static class Loop {
+    final Optional<Token> label;
+    // a `boucle`, the other loops have no value
+    final boolean valued;
+    // whether the loops around it can be left from inside it
+    final boolean leavable;
+
+    Loop(Optional<Token> label, boolean valued, boolean leavable) {
+      this.label = label;
+      this.valued = valued;
+      this.leavable = leavable;
+    }
+  }
+
   @Override
   public Void visitExpressionStmt(Expression stmt) {
-    resolve(stmt.expression);
+    resolveLeavable(stmt.expression);
     return null;
   }
 
@@ -61,9 +120,27 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitReturnStmt(Return stmt) {
     if (currentFunction == FunctionType.NONE) {
-      App.error(stmt.keyword, "`renvoie` ne peut pas être utilisé hors d'une fonction.");
+      diagnostics.error(stmt.keyword, "`renvoie` ne peut pas être utilisé hors d'une fonction.");
     }
 
+    // the last expression of a function is returned, it can be a loop that
+    // suspends a generator
+    var enclosingLeavable = leavable;
+    leavable = false;
+    stmt.value.accept(this);
+    leavable = enclosingLeavable;
+    return null;
+  }
+
+  @Override
+  public Void visitYieldStmt(Stmt.Yield stmt) {
+    if (currentFunction == FunctionType.NONE)
+      diagnostics.error(stmt.keyword, "`produit` ne peut pas être utilisé hors d'une fonction.");
+    else if (!suspendable)
+      diagnostics.error(stmt.keyword, "`produit` ne peut pas être utilisé au milieu d'une expression.");
+    else
+      closure.generator = true;
+
     resolve(stmt.value);
     return null;
   }
@@ -71,14 +148,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitVarStmt(Var stmt) {
     declare(stmt.name);
-    resolve(stmt.initializer);
+    resolveAssigned(stmt.initializer);
     define(stmt.name);
+    if (stmt.mutable && !scopes.isEmpty())
+      mutables.peek().put(stmt.name.symbol, stmt);
     return null;
   }
 
   @Override
   public Void visitAssignStmt(Assign stmt) {
-    resolve(stmt.value);
+    resolveAssigned(stmt.value);
     resolveLocal(stmt, stmt.name);
     return null;
   }
@@ -86,7 +165,71 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitWhileStmt(While stmt) {
     resolve(stmt.condition);
-    resolve(stmt.body);
+    resolveLoop(stmt.body, stmt.label, false);
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    stmt.loops = target(stmt.keyword, stmt.label, "arrête");
+    if (stmt.value.isPresent()) {
+      if (stmt.loops >= 0 && !loops.get(loops.size() - 1 - stmt.loops).valued)
+        diagnostics.error(stmt.keyword, "Seul un `arrête` d'une `boucle` peut avoir une valeur.");
+      resolve(stmt.value.get());
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    stmt.loops = target(stmt.keyword, stmt.label, "continue");
+    return null;
+  }
+
+  @Override
+  public Void visitStructStmt(Stmt.Struct stmt) {
+    declare(stmt.name);
+    define(stmt.name);
+    return null;
+  }
+
+  @Override
+  public Void visitSetFieldStmt(Stmt.SetField stmt) {
+    resolve(stmt.object);
+    resolveAssigned(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitSetIndexStmt(Stmt.SetIndex stmt) {
+    resolve(stmt.object);
+    resolve(stmt.index);
+    resolveAssigned(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    resolve(stmt.start);
+    resolve(stmt.end);
+    if (stmt.step.isPresent())
+      resolve(stmt.step.get());
+
+    beginScope();
+    define(stmt.name);
+    resolveLoop(stmt.body, stmt.label, false);
+    endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitForEachStmt(Stmt.ForEach stmt) {
+    resolve(stmt.iterable);
+
+    beginScope();
+    define(stmt.name);
+    resolveLoop(stmt.body, stmt.label, false);
+    endScope();
     return null;
   }
 
@@ -105,6 +248,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       resolve(argument);
     }
 
+    if (expr.callee instanceof Variable) {
+      var name = ((Variable) expr.callee).name;
+      var intrinsic = Maths.Intrinsic.of(name.symbol);
+      if (intrinsic != null && intrinsic.arity == expr.arguments.size() && !globals.contains(name.symbol)
+          && !isLocal(name))
+        expr.intrinsic = intrinsic;
+    }
     return null;
   }
 
@@ -127,6 +277,43 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitGetExpr(Expr.Get expr) {
+    resolve(expr.object);
+    return null;
+  }
+
+  @Override
+  public Void visitConstructExpr(Expr.Construct expr) {
+    resolve(expr.structure);
+    for (var value : expr.values) {
+      resolve(value);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitIndexExpr(Expr.Index expr) {
+    resolve(expr.object);
+    resolve(expr.index);
+    return null;
+  }
+
+  @Override
+  public Void visitArrayExpr(Expr.Array expr) {
+    for (var e : expr.elements) {
+      resolve(e);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitRepeatExpr(Expr.Repeat expr) {
+    resolve(expr.value);
+    resolve(expr.count);
+    return null;
+  }
+
   @Override
   public Void visitLogicalExpr(Logical expr) {
     resolve(expr.left);
@@ -142,8 +329,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitVariableExpr(Variable expr) {
-    if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-      App.error(expr.name, "Une variable ne peut pas être définie par elle-même");
+    if (!scopes.isEmpty() && scopes.peek().get(expr.name.symbol) == Boolean.FALSE) {
+      diagnostics.error(expr.name, "Une variable ne peut pas être définie par elle-même");
     }
 
     resolveLocal(expr, expr.name);
@@ -155,7 +342,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     beginScope();
     resolve(expr.statements);
     if (expr.returnedValue.isPresent()) {
-      resolve(expr.returnedValue.get());
+      resolveLeavable(expr.returnedValue.get());
     }
     endScope();
     return null;
@@ -164,18 +351,26 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitIfExpr(If expr) {
     resolve(expr.condition);
-    resolve(expr.thenBranch);
+    resolveLeavable(expr.thenBranch);
     if (expr.elseBranch.isPresent())
-      resolve(expr.elseBranch.get());
+      resolveLeavable(expr.elseBranch.get());
+    return null;
+  }
+
+  @Override
+  public Void visitLoopExpr(Expr.Loop expr) {
+    resolveLoop(expr.body, expr.label, true);
     return null;
   }
 
   private void beginScope() {
     scopes.push(new HashMap<>());
+    mutables.push(new HashMap<>());
   }
 
   private void endScope() {
     scopes.pop();
+    mutables.pop();
   }
 
   private void declare(Token name) {
@@ -183,7 +378,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       return;
 
     var scope = scopes.peek();
-    scope.put(name.lexeme, false);
+    scope.put(name.symbol, false);
   }
 
   private void define(Token name) {
@@ -191,33 +386,136 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       return;
 
     var scope = scopes.peek();
-    scope.put(name.lexeme, true);
+    scope.put(name.symbol, true);
+  }
+
+  private boolean isLocal(Token name) {
+    for (var scope : scopes) {
+      if (scope.containsKey(name.symbol))
+        return true;
+    }
+    return false;
   }
 
   private void resolveLocal(Object exprOrStmt, Token name) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
-      if (scopes.get(i).containsKey(name.lexeme)) {
-        interpreter.resolve(exprOrStmt, scopes.size() - 1 - i);
+      if (scopes.get(i).containsKey(name.symbol)) {
+        reference(exprOrStmt, name, i, scopes.size() - 1, closure);
         return;
       }
     }
   }
 
+  private void reference(Object exprOrStmt, Token name, int scope, int depth, Closure from) {
+    locals.put(exprOrStmt, distance(scope, depth, from));
+    if (from == null || from.depth <= scope)
+      return;
+
+    var declaration = mutables.get(scope).get(name.symbol);
+    if (declaration != null)
+      declaration.cell = true;
+
+    // every function crossed captures the variable, to pass it to the next one
+    for (var function = from; function != null && function.depth > scope; function = function.enclosing) {
+      if (!function.captures.containsKey(name.symbol)) {
+        // read where the function is declared, just outside its parameters
+        var capture = new Expr.Variable(name);
+        function.captures.put(name.symbol, capture);
+        locals.put(capture, distance(scope, function.depth - 1, function.enclosing));
+      }
+    }
+  }
+
+  // the closure environment of the innermost function crossed, or the scope
+  // itself when no function is crossed
+  private static int distance(int scope, int depth, Closure from) {
+    if (from != null && from.depth > scope)
+      return depth - from.depth + 1;
+    return depth - scope;
+  }
+
   private void resolveFunction(Stmt.Function function, FunctionType type) {
     var enclosingFunctionType = currentFunction;
     currentFunction = type;
+    var enclosingClosure = closure;
+    // a function can't leave the loops around it
+    var enclosingLoops = loops;
+    var enclosingLeavable = leavable;
+    var enclosingSuspendable = suspendable;
+    loops = new ArrayList<>();
+    leavable = true;
+    suspendable = true;
 
     beginScope();
+    closure = new Closure(enclosingClosure, scopes.size() - 1);
     for (var param : function.params)
       define(param);
 
     resolve(function.body);
     endScope();
 
+    function.captures = new ArrayList<>(closure.captures.values());
+    function.suspending = closure.generator ? Generateur.suspending(function.body) : null;
+    closure = enclosingClosure;
     currentFunction = enclosingFunctionType;
+    loops = enclosingLoops;
+    leavable = enclosingLeavable;
+    suspendable = enclosingSuspendable;
+  }
+
+  private void resolveLoop(Expr.Block body, Optional<Token> label, boolean valued) {
+    if (label.isPresent()) {
+      for (var loop : loops) {
+        if (loop.label.isPresent() && loop.label.get().lexeme.equals(label.get().lexeme))
+          diagnostics.error(label.get(), "Le label `" + label.get().lexeme + "` est déjà celui d'une boucle englobante.");
+      }
+    }
+    var enclosingLeavable = leavable;
+    loops.add(new Loop(label, valued, leavable));
+    leavable = true;
+    resolveLeavable(body);
+    leavable = enclosingLeavable;
+    loops.remove(loops.size() - 1);
+  }
+
+  // The number of loops between an `arrête` or a `continue` and the loop it
+  // leaves, -1 if there is none.
+  private int target(Token keyword, Optional<Token> label, String construct) {
+    if (!leavable) {
+      diagnostics.error(keyword, "`" + construct + "` ne peut pas être utilisé au milieu d'une expression.");
+      return -1;
+    }
+    if (loops.isEmpty()) {
+      diagnostics.error(keyword, "`" + construct + "` ne peut être utilisé que dans une boucle.");
+      return -1;
+    }
+    if (label.isEmpty())
+      return 0;
+    for (int i = loops.size() - 1; i >= 0; i--) {
+      var loop = loops.get(i).label;
+      if (loop.isPresent() && loop.get().lexeme.equals(label.get().lexeme))
+        return loops.size() - 1 - i;
+      if (!loops.get(i).leavable) {
+        diagnostics.error(keyword, "`" + construct + "` ne peut pas sortir d'une boucle au milieu d'une expression.");
+        return -1;
+      }
+    }
+    diagnostics.error(label.get(), "Aucune boucle englobante n'a le label `" + label.get().lexeme + "`.");
+    return -1;
   }
 
   void resolve(List<Stmt> statements) {
+    // the top level declarations can be used before they are declared
+    if (scopes.isEmpty()) {
+      for (var statement : statements) {
+        if (statement instanceof Function)
+          globals.add(((Function) statement).name.symbol);
+        else if (statement instanceof Var)
+          globals.add(((Var) statement).name.symbol);
+        else if (statement instanceof Stmt.Struct)
+          globals.add(((Stmt.Struct) statement).name.symbol);
+      }
+    }
     for (var statement : statements) {
       resolve(statement);
     }
@@ -228,6 +526,27 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   }
 
   private void resolve(Expr expr) {
+    var enclosingLeavable = leavable;
+    var enclosingSuspendable = suspendable;
+    leavable = false;
+    suspendable = false;
+    expr.accept(this);
+    leavable = enclosingLeavable;
+    suspendable = enclosingSuspendable;
+  }
+
+  // an expression whose statement checks, after evaluating it, whether a
+  // loop is being left
+  private void resolveLeavable(Expr expr) {
+    expr.accept(this);
+  }
+
+  // the value of a `soit` or of an assignment, which is checked like the
+  // expression of a statement but can't suspend a generator
+  private void resolveAssigned(Expr expr) {
+    var enclosingSuspendable = suspendable;
+    suspendable = false;
     expr.accept(this);
+    suspendable = enclosingSuspendable;
   }
 }
@@ -0,0 +1,48 @@
+package interpreteur.rouille.java;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Entry point to embed rouille in a Java program:
+//
+//   var script = RouilleEngine.compile(source);
+//   script.execute(Map.of("nom", "Oscar"), System.out::println);
+//
+// A compiled script can be executed any number of times, from any thread.
+public final class RouilleEngine {
+  private RouilleEngine() {
+  }
+
+  public static CompiledScript compile(String source) throws RouilleException {
+    var diagnostics = new Diagnostics();
+    var locals = new HashMap<Object, Integer>();
+    var statements = compile(source, locals, new HashSet<>(), diagnostics);
+    if (diagnostics.hadError())
+      throw new RouilleException(diagnostics.list());
+    return new CompiledScript(statements, locals);
+  }
+
+  // Scans, parses, resolves and checks `source`. The distances of the local
+  // variables go to `locals`, the names it declares at the top level go to
+  // `globals`, which starts with those of the code it runs after; null if
+  // there was an error.
+  static List<Stmt> compile(String source, Map<Object, Integer> locals, Set<Symbol> globals,
+      Diagnostics diagnostics) {
+    var tokens = new Scanner(source, diagnostics).scanTokens();
+    var statements = new Parser(tokens, diagnostics).parse();
+    if (diagnostics.hadError())
+      return null;
+
+    new Resolver(locals, globals, diagnostics).resolve(statements);
+    if (diagnostics.hadError())
+      return null;
+
+    new TypeChecker(diagnostics).check(statements);
+    if (diagnostics.hadError())
+      return null;
+    return statements;
+  }
+}
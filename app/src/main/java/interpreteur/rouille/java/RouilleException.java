@@ -0,0 +1,22 @@
+package interpreteur.rouille.java;
+
+import java.util.List;
+
+// A script that doesn't compile, or an execution that stopped on an error.
+public class RouilleException extends Exception {
+  private final List<Diagnostic> diagnostics;
+
+  RouilleException(List<Diagnostic> diagnostics) {
+    super(diagnostics.isEmpty() ? "" : diagnostics.get(0).toString());
+    this.diagnostics = diagnostics;
+  }
+
+  RouilleException(List<Diagnostic> diagnostics, Throwable cause) {
+    this(diagnostics);
+    initCause(cause);
+  }
+
+  public List<Diagnostic> diagnostics() {
+    return diagnostics;
+  }
+}
@@ -15,6 +15,9 @@ class Scanner {
   private int current = 0;
   private int line = 0;
   private int column = 0;
+  // identical literals of a script share the same value
+  private final HashMap<Object, Object> literals = new HashMap<>();
+  private final Diagnostics diagnostics;
   static private HashMap<TokenType, Pattern> patterns = new HashMap<>();
 
   static {
@@ -24,8 +27,9 @@ class Scanner {
     }
   }
 
-  Scanner(String source) {
+  Scanner(String source, Diagnostics diagnostics) {
     this.source = source;
+    this.diagnostics = diagnostics;
   }
 
   List<Token> scanTokens() {
@@ -66,7 +70,7 @@ class Scanner {
     if (maxTokenType == null) {
       var token = advance();
       if (!Character.isWhitespace(token)) {
-        App.error(line, "Unknown token `" + token + "`.");
+        diagnostics.error(line, "Unknown token `" + token + "`.");
       } else if (token == '\n') {
         column = 0;
         line++;
@@ -78,13 +82,13 @@ class Scanner {
     column += maxTokenLenght;
     switch (maxTokenType) {
       case INTEGER:
-        addToken(maxTokenType, Optional.of(Integer.parseInt(maxLexeme)));
+        addToken(maxTokenType, Optional.of(integer(maxLexeme)));
         break;
       case FLOAT:
         addToken(maxTokenType, Optional.of(Double.parseDouble(maxLexeme)));
         break;
       case STRING:
-        addToken(maxTokenType, Optional.of(maxLexeme.substring(1, maxLexeme.length() - 1)));
+        addToken(maxTokenType, Optional.of(new Chaine(maxLexeme.substring(1, maxLexeme.length() - 1))));
         break;
       default:
         addToken(maxTokenType);
@@ -92,6 +96,36 @@ class Scanner {
     }
   }
 
+  // An unsuffixed literal is an i32, or an i64 when it doesn't fit: the
+  // TypeChecker gives it another width when its context needs one. Past
+  // the i64s, up to 18446744073709551615, it can only be a u64, and is one.
+  private Object integer(String lexeme) {
+    var digits = lexeme.replace("_", "");
+    var end = 1;
+    while (end < digits.length() && Character.isDigit(digits.charAt(end)))
+      end++;
+    var largeur = end < digits.length() ? Entier.Largeur.of(digits.substring(end)) : null;
+    digits = digits.substring(0, end);
+
+    try {
+      if (largeur == null) {
+        var value = digits.startsWith("-") ? Long.parseLong(digits) : Long.parseUnsignedLong(digits);
+        if (value < 0 && !digits.startsWith("-"))
+          return Entier.Largeur.U64.box(value);
+        return value == (int) value ? (Object) (int) value : (Object) value;
+      }
+      if (largeur.signed || !digits.startsWith("-")) {
+        var value = largeur.signed ? Long.parseLong(digits) : Long.parseUnsignedLong(digits);
+        if (largeur.contains(value))
+          return largeur.box(value);
+      }
+    } catch (NumberFormatException e) {
+    }
+    var widest = largeur != null ? largeur : digits.startsWith("-") ? Entier.Largeur.I64 : Entier.Largeur.U64;
+    diagnostics.error(line, "Le littéral `" + lexeme + "` dépasse la capacité de `" + widest + "`.");
+    return 0;
+  }
+
   private char advance() {
     return source.charAt(current++);
   }
@@ -102,6 +136,9 @@ class Scanner {
 
   private void addToken(TokenType type, Optional<Object> literal) {
     String text = source.substring(start, current);
+    if (literal.isPresent()) {
+      literal = Optional.of(literals.computeIfAbsent(literal.get(), value -> value));
+    }
     tokens.add(new Token(type, text, literal, line, column));
   }
 }
@@ -3,7 +3,7 @@ package interpreteur.rouille.java;
 import java.util.List;
 import java.util.Optional;
 
-abstract class Stmt {
+abstract sealed class Stmt {
   interface Visitor<R> {
     R visitExpressionStmt(Expression stmt);
     R visitFunctionStmt(Function stmt);
@@ -11,11 +11,43 @@ abstract class Stmt {
     R visitReturnStmt(Return stmt);
     R visitVarStmt(Var stmt);
     R visitAssignStmt(Assign stmt);
+    R visitSetIndexStmt(SetIndex stmt);
+    R visitSetFieldStmt(SetField stmt);
     R visitWhileStmt(While stmt);
+    R visitForStmt(For stmt);
+    R visitForEachStmt(ForEach stmt);
+    R visitStructStmt(Struct stmt);
+    R visitBreakStmt(Break stmt);
+    R visitContinueStmt(Continue stmt);
+    R visitYieldStmt(Yield stmt);
 
   }
-  static class Expression extends Stmt {
+
+  static final int EXPRESSION = 0;
+  static final int FUNCTION = 1;
+  static final int PRINT = 2;
+  static final int RETURN = 3;
+  static final int VAR = 4;
+  static final int ASSIGN = 5;
+  static final int SET_INDEX = 6;
+  static final int SET_FIELD = 7;
+  static final int WHILE = 8;
+  static final int FOR = 9;
+  static final int FOR_EACH = 10;
+  static final int STRUCT = 11;
+  static final int BREAK = 12;
+  static final int CONTINUE = 13;
+  static final int YIELD = 14;
+
+  final int kind;
+
+  private Stmt(int kind) {
+    this.kind = kind;
+  }
+
+  static final class Expression extends Stmt {
     Expression(Expr expression) {
+      super(EXPRESSION);
       this.expression = expression;
     }
 
@@ -27,10 +59,13 @@ abstract class Stmt {
     final Expr expression;
   }
 
-  static class Function extends Stmt {
-    Function(Token name, List<Token> params, List<Stmt> body) {
+  static final class Function extends Stmt {
+    Function(Token name, List<Token> params, List<Type> types, Optional<Type> returnType, List<Stmt> body) {
+      super(FUNCTION);
       this.name = name;
       this.params = params;
+      this.types = types;
+      this.returnType = returnType;
       this.body = body;
     }
 
@@ -41,11 +76,16 @@ abstract class Stmt {
     
     final Token name;
     final List<Token> params;
+    final List<Type> types;
+    final Optional<Type> returnType;
     final List<Stmt> body;
+    List<Expr.Variable> captures;
+    java.util.Set<Object> suspending;
   }
 
-  static class Print extends Stmt {
+  static final class Print extends Stmt {
     Print(Expr expression) {
+      super(PRINT);
       this.expression = expression;
     }
 
@@ -57,8 +97,9 @@ abstract class Stmt {
     final Expr expression;
   }
 
-  static class Return extends Stmt {
+  static final class Return extends Stmt {
     Return(Token keyword, Expr value) {
+      super(RETURN);
       this.keyword = keyword;
       this.value = value;
     }
@@ -72,8 +113,9 @@ abstract class Stmt {
     final Expr value;
   }
 
-  static class Var extends Stmt {
+  static final class Var extends Stmt {
     Var(Token name, Expr initializer, boolean mutable, Optional<Type> type) {
+      super(VAR);
       this.name = name;
       this.initializer = initializer;
       this.mutable = mutable;
@@ -89,10 +131,13 @@ abstract class Stmt {
     final Expr initializer;
     final boolean mutable;
     final Optional<Type> type;
+    Type guard;
+    boolean cell;
   }
 
-  static class Assign extends Stmt {
+  static final class Assign extends Stmt {
     Assign(Token name, Expr value) {
+      super(ASSIGN);
       this.name = name;
       this.value = value;
     }
@@ -104,13 +149,55 @@ abstract class Stmt {
     
     final Token name;
     final Expr value;
+    Type guard;
+  }
+
+  static final class SetIndex extends Stmt {
+    SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+      super(SET_INDEX);
+      this.object = object;
+      this.bracket = bracket;
+      this.index = index;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSetIndexStmt(this);
+    }
+    
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+    final Expr value;
   }
 
-  static class While extends Stmt {
-    While(Token whileToken, Expr condition, Expr.Block body) {
+  static final class SetField extends Stmt {
+    SetField(Expr object, Token name, Expr value) {
+      super(SET_FIELD);
+      this.object = object;
+      this.name = name;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSetFieldStmt(this);
+    }
+    
+    final Expr object;
+    final Token name;
+    final Expr value;
+    Structure.Field cache;
+  }
+
+  static final class While extends Stmt {
+    While(Token whileToken, Expr condition, Expr.Block body, Optional<Token> label) {
+      super(WHILE);
       this.whileToken = whileToken;
       this.condition = condition;
       this.body = body;
+      this.label = label;
     }
 
     @Override
@@ -121,6 +208,129 @@ abstract class Stmt {
     final Token whileToken;
     final Expr condition;
     final Expr.Block body;
+    final Optional<Token> label;
+    boolean proven;
+  }
+
+  static final class For extends Stmt {
+    For(Token forToken, Token name, Expr start, Expr end, boolean inclusive, Optional<Expr> step, Expr.Block body, Optional<Token> label) {
+      super(FOR);
+      this.forToken = forToken;
+      this.name = name;
+      this.start = start;
+      this.end = end;
+      this.inclusive = inclusive;
+      this.step = step;
+      this.body = body;
+      this.label = label;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForStmt(this);
+    }
+    
+    final Token forToken;
+    final Token name;
+    final Expr start;
+    final Expr end;
+    final boolean inclusive;
+    final Optional<Expr> step;
+    final Expr.Block body;
+    final Optional<Token> label;
+    Entier.Largeur largeur;
+  }
+
+  static final class ForEach extends Stmt {
+    ForEach(Token forToken, Token name, Expr iterable, Expr.Block body, Optional<Token> label) {
+      super(FOR_EACH);
+      this.forToken = forToken;
+      this.name = name;
+      this.iterable = iterable;
+      this.body = body;
+      this.label = label;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForEachStmt(this);
+    }
+    
+    final Token forToken;
+    final Token name;
+    final Expr iterable;
+    final Expr.Block body;
+    final Optional<Token> label;
+  }
+
+  static final class Struct extends Stmt {
+    Struct(Token name, List<Token> fields, List<Type> types) {
+      super(STRUCT);
+      this.name = name;
+      this.fields = fields;
+      this.types = types;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitStructStmt(this);
+    }
+    
+    final Token name;
+    final List<Token> fields;
+    final List<Type> types;
+  }
+
+  static final class Break extends Stmt {
+    Break(Token keyword, Optional<Token> label, Optional<Expr> value) {
+      super(BREAK);
+      this.keyword = keyword;
+      this.label = label;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitBreakStmt(this);
+    }
+    
+    final Token keyword;
+    final Optional<Token> label;
+    final Optional<Expr> value;
+    int loops;
+  }
+
+  static final class Continue extends Stmt {
+    Continue(Token keyword, Optional<Token> label) {
+      super(CONTINUE);
+      this.keyword = keyword;
+      this.label = label;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitContinueStmt(this);
+    }
+    
+    final Token keyword;
+    final Optional<Token> label;
+    int loops;
+  }
+
+  static final class Yield extends Stmt {
+    Yield(Token keyword, Expr value) {
+      super(YIELD);
+      this.keyword = keyword;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitYieldStmt(this);
+    }
+    
+    final Token keyword;
+    final Expr value;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,125 @@
+package interpreteur.rouille.java;
+
+import java.util.Arrays;
+import java.util.List;
+
+// A `structure` declaration. Its field layout is fixed when it is declared:
+// every instance stores its fields in an Object[] in declaration order, and
+// the nodes that read, write or build instances cache the slot they resolved
+// for the last structure they saw (its shape), so a field access is an
+// identity check followed by an indexed read.
+class Structure {
+  final Token name;
+  private final Field[] fields;
+
+  Structure(Token name, List<Token> fieldNames) {
+    this.name = name;
+    this.fields = new Field[fieldNames.size()];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = new Field(this, fieldNames.get(i).symbol, i);
+    }
+  }
+
+  int size() {
+    return fields.length;
+  }
+
+  Symbol fieldName(int slot) {
+    return fields[slot].name;
+  }
+
+  Field field(Token name) {
+    for (var field : fields) {
+      if (field.name == name.symbol)
+        return field;
+    }
+    throw new RuntimeError(name,
+        "La structure `" + this.name.lexeme + "` n'a pas de champ `" + name.lexeme + "`.");
+  }
+
+  Layout layout(Token at, List<Token> names) {
+    var slots = new int[names.size()];
+    var seen = new boolean[fields.length];
+    for (int i = 0; i < slots.length; i++) {
+      var slot = field(names.get(i)).slot;
+      if (seen[slot])
+        throw new RuntimeError(names.get(i), "Le champ `" + names.get(i).lexeme + "` est initialisé deux fois.");
+      seen[slot] = true;
+      slots[i] = slot;
+    }
+    for (var field : fields) {
+      if (!seen[field.slot])
+        throw new RuntimeError(at,
+            "Le champ `" + field.name + "` de `" + name.lexeme + "` n'est pas initialisé.");
+    }
+    return new Layout(this, slots);
+  }
+
+  @Override
+  public String toString() {
+    return "<structure " + name.lexeme + ">";
+  }
+
+  // A resolved field access: immutable, so the interpreter can swap
+  // it in a node while other threads read it.
+  static final class Field {
+    final Structure structure;
+    final Symbol name;
+    final int slot;
+
+    private Field(Structure structure, Symbol name, int slot) {
+      this.structure = structure;
+      this.name = name;
+      this.slot = slot;
+    }
+  }
+
+  // The slot of each field of a construction, in the order they are written.
+  static final class Layout {
+    final Structure structure;
+    final int[] slots;
+
+    private Layout(Structure structure, int[] slots) {
+      this.structure = structure;
+      this.slots = slots;
+    }
+  }
+}
+
+final class Instance {
+  final Structure structure;
+  final Object[] fields;
+
+  Instance(Structure structure, Object[] fields) {
+    this.structure = structure;
+    this.fields = fields;
+  }
+
+  @Override
+  public String toString() {
+    var builder = new StringBuilder(structure.name.lexeme).append(" {");
+    for (int i = 0; i < fields.length; i++) {
+      builder.append(i > 0 ? ", " : " ").append(structure.fieldName(i)).append(": ").append(fields[i]);
+    }
+    return builder.append(fields.length > 0 ? " }" : "}").toString();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Instance))
+      return false;
+    var other = (Instance) obj;
+    if (structure != other.structure)
+      return false;
+    for (int i = 0; i < fields.length; i++) {
+      if (!Tuple.same(fields[i], other.fields[i]))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(structure) + Arrays.hashCode(fields);
+  }
+}
@@ -0,0 +1,77 @@
+package interpreteur.rouille.java;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Interned identifier. There is a single Symbol per name, so symbols are
+// compared by identity and hashed by their precomputed id. The table is
+// global, the natives and every scanned script share the same symbols.
+//
+// The table only holds its symbols weakly: the embedding API and the daemon
+// compile scripts for the life of the process, and the names of a script
+// are dropped along with its tokens and environments. A name is only
+// interned again once nothing refers to its previous symbol, so nothing can
+// tell the two apart.
+final class Symbol {
+  private static final ConcurrentHashMap<String, Entry> table = new ConcurrentHashMap<>();
+  private static final ReferenceQueue<Symbol> collected = new ReferenceQueue<>();
+  private static final AtomicInteger nextId = new AtomicInteger();
+
+  final String name;
+  final int id;
+
+  private Symbol(String name) {
+    this.name = name;
+    this.id = nextId.getAndIncrement();
+  }
+
+  private static final class Entry extends WeakReference<Symbol> {
+    final String name;
+
+    Entry(Symbol symbol) {
+      super(symbol, collected);
+      this.name = symbol.name;
+    }
+  }
+
+  static Symbol of(String name) {
+    var entry = table.get(name);
+    var symbol = entry == null ? null : entry.get();
+    if (symbol != null)
+      return symbol;
+
+    expunge();
+    var created = new Symbol[1];
+    table.compute(name, (key, previous) -> {
+      var existing = previous == null ? null : previous.get();
+      if (existing != null) {
+        created[0] = existing;
+        return previous;
+      }
+      created[0] = new Symbol(key);
+      return new Entry(created[0]);
+    });
+    return created[0];
+  }
+
+  // removes the entries of the collected symbols, unless the name has been
+  // interned again since
+  private static void expunge() {
+    for (var reference = collected.poll(); reference != null; reference = collected.poll()) {
+      var entry = (Entry) reference;
+      table.remove(entry.name, entry);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return id;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,121 @@
+package interpreteur.rouille.java;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Lightweight tasks (`lance`/`attends`) and bounded channels
+// (`canal`/`envoie`/`recois`). Every task runs on its own forked interpreter,
+// only the globals are shared between tasks.
+class Tasks {
+  static final ExecutorService executor = createExecutor();
+
+  // Virtual threads when the JVM has them (21+), daemon platform threads
+  // otherwise.
+  private static ExecutorService createExecutor() {
+    try {
+      var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "rouille-tâche");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  @Native("lance")
+  static Handle lance(Interpreter interpreter, Callable f) {
+    if (f.arity() != 0)
+      throw new RuntimeError(null, "`lance` attend une fonction sans paramètre.");
+
+    var worker = interpreter.spawn();
+    return new Handle(executor.submit(() -> f.call0(worker)));
+  }
+
+  @Native("attends")
+  static Object attends(Handle tache) {
+    return tache.join();
+  }
+
+  @Native(value = "canal", parametres = { "capacite" })
+  static Channel canal(int capacite) {
+    if (capacite < 1)
+      throw new RuntimeError(null, "La capacité d'un canal doit être au moins 1.");
+    return new Channel(capacite);
+  }
+
+  @Native("envoie")
+  static void envoie(Channel canal, Object valeur) {
+    canal.send(valeur);
+  }
+
+  @Native("recois")
+  static Object recois(Channel canal) {
+    return canal.receive();
+  }
+
+  static RuntimeError interrupted(String name) {
+    Thread.currentThread().interrupt();
+    return new RuntimeError(null, "`" + name + "` a été interrompu.");
+  }
+
+  // what `lance` returns, which `attends` joins
+  static final class Handle {
+    private final Future<Object> future;
+
+    Handle(Future<Object> future) {
+      this.future = future;
+    }
+
+    Object join() {
+      try {
+        return future.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw new RuntimeError(null, "La tâche a échoué: " + e.getCause());
+      } catch (InterruptedException e) {
+        throw Tasks.interrupted("attends");
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "<tâche>";
+    }
+  }
+
+  static final class Channel {
+    private final BlockingQueue<Object> queue;
+
+    Channel(int capacity) {
+      queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void send(Object value) {
+      try {
+        queue.put(value);
+      } catch (InterruptedException e) {
+        throw Tasks.interrupted("envoie");
+      }
+    }
+
+    Object receive() {
+      try {
+        return queue.take();
+      } catch (InterruptedException e) {
+        throw Tasks.interrupted("recois");
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "<canal>";
+    }
+  }
+}
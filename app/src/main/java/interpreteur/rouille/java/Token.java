@@ -5,6 +5,7 @@ import java.util.Optional;
 class Token {
   final TokenType type;
   final String lexeme;
+  final Symbol symbol;
   final Optional<Object> literal;
   final int line;
   final int column;
@@ -19,7 +20,13 @@ class Token {
 
   public Token(TokenType type, String lexeme, Optional<Object> literal, int line, int column) {
     this.type = type;
-    this.lexeme = lexeme;
+    if (type == TokenType.IDENTIFIER) {
+      this.symbol = Symbol.of(lexeme);
+      this.lexeme = symbol.name;
+    } else {
+      this.symbol = null;
+      this.lexeme = lexeme;
+    }
     this.literal = literal;
     this.line = line;
     this.column = column;
@@ -3,7 +3,8 @@ package interpreteur.rouille.java;
 enum TokenType {
   LEFT_PAREN("\\("), RIGHT_PAREN("\\)"),
   LEFT_BRACE("\\{"), RIGHT_BRACE("}"),
-  COMMA(","), DOT("\\."),
+  LEFT_BRACKET("\\["), RIGHT_BRACKET("\\]"),
+  COMMA(","), DOT("\\."), DOT_DOT("\\.\\."), DOT_DOT_EQUAL("\\.\\.="),
   MINUS("-"), PLUS("\\+"),
   SLASH("/"), STAR("\\*"), PERCENT("%"),
   SEMICOLON(";"), COLON(":"),
@@ -19,14 +20,15 @@ enum TokenType {
 
   IDENTIFIER("([a-zA-Z]|[à-ü]|[À-Ü]|_)([a-zA-Z]|[à-ü]|[À-Ü]|[0-9]|_)*"),
   STRING("[\"]([^\"\\\n]|\\.|\\\n)*[\"]"),
-  INTEGER("-?\\d+"), FLOAT("-?\\d+\\.\\d+"),
+  LABEL("'([a-zA-Z]|[à-ü]|[À-Ü]|_)([a-zA-Z]|[à-ü]|[À-Ü]|[0-9]|_)*"),
+  INTEGER("-?\\d[\\d_]*(?:i8|i16|i32|i64|u8|u16|u32|u64|usize)?"), FLOAT("-?\\d+\\.\\d+"),
 
   STRUCT("structure"), IF("si"), ELSE("sinon"),
   FUN("fonction"), ARROW("->"),
   TRUE("vrai"), FALSE("faux"),
-  FOR("pour"), WHILE("tant"), LOOP("boucle"),
-  BREAK("arrête"),
-  PRINT("affiche!"), RETURN("renvoie"), SELF("soi"),
+  FOR("pour"), IN("dans"), STEP("pas"), WHILE("tant"), LOOP("boucle"),
+  BREAK("arrête"), CONTINUE("continue"),
+  PRINT("affiche!"), RETURN("renvoie"), YIELD("produit"), SELF("soi"),
   LET("soit"), MUT("mutable"),
 
   EOF("(?!.*)"); // unmatchable regex
@@ -38,7 +40,7 @@ enum TokenType {
   }
 
   public static TokenType detect(String token) {
-    var scanner = new Scanner(token);
+    var scanner = new Scanner(token, new Diagnostics());
     return scanner.scanTokens().get(0).type;
   }
 }
@@ -1,11 +1,216 @@
 package interpreteur.rouille.java;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class Type {
+  enum Kind {
+    ENTIER, FLOTTANT, CHAINE, BOOL, UNIT, TUPLE, VEC, DICO, STRUCTURE, FONCTION,
+    // not known before running, every operation on it is checked at runtime
+    INCONNU,
+    // the type of a `boucle` that no `arrête` leaves: it has no value, so
+    // every type accepts it
+    JAMAIS,
+  }
+
+  static final Type ENTIER = new Type(Entier.Largeur.I32, "entier");
+  static final Type FLOTTANT = new Type(Kind.FLOTTANT, "flottant");
+  static final Type CHAINE = new Type(Kind.CHAINE, "Chaine");
+  static final Type BOOL = new Type(Kind.BOOL, "bool");
+  static final Type UNIT = new Type(Kind.UNIT, "()");
+  static final Type VEC = new Type(Kind.VEC, "Vec");
+  static final Type DICO = new Type(Kind.DICO, "Dico");
+  static final Type INCONNU = new Type(Kind.INCONNU, "_");
+  static final Type JAMAIS = new Type(Kind.JAMAIS, "!");
+  private static final Type[] INTEGERS = new Type[Entier.Largeur.values().length];
+
+  static {
+    for (var largeur : Entier.Largeur.values()) {
+      INTEGERS[largeur.ordinal()] = largeur == Entier.Largeur.I32 ? ENTIER : new Type(largeur, largeur.name);
+    }
+  }
+
   boolean reference = false;
   Token name;
+  Kind kind = Kind.INCONNU;
+  // entiers only
+  Entier.Largeur largeur;
+  // tuples only
+  List<Type> elements = List.of();
+  // functions only
+  Stmt.Function function;
+
+  Type() {
+  }
+
+  private Type(Kind kind, String name) {
+    this.kind = kind;
+    this.name = new Token(name);
+  }
+
+  private Type(Entier.Largeur largeur, String name) {
+    this(Kind.ENTIER, name);
+    this.largeur = largeur;
+  }
+
+  static Type integer(Entier.Largeur largeur) {
+    return INTEGERS[largeur.ordinal()];
+  }
+
+  static Type tuple(List<Type> elements) {
+    if (elements.isEmpty())
+      return new Type(Kind.UNIT, "()");
+    var type = new Type();
+    type.kind = Kind.TUPLE;
+    type.elements = elements;
+    return type;
+  }
+
+  static Type structure(Token name) {
+    var type = new Type();
+    type.setByName(name);
+    return type;
+  }
+
+  static Type function(Stmt.Function function) {
+    var type = new Type(Kind.FONCTION, "fonction");
+    type.function = function;
+    return type;
+  }
 
   void setByName(Token name) {
-    // TODO: match name by known types in an enum and use them??
     this.name = name;
+    switch (name.lexeme) {
+      case "entier":
+      case "i8":
+      case "i16":
+      case "i32":
+      case "i64":
+      case "u8":
+      case "u16":
+      case "u32":
+      case "u64":
+      case "usize":
+        kind = Kind.ENTIER;
+        largeur = name.lexeme.equals("entier") ? Entier.Largeur.I32 : Entier.Largeur.of(name.lexeme);
+        break;
+      case "flottant":
+      case "f64":
+        kind = Kind.FLOTTANT;
+        break;
+      case "Chaine":
+      case "String":
+      case "str":
+        kind = Kind.CHAINE;
+        break;
+      case "bool":
+        kind = Kind.BOOL;
+        break;
+      case "Vec":
+        kind = Kind.VEC;
+        break;
+      case "Dico":
+        kind = Kind.DICO;
+        break;
+      default:
+        // checked against the declared structures by the TypeChecker
+        kind = Kind.STRUCTURE;
+        break;
+    }
+  }
+
+  // false for `!` as well: no operation is ever applied to its value
+  boolean isKnown() {
+    return kind != Kind.INCONNU && kind != Kind.JAMAIS;
+  }
+
+  // true unless both types are known and differ
+  boolean accepts(Type other) {
+    if (!isKnown() || !other.isKnown())
+      return true;
+    if (kind != other.kind)
+      return false;
+    switch (kind) {
+      case ENTIER:
+        return largeur == other.largeur;
+      case TUPLE:
+        if (elements.size() != other.elements.size())
+          return false;
+        for (int i = 0; i < elements.size(); i++) {
+          if (!elements.get(i).accepts(other.elements.get(i)))
+            return false;
+        }
+        return true;
+      case STRUCTURE:
+        return name.symbol == other.name.symbol;
+      case FONCTION:
+        return function == null || other.function == null || signature(other.function);
+      default:
+        return true;
+    }
+  }
+
+  // A call of a value of this type is typed from `function`'s parameters and
+  // result, so another function is only accepted if its own match them.
+  private boolean signature(Stmt.Function other) {
+    if (function.types.size() != other.types.size())
+      return false;
+    for (int i = 0; i < function.types.size(); i++) {
+      if (!function.types.get(i).accepts(other.types.get(i)))
+        return false;
+    }
+    if (function.returnType.isEmpty())
+      return true;
+    return other.returnType.isPresent() && function.returnType.get().accepts(other.returnType.get());
+  }
+
+  // Checks a value whose type is only known at runtime against this type.
+  // Only the outer shape is checked: the elements of a tuple are checked by
+  // the operations that read them.
+  boolean admits(Object value) {
+    var type = runtimeClass();
+    if (type == null)
+      return true;
+    if (type == Entier.class)
+      return value instanceof Entier && ((Entier) value).largeur == largeur;
+    return type.isInstance(value);
+  }
+
+  // The class every value of this type has at runtime, or null when values
+  // of this type can't be told apart by their class.
+  Class<?> runtimeClass() {
+    switch (kind) {
+      case ENTIER:
+        return largeur == Entier.Largeur.I32 ? Integer.class
+            : largeur == Entier.Largeur.I64 ? Long.class : Entier.class;
+      case FLOTTANT:
+        return Double.class;
+      case CHAINE:
+        return Chaine.class;
+      case BOOL:
+        return Boolean.class;
+      case UNIT:
+      case TUPLE:
+        return Tuple.class;
+      case VEC:
+        return Vec.class;
+      case DICO:
+        return Dico.class;
+      case STRUCTURE:
+        return Instance.class;
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    var prefix = reference ? "&" : "";
+    if (kind == Kind.TUPLE)
+      return prefix + elements.stream().map(Type::toString).collect(Collectors.joining(", ", "(", ")"));
+    if (kind == Kind.FONCTION && function != null)
+      return prefix + name.lexeme + function.types.stream().map(Type::toString).collect(Collectors.joining(", ", "(", ")"))
+          + function.returnType.map(type -> " -> " + type).orElse("");
+    return prefix + name.lexeme;
   }
 }
@@ -0,0 +1,827 @@
+package interpreteur.rouille.java;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+// Runs after the Resolver. It checks the annotated and inferred types and,
+// where it proves the operand types of a node, marks the node so that the
+// Interpreter runs it without its dynamic checks. A value whose type is only
+// known at runtime (natives, vector elements...) gets the INCONNU type: the
+// operations on it keep their runtime checks, and binding it to an
+// annotated variable adds a guard on that binding. Function parameters and
+// results are checked once at the call boundary by Function, so the body can
+// trust its annotations.
+public class TypeChecker implements Expr.Visitor<Type>, Stmt.Visitor<Void> {
+
+  private static class Binding {
+    final Type type;
+    final boolean mutable;
+    final Stmt.Struct structure;
+
+    Binding(Type type, boolean mutable, Stmt.Struct structure) {
+      this.type = type;
+      this.mutable = mutable;
+      this.structure = structure;
+    }
+  }
+
+  // an `arrête` of a `boucle`, with the type of its value
+  private static class Exit {
+    final Stmt.Break stmt;
+    final Type type;
+
+    Exit(Stmt.Break stmt, Type type) {
+      this.stmt = stmt;
+      this.type = type;
+    }
+
+    boolean adaptable() {
+      return stmt.value.isPresent() && TypeChecker.adaptable(stmt.value.get());
+    }
+  }
+
+  private final Stack<Map<Symbol, Binding>> scopes = new Stack<>();
+  private Stmt.Function currentFunction = null;
+  // the top level functions declared more than once
+  private final Set<Symbol> redeclared = new HashSet<>();
+  // the `arrête` that give a value to each loop around, innermost
+  // last, null for the loops that have no value
+  private List<List<Exit>> loops = new ArrayList<>();
+
+  private final Diagnostics diagnostics;
+
+  TypeChecker(Diagnostics diagnostics) {
+    this.diagnostics = diagnostics;
+    scopes.push(new HashMap<>());
+  }
+
+  void check(List<Stmt> statements) {
+    // Top level functions and structures can be used before their
+    // declaration. A function declared twice has no known signature: the
+    // functions calling it run the last declaration, but the top level
+    // statements before it run an earlier one.
+    var declared = new HashSet<Symbol>();
+    for (var statement : statements) {
+      if (statement instanceof Stmt.Function && !declared.add(((Stmt.Function) statement).name.symbol))
+        redeclared.add(((Stmt.Function) statement).name.symbol);
+    }
+    for (var statement : statements) {
+      if (statement instanceof Stmt.Function) {
+        var function = (Stmt.Function) statement;
+        define(function.name, Type.function(redeclared.contains(function.name.symbol) ? null : function), false);
+      } else if (statement instanceof Stmt.Struct) {
+        var structure = (Stmt.Struct) statement;
+        scopes.peek().put(structure.name.symbol, new Binding(Type.INCONNU, false, structure));
+      }
+    }
+
+    for (var statement : statements) {
+      check(statement);
+    }
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    type(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStmt(Stmt.Function stmt) {
+    if (!(scopes.size() == 1 && redeclared.contains(stmt.name.symbol))
+        && (lookUp(stmt.name) == null || lookUp(stmt.name).type.function != stmt))
+      define(stmt.name, Type.function(stmt), false);
+    for (var type : stmt.types)
+      validate(type);
+    if (stmt.returnType.isPresent())
+      validate(stmt.returnType.get());
+    // its call returns an itérateur, whatever the type of its values
+    if (stmt.suspending != null && stmt.returnType.isPresent())
+      diagnostics.error(stmt.name, "La fonction `" + stmt.name.lexeme + "` donne ses valeurs avec `produit`, "
+          + "elle ne peut pas déclarer de type de retour");
+
+    var enclosingFunction = currentFunction;
+    var enclosingLoops = loops;
+    currentFunction = stmt;
+    loops = new ArrayList<>();
+    beginScope();
+    for (int i = 0; i < stmt.params.size(); i++) {
+      define(stmt.params.get(i), stmt.types.get(i), false);
+    }
+    for (var statement : stmt.body) {
+      check(statement);
+    }
+    endScope();
+    currentFunction = enclosingFunction;
+    loops = enclosingLoops;
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    type(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStmt(Stmt.Return stmt) {
+    var type = type(stmt.value);
+    if (currentFunction != null && currentFunction.returnType.isPresent())
+      type = coerce(stmt.value, type, currentFunction.returnType.get());
+    if (currentFunction != null && currentFunction.returnType.isPresent()
+        && !currentFunction.returnType.get().accepts(type)) {
+      diagnostics.error(stmt.keyword, "La fonction `" + currentFunction.name.lexeme + "` doit renvoyer une valeur de type `"
+          + currentFunction.returnType.get() + "`, pas `" + type + "`");
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitYieldStmt(Stmt.Yield stmt) {
+    type(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    var type = type(stmt.initializer);
+    if (stmt.type.isPresent()) {
+      var declared = stmt.type.get();
+      validate(declared);
+      type = coerce(stmt.initializer, type, declared);
+      if (!declared.accepts(type)) {
+        diagnostics.error(stmt.name, "La variable `" + stmt.name.lexeme + "` est de type `" + declared
+            + "` mais reçoit une valeur de type `" + type + "`");
+      } else if (!type.isKnown() && declared.runtimeClass() != null) {
+        stmt.guard = declared;
+      }
+      type = declared;
+    }
+    define(stmt.name, type, stmt.mutable);
+    return null;
+  }
+
+  @Override
+  public Void visitAssignStmt(Stmt.Assign stmt) {
+    var type = type(stmt.value);
+    var binding = lookUp(stmt.name);
+    if (binding == null)
+      return null;
+
+    type = coerce(stmt.value, type, binding.type);
+    if (!binding.mutable) {
+      diagnostics.error(stmt.name, "La variable immuable `" + stmt.name.lexeme + "` ne peut pas être modifiée");
+    } else if (!binding.type.accepts(type)) {
+      diagnostics.error(stmt.name, "La variable `" + stmt.name.lexeme + "` est de type `" + binding.type
+          + "` mais reçoit une valeur de type `" + type + "`");
+    } else if (!type.isKnown() && binding.type.runtimeClass() != null) {
+      stmt.guard = binding.type;
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitSetIndexStmt(Stmt.SetIndex stmt) {
+    indexed(type(stmt.object), type(stmt.index), stmt.bracket);
+    type(stmt.value);
+    return null;
+  }
+
+  @Override
+  public Void visitSetFieldStmt(Stmt.SetField stmt) {
+    var object = type(stmt.object);
+    var value = type(stmt.value);
+    var field = field(object, stmt.name);
+    if (field != null)
+      value = coerce(stmt.value, value, field);
+    if (field != null && !field.accepts(value)) {
+      diagnostics.error(stmt.name, "Le champ `" + stmt.name.lexeme + "` est de type `" + field
+          + "` mais reçoit une valeur de type `" + value + "`");
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    stmt.proven = condition(type(stmt.condition), stmt.whileToken, "tant");
+    loops.add(null);
+    loopBody(stmt.body, stmt.whileToken, "tant");
+    loops.remove(loops.size() - 1);
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    var type = stmt.value.isPresent() ? type(stmt.value.get()) : Type.UNIT;
+    if (stmt.loops >= 0 && stmt.loops < loops.size()) {
+      var exits = loops.get(loops.size() - 1 - stmt.loops);
+      if (exits != null)
+        exits.add(new Exit(stmt, type));
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitContinueStmt(Stmt.Continue stmt) {
+    return null;
+  }
+
+  @Override
+  public Void visitForStmt(Stmt.For stmt) {
+    var bounds = stmt.step.isPresent()
+        ? List.of(stmt.start, stmt.end, stmt.step.get())
+        : List.of(stmt.start, stmt.end);
+    var types = new ArrayList<Type>();
+    for (var bound : bounds)
+      types.add(type(bound));
+
+    // the bounds and the step have a same width, that the unsuffixed
+    // literals take; i32 when only literals or unknown values give it
+    Type width = null;
+    for (int i = 0; i < bounds.size(); i++) {
+      var type = types.get(i);
+      if (type.isKnown() && type.kind != Type.Kind.ENTIER) {
+        diagnostics.error(stmt.forToken, "Les bornes et le pas d'un `pour` doivent être des entiers, pas `" + type + "`");
+        width = Type.INCONNU;
+      } else if (width == null && type.isKnown() && !adaptable(bounds.get(i))) {
+        width = type;
+      }
+    }
+    if (width == null)
+      width = Type.ENTIER;
+    if (width.isKnown()) {
+      for (int i = 0; i < bounds.size(); i++) {
+        var type = coerce(bounds.get(i), types.get(i), width);
+        if (type.isKnown() && !width.accepts(type))
+          diagnostics.error(stmt.forToken, "Les bornes et le pas d'un `pour` doivent être des entiers de même largeur, "
+              + "pas `" + width + "` et `" + type + "`");
+      }
+    }
+    stmt.largeur = width.isKnown() ? width.largeur : Entier.Largeur.I32;
+
+    beginScope();
+    define(stmt.name, width.isKnown() ? width : Type.ENTIER, false);
+    loops.add(null);
+    loopBody(stmt.body, stmt.forToken, "pour");
+    loops.remove(loops.size() - 1);
+    endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitForEachStmt(Stmt.ForEach stmt) {
+    var type = type(stmt.iterable);
+    if (type.isKnown() && type.kind != Type.Kind.VEC && type.kind != Type.Kind.DICO)
+      diagnostics.error(stmt.forToken, "Un `pour` parcourt un intervalle, un vecteur, un dictionnaire, un itérateur "
+          + "ou des lignes, pas `" + type + "`");
+
+    // the elements of a vecteur aren't typed
+    beginScope();
+    define(stmt.name, Type.INCONNU, false);
+    loops.add(null);
+    loopBody(stmt.body, stmt.forToken, "pour");
+    loops.remove(loops.size() - 1);
+    endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitStructStmt(Stmt.Struct stmt) {
+    scopes.peek().put(stmt.name.symbol, new Binding(Type.INCONNU, false, stmt));
+    for (var type : stmt.types)
+      validate(type);
+    return null;
+  }
+
+  @Override
+  public Type visitBinaryExpr(Expr.Binary expr) {
+    var left = type(expr.left);
+    var right = type(expr.right);
+    var operator = expr.operator;
+    if (left.kind == Type.Kind.ENTIER && right.kind == Type.Kind.ENTIER && left.largeur != right.largeur) {
+      // an unsuffixed literal takes the width of the other operand
+      right = coerce(expr.right, right, left);
+      left = coerce(expr.left, left, right);
+    }
+    var bothKnown = left.isKnown() && right.isKnown();
+
+    switch (operator.type) {
+      case MINUS:
+      case SLASH:
+      case STAR:
+      case PERCENT:
+      case PLUS:
+        if (bothKnown) {
+          if (isNumber(left) && left.accepts(right)) {
+            expr.operands = unboxed(left);
+            return base(left);
+          }
+          if (operator.type == TokenType.PLUS && left.kind == Type.Kind.CHAINE && right.kind == Type.Kind.CHAINE)
+            return Type.CHAINE;
+          return mismatch(operator, left, right);
+        }
+        // if it doesn't fail at runtime, the result has the type of the known
+        // operand, unless it is a literal that takes the width of the other one
+        var known = left.isKnown() ? left : right;
+        if (adaptable(left.isKnown() ? expr.left : expr.right))
+          return Type.INCONNU;
+        if (isNumber(known) || operator.type == TokenType.PLUS && known.kind == Type.Kind.CHAINE)
+          return base(known);
+        if (known.isKnown())
+          return mismatch(operator, left, right);
+        return Type.INCONNU;
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        if (bothKnown) {
+          if (isNumber(left) && left.accepts(right))
+            expr.operands = unboxed(left);
+          else
+            mismatch(operator, left, right);
+        } else if ((left.isKnown() && !isNumber(left)) || (right.isKnown() && !isNumber(right))) {
+          mismatch(operator, left, right);
+        }
+        return Type.BOOL;
+      case EQUAL_EQUAL:
+      case BANG_EQUAL:
+        if (bothKnown) {
+          if (!left.accepts(right))
+            mismatch(operator, left, right);
+          else if (isNumber(left))
+            expr.operands = unboxed(left);
+        }
+        return Type.BOOL;
+      case AMPERSAND:
+      case BITWISE_OR:
+        if (bothKnown && left.kind == Type.Kind.ENTIER && left.accepts(right)) {
+          expr.operands = unboxed(left);
+          return base(left);
+        }
+        if ((left.isKnown() && left.kind != Type.Kind.ENTIER) || (right.isKnown() && right.kind != Type.Kind.ENTIER)
+            || bothKnown)
+          return mismatch(operator, left, right);
+        if (!left.isKnown() && !right.isKnown() || adaptable(left.isKnown() ? expr.left : expr.right))
+          return Type.INCONNU;
+        return base(left.isKnown() ? left : right);
+      default:
+        return Type.INCONNU;
+    }
+  }
+
+  @Override
+  public Type visitCallExpr(Expr.Call expr) {
+    var callee = type(expr.callee);
+    var arguments = new ArrayList<Type>();
+    for (var argument : expr.arguments) {
+      arguments.add(type(argument));
+    }
+    if (expr.intrinsic != null)
+      return intrinsic(expr, arguments);
+
+    if (callee.isKnown() && callee.kind != Type.Kind.FONCTION) {
+      diagnostics.error(expr.paren, "Seules les fonctions peuvent être appelées, pas `" + callee + "`");
+      return Type.INCONNU;
+    }
+    if (callee.function == null)
+      return Type.INCONNU;
+
+    var function = callee.function;
+    if (arguments.size() != function.params.size()) {
+      diagnostics.error(expr.paren, "Mauvais nombre d'arguments passé à `" + function.name.lexeme + "` ("
+          + function.params.size() + " attendus mais " + arguments.size() + " reçus)");
+      return Type.INCONNU;
+    }
+    for (int i = 0; i < arguments.size(); i++) {
+      arguments.set(i, coerce(expr.arguments.get(i), arguments.get(i), function.types.get(i)));
+      if (!function.types.get(i).accepts(arguments.get(i))) {
+        diagnostics.error(expr.paren, "Le paramètre `" + function.params.get(i).lexeme + "` de `" + function.name.lexeme
+            + "` est de type `" + function.types.get(i) + "`, pas `" + arguments.get(i) + "`");
+      }
+    }
+    return function.returnType.orElse(Type.INCONNU);
+  }
+
+  // The result of a math intrinsic (see Maths). Its operands are marked
+  // like those of an arithmetic operator: `abs`, `min` and `max` take any
+  // number, the others take flottants.
+  private Type intrinsic(Expr.Call expr, List<Type> arguments) {
+    var intrinsic = expr.intrinsic;
+    if (!intrinsic.numeric()) {
+      var proven = true;
+      for (var argument : arguments) {
+        if (argument.isKnown() && argument.kind != Type.Kind.FLOTTANT)
+          diagnostics.error(expr.paren, "Les paramètres de `" + intrinsic.name + "` sont des flottants, pas `"
+              + argument + "`");
+        proven &= argument.kind == Type.Kind.FLOTTANT;
+      }
+      if (proven)
+        expr.operands = Type.Kind.FLOTTANT;
+      return Type.FLOTTANT;
+    }
+
+    if (intrinsic == Maths.Intrinsic.ABS) {
+      var type = arguments.get(0);
+      if (!type.isKnown())
+        return Type.INCONNU;
+      if (!isNumber(type) || type.kind == Type.Kind.ENTIER && !type.largeur.signed) {
+        diagnostics.error(expr.paren, "`abs` ne s'applique pas à `" + type + "`");
+        return Type.INCONNU;
+      }
+      expr.operands = unboxed(type);
+      return base(type);
+    }
+
+    var left = arguments.get(0);
+    var right = arguments.get(1);
+    if (left.kind == Type.Kind.ENTIER && right.kind == Type.Kind.ENTIER && left.largeur != right.largeur) {
+      right = coerce(expr.arguments.get(1), right, left);
+      left = coerce(expr.arguments.get(0), left, right);
+    }
+    if (left.isKnown() && right.isKnown()) {
+      if (isNumber(left) && left.accepts(right)) {
+        expr.operands = unboxed(left);
+        return base(left);
+      }
+      diagnostics.error(expr.paren, "Les paramètres de `" + intrinsic.name
+          + "` doivent être des nombres du même type, pas `" + left + "` et `" + right + "`");
+      return Type.INCONNU;
+    }
+    var known = left.isKnown() ? left : right;
+    if (!known.isKnown() || adaptable(left.isKnown() ? expr.arguments.get(0) : expr.arguments.get(1)))
+      return Type.INCONNU;
+    if (!isNumber(known)) {
+      diagnostics.error(expr.paren, "Les paramètres de `" + intrinsic.name + "` doivent être des nombres, pas `"
+          + known + "`");
+      return Type.INCONNU;
+    }
+    return base(known);
+  }
+
+  @Override
+  public Type visitGroupingExpr(Expr.Grouping expr) {
+    return type(expr.expression);
+  }
+
+  @Override
+  public Type visitLiteralExpr(Expr.Literal expr) {
+    if (Entier.Largeur.of(expr.value) != null)
+      return Type.integer(Entier.Largeur.of(expr.value));
+    if (expr.value instanceof Double)
+      return Type.FLOTTANT;
+    if (expr.value instanceof Chaine)
+      return Type.CHAINE;
+    if (expr.value instanceof Boolean)
+      return Type.BOOL;
+    return Type.INCONNU;
+  }
+
+  @Override
+  public Type visitTupleExpr(Expr.Tuple expr) {
+    var elements = new ArrayList<Type>();
+    for (var e : expr.expressions) {
+      elements.add(type(e));
+    }
+    return elements.isEmpty() ? Type.UNIT : Type.tuple(elements);
+  }
+
+  @Override
+  public Type visitLogicalExpr(Expr.Logical expr) {
+    var left = condition(type(expr.left), expr.operator, expr.operator.lexeme);
+    var right = condition(type(expr.right), expr.operator, expr.operator.lexeme);
+    expr.proven = left && right;
+    return Type.BOOL;
+  }
+
+  @Override
+  public Type visitUnaryExpr(Expr.Unary expr) {
+    var right = type(expr.right);
+    if (!right.isKnown())
+      return Type.INCONNU;
+
+    var valid = expr.operator.type == TokenType.MINUS
+        ? right.kind == Type.Kind.FLOTTANT || right.kind == Type.Kind.ENTIER && right.largeur.signed
+        : right.kind == Type.Kind.BOOL || right.kind == Type.Kind.ENTIER;
+    if (!valid) {
+      diagnostics.error(expr.operator, "L'opérateur unaire `" + expr.operator.lexeme + "` ne s'applique pas à `" + right + "`");
+      return Type.INCONNU;
+    }
+    expr.operand = right.kind == Type.Kind.BOOL ? Type.Kind.BOOL : unboxed(right);
+    return base(right);
+  }
+
+  @Override
+  public Type visitVariableExpr(Expr.Variable expr) {
+    var binding = lookUp(expr.name);
+    return binding == null ? Type.INCONNU : binding.type;
+  }
+
+  @Override
+  public Type visitBlockExpr(Expr.Block expr) {
+    beginScope();
+    for (var statement : expr.statements) {
+      check(statement);
+    }
+    var type = expr.returnedValue.isPresent() ? type(expr.returnedValue.get()) : Type.UNIT;
+    endScope();
+    return type;
+  }
+
+  @Override
+  public Type visitIfExpr(Expr.If expr) {
+    expr.proven = condition(type(expr.condition), expr.ifToken, "si");
+    var thenType = type(expr.thenBranch);
+    if (expr.elseBranch.isEmpty())
+      return thenType.kind == Type.Kind.UNIT || thenType.kind == Type.Kind.JAMAIS ? Type.UNIT : Type.INCONNU;
+
+    var elseType = type(expr.elseBranch.get());
+    // a branch that leaves the `si` has no value
+    if (diverges(expr.elseBranch.get()) || elseType.kind == Type.Kind.JAMAIS)
+      return thenType;
+    if (diverges(expr.thenBranch) || thenType.kind == Type.Kind.JAMAIS)
+      return elseType;
+    thenType = coerce(expr.thenBranch, thenType, elseType);
+    elseType = coerce(expr.elseBranch.get(), elseType, thenType);
+    if (thenType.isKnown() && elseType.isKnown() && thenType.accepts(elseType))
+      return thenType;
+    return Type.INCONNU;
+  }
+
+  // The type of all the values of its `arrête`, that the unsuffixed literals
+  // take. `!` if it has none: the loop is then only left by a `renvoie`.
+  @Override
+  public Type visitLoopExpr(Expr.Loop expr) {
+    var exits = new ArrayList<Exit>();
+    loops.add(exits);
+    loopBody(expr.body, expr.keyword, "boucle");
+    loops.remove(loops.size() - 1);
+
+    Type type = null;
+    for (var exit : exits) {
+      if (type == null && exit.type.isKnown() && !exit.adaptable())
+        type = exit.type;
+    }
+    for (var exit : exits) {
+      if (type == null && exit.type.isKnown())
+        type = exit.type;
+    }
+    if (type == null)
+      return exits.stream().allMatch(exit -> exit.type.kind == Type.Kind.JAMAIS) ? Type.JAMAIS : Type.INCONNU;
+
+    var known = true;
+    for (var exit : exits) {
+      var value = exit.stmt.value.isPresent() ? coerce(exit.stmt.value.get(), exit.type, type) : exit.type;
+      if (!type.accepts(value)) {
+        diagnostics.error(exit.stmt.keyword, "Les `arrête` d'une `boucle` doivent donner des valeurs de même type, pas `"
+            + type + "` et `" + value + "`");
+        return Type.INCONNU;
+      }
+      known &= value.isKnown() || value.kind == Type.Kind.JAMAIS;
+    }
+    return known ? type : Type.INCONNU;
+  }
+
+  private void loopBody(Expr.Block body, Token token, String construct) {
+    var type = type(body);
+    if (type.isKnown() && type.kind != Type.Kind.UNIT) {
+      diagnostics.error(token, "Le bloc d'une boucle `" + construct + "` ne peut pas avoir de valeur, il est de type `"
+          + type + "`");
+    }
+  }
+
+  // true if the block always ends with a `renvoie`, an `arrête` or a
+  // `continue`
+  private static boolean diverges(Expr expr) {
+    if (!(expr instanceof Expr.Block))
+      return false;
+    var block = (Expr.Block) expr;
+    if (block.returnedValue.isPresent() || block.statements.isEmpty())
+      return false;
+    var last = block.statements.get(block.statements.size() - 1);
+    return last instanceof Stmt.Return || last instanceof Stmt.Break || last instanceof Stmt.Continue;
+  }
+
+  @Override
+  public Type visitIndexExpr(Expr.Index expr) {
+    indexed(type(expr.object), type(expr.index), expr.bracket);
+    return Type.INCONNU;
+  }
+
+  @Override
+  public Type visitArrayExpr(Expr.Array expr) {
+    for (var e : expr.elements) {
+      type(e);
+    }
+    return Type.VEC;
+  }
+
+  @Override
+  public Type visitRepeatExpr(Expr.Repeat expr) {
+    type(expr.value);
+    var count = type(expr.count);
+    if (count.isKnown() && count.kind != Type.Kind.ENTIER)
+      diagnostics.error(expr.bracket, "Le nombre d'éléments d'un vecteur doit être un entier, pas `" + count + "`");
+    return Type.VEC;
+  }
+
+  // Field values are not checked when they are stored, so a field read
+  // stays INCONNU even when the field is annotated.
+  @Override
+  public Type visitGetExpr(Expr.Get expr) {
+    field(type(expr.object), expr.name);
+    return Type.INCONNU;
+  }
+
+  @Override
+  public Type visitConstructExpr(Expr.Construct expr) {
+    var values = new ArrayList<Type>();
+    for (var value : expr.values) {
+      values.add(type(value));
+    }
+
+    var binding = lookUp(expr.structure.name);
+    if (binding == null || binding.structure == null)
+      return Type.INCONNU;
+    var structure = binding.structure;
+    for (int i = 0; i < expr.fields.size(); i++) {
+      var name = expr.fields.get(i);
+      var index = fieldIndex(structure, name);
+      if (index < 0) {
+        diagnostics.error(name, "La structure `" + structure.name.lexeme + "` n'a pas de champ `" + name.lexeme + "`");
+      } else if (!structure.types.get(index).accepts(coerce(expr.values.get(i), values.get(i),
+          structure.types.get(index)))) {
+        diagnostics.error(name, "Le champ `" + name.lexeme + "` est de type `" + structure.types.get(index)
+            + "` mais reçoit une valeur de type `" + values.get(i) + "`");
+      }
+    }
+    return Type.structure(structure.name);
+  }
+
+  private boolean condition(Type type, Token token, String construct) {
+    if (!type.isKnown())
+      return false;
+    if (type.kind != Type.Kind.BOOL) {
+      diagnostics.error(token, "La condition d'un `" + construct + "` doit être un booléen, pas `" + type + "`");
+      return false;
+    }
+    return true;
+  }
+
+  private void indexed(Type object, Type index, Token bracket) {
+    if (object.isKnown() && object.kind != Type.Kind.VEC)
+      diagnostics.error(bracket, "Seuls les vecteurs peuvent être indexés, pas `" + object + "`");
+    if (index.isKnown() && index.kind != Type.Kind.ENTIER)
+      diagnostics.error(bracket, "L'index d'un vecteur doit être un entier, pas `" + index + "`");
+  }
+
+  // the declared type of the field, or null if it can't be known
+  private Type field(Type object, Token name) {
+    if (!object.isKnown())
+      return null;
+    if (object.kind != Type.Kind.STRUCTURE) {
+      diagnostics.error(name, "Seules les structures ont des champs, pas `" + object + "`");
+      return null;
+    }
+    var binding = lookUp(object.name);
+    if (binding == null || binding.structure == null)
+      return null;
+    var index = fieldIndex(binding.structure, name);
+    if (index < 0) {
+      diagnostics.error(name, "La structure `" + object.name.lexeme + "` n'a pas de champ `" + name.lexeme + "`");
+      return null;
+    }
+    return binding.structure.types.get(index);
+  }
+
+  private static int fieldIndex(Stmt.Struct structure, Token name) {
+    for (int i = 0; i < structure.fields.size(); i++) {
+      if (structure.fields.get(i).symbol == name.symbol)
+        return i;
+    }
+    return -1;
+  }
+
+  private Type mismatch(Token operator, Type left, Type right) {
+    diagnostics.error(operator, "L'opérateur `" + operator.lexeme + "` ne s'applique pas à `" + left + "` et `" + right + "`");
+    return Type.INCONNU;
+  }
+
+  // The kind the Interpreter can compute on unboxed values without checking
+  // them, null for the widths it only handles through Entier.
+  private static Type.Kind unboxed(Type type) {
+    if (type.kind == Type.Kind.FLOTTANT || type.kind == Type.Kind.ENTIER && type.largeur == Entier.Largeur.I32)
+      return type.kind;
+    return null;
+  }
+
+  // An unsuffixed integer literal takes the width its context expects, like
+  // in rust. Only the literals themselves are adapted (through groupings,
+  // blocks and `si`), not the variables they were stored in.
+  private Type coerce(Expr expr, Type type, Type expected) {
+    if (type.kind != Type.Kind.ENTIER || expected.kind != Type.Kind.ENTIER || type.largeur == expected.largeur)
+      return type;
+    var literals = new ArrayList<Expr.Literal>();
+    if (!untypedLiterals(expr, literals))
+      return type;
+    var largeur = expected.largeur;
+    for (var literal : literals) {
+      var value = Entier.bits(literal.value);
+      if (!largeur.contains(value) || !largeur.signed && value < 0)
+        return type;
+    }
+    for (var literal : literals) {
+      literal.value = largeur.box(Entier.bits(literal.value));
+      literal.untyped = false;
+    }
+    return Type.integer(largeur);
+  }
+
+  private static boolean adaptable(Expr expr) {
+    return untypedLiterals(expr, new ArrayList<>());
+  }
+
+  // false if some value of the expression is not an unsuffixed literal
+  private static boolean untypedLiterals(Expr expr, List<Expr.Literal> literals) {
+    if (expr instanceof Expr.Literal && ((Expr.Literal) expr).untyped) {
+      literals.add((Expr.Literal) expr);
+      return true;
+    }
+    if (expr instanceof Expr.Grouping)
+      return untypedLiterals(((Expr.Grouping) expr).expression, literals);
+    if (expr instanceof Expr.Block) {
+      var block = (Expr.Block) expr;
+      return block.returnedValue.isPresent() && untypedLiterals(block.returnedValue.get(), literals);
+    }
+    if (expr instanceof Expr.If) {
+      var branch = (Expr.If) expr;
+      return branch.elseBranch.isPresent() && untypedLiterals(branch.thenBranch, literals)
+          && untypedLiterals(branch.elseBranch.get(), literals);
+    }
+    return false;
+  }
+
+  private static boolean isNumber(Type type) {
+    return type.kind == Type.Kind.ENTIER || type.kind == Type.Kind.FLOTTANT;
+  }
+
+  // the type of the value, without the reference
+  private static Type base(Type type) {
+    switch (type.kind) {
+      case ENTIER:
+        return Type.integer(type.largeur);
+      case FLOTTANT:
+        return Type.FLOTTANT;
+      case CHAINE:
+        return Type.CHAINE;
+      case BOOL:
+        return Type.BOOL;
+      default:
+        return type;
+    }
+  }
+
+  private void validate(Type type) {
+    if (type.kind == Type.Kind.TUPLE) {
+      for (var element : type.elements)
+        validate(element);
+    } else if (type.kind == Type.Kind.STRUCTURE) {
+      var binding = lookUp(type.name);
+      if (binding == null || binding.structure == null)
+        diagnostics.error(type.name, "Type inconnu `" + type.name.lexeme + "`");
+    }
+  }
+
+  private void beginScope() {
+    scopes.push(new HashMap<>());
+  }
+
+  private void endScope() {
+    scopes.pop();
+  }
+
+  private void define(Token name, Type type, boolean mutable) {
+    scopes.peek().put(name.symbol, new Binding(type, mutable, null));
+  }
+
+  private Binding lookUp(Token name) {
+    for (int i = scopes.size() - 1; i >= 0; i--) {
+      var binding = scopes.get(i).get(name.symbol);
+      if (binding != null)
+        return binding;
+    }
+    return null;
+  }
+
+  private Type type(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private void check(Stmt stmt) {
+    stmt.accept(this);
+  }
+}
@@ -0,0 +1,366 @@
+package interpreteur.rouille.java;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Growable vector. The backing array is chosen by the first element stored
+// (int[] for entiers, double[] for flottants, Object[] otherwise) and is
+// promoted to Object[] the first time a value of another type is stored.
+// A slice (`tranche`) is a view on the vector it was taken from: it reads
+// the owner's current storage, so it sees writes and promotions.
+class Vec {
+  private static final int EMPTY = 0, INTS = 1, DOUBLES = 2, OBJECTS = 3;
+
+  private final Vec owner;
+  private final int offset;
+  private int length;
+
+  // only used on owners
+  private int kind = EMPTY;
+  private int[] ints;
+  private double[] doubles;
+  private Object[] objects;
+
+  Vec() {
+    owner = this;
+    offset = 0;
+    length = 0;
+  }
+
+  private Vec(Vec owner, int offset, int length) {
+    this.owner = owner;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  static Vec filled(Object value, int count) {
+    var vec = new Vec();
+    vec.reserve(value, count);
+    vec.length = count;
+    vec.fill(value);
+    return vec;
+  }
+
+  // Vectors over the first `length` values of an array, which they own from
+  // then on: the columns built by `lis_csv`.
+  static Vec of(int[] values, int length) {
+    var vec = new Vec();
+    vec.kind = INTS;
+    vec.ints = values;
+    vec.length = length;
+    return vec;
+  }
+
+  static Vec of(double[] values, int length) {
+    var vec = new Vec();
+    vec.kind = DOUBLES;
+    vec.doubles = values;
+    vec.length = length;
+    return vec;
+  }
+
+  static Vec of(Object[] values, int length) {
+    var vec = new Vec();
+    vec.kind = OBJECTS;
+    vec.objects = values;
+    vec.length = length;
+    return vec;
+  }
+
+  int length() {
+    return length;
+  }
+
+  // the values of `pour x dans vecteur`, up to the length it has when the
+  // loop starts
+  Iterator<Object> iterator() {
+    var end = length;
+    return new Iterator<>() {
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index < end;
+      }
+
+      @Override
+      public Object next() {
+        if (index >= end)
+          throw new NoSuchElementException();
+        return get(index++);
+      }
+    };
+  }
+
+  boolean isSlice() {
+    return owner != this;
+  }
+
+  Object get(int index) {
+    var i = offset + checkIndex(index);
+    switch (owner.kind) {
+      case INTS:
+        return owner.ints[i];
+      case DOUBLES:
+        return owner.doubles[i];
+      default:
+        return owner.objects[i];
+    }
+  }
+
+  void set(int index, Object value) {
+    var i = offset + checkIndex(index);
+    owner.store(i, value);
+  }
+
+  void push(Object value) {
+    if (isSlice())
+      throw new RuntimeError(null, "Impossible d'ajouter un élément à une tranche.");
+    reserve(value, length + 1);
+    store(length++, value);
+  }
+
+  // push(value) without boxing it, when the storage holds such values
+  void pushInt(int value) {
+    if (kind == INTS && length < ints.length)
+      ints[length++] = value;
+    else
+      push(value);
+  }
+
+  void pushDouble(double value) {
+    if (kind == DOUBLES && length < doubles.length)
+      doubles[length++] = value;
+    else
+      push(value);
+  }
+
+  // Pushes the values to the sink of an iterator, unboxed when they are
+  // stored unboxed, up to the length the vector has at the start.
+  void each(Interpreter interpreter, Iterateur.Sink sink) {
+    var end = length;
+    for (int i = 0; i < end; i++) {
+      interpreter.tick(null);
+      var at = offset + i;
+      boolean more;
+      switch (owner.kind) {
+        case INTS:
+          more = sink.acceptInt(owner.ints[at]);
+          break;
+        case DOUBLES:
+          more = sink.acceptDouble(owner.doubles[at]);
+          break;
+        default:
+          more = sink.accept(owner.objects[at]);
+          break;
+      }
+      if (!more)
+        return;
+    }
+  }
+
+  Vec slice(int from, int to) {
+    if (from < 0 || to > length || from > to)
+      throw new RuntimeError(null,
+          "La tranche " + from + ".." + to + " dépasse la longueur du vecteur (" + length + ").");
+    return new Vec(owner, offset + from, to - from);
+  }
+
+  void fill(Object value) {
+    if (length == 0)
+      return;
+    owner.adapt(value);
+    switch (owner.kind) {
+      case INTS:
+        Arrays.fill(owner.ints, offset, offset + length, (int) value);
+        break;
+      case DOUBLES:
+        Arrays.fill(owner.doubles, offset, offset + length, (double) value);
+        break;
+      default:
+        Arrays.fill(owner.objects, offset, offset + length, value);
+        break;
+    }
+  }
+
+  void copyFrom(Vec source) {
+    if (source.length != length)
+      throw new RuntimeError(null, "Les deux vecteurs de `copie` doivent avoir la même longueur ("
+          + source.length + " et " + length + ").");
+    if (length == 0)
+      return;
+
+    if (source.owner.kind == owner.kind) {
+      switch (owner.kind) {
+        case INTS:
+          System.arraycopy(source.owner.ints, source.offset, owner.ints, offset, length);
+          return;
+        case DOUBLES:
+          System.arraycopy(source.owner.doubles, source.offset, owner.doubles, offset, length);
+          return;
+        default:
+          System.arraycopy(source.owner.objects, source.offset, owner.objects, offset, length);
+          return;
+      }
+    }
+
+    // copy through a snapshot, the two vectors may share their storage
+    var values = new Object[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = source.get(i);
+    }
+    for (int i = 0; i < length; i++) {
+      set(i, values[i]);
+    }
+  }
+
+  private int checkIndex(int index) {
+    if (index < 0 || index >= length)
+      throw new RuntimeError(null,
+          "L'index " + index + " est hors des limites du vecteur (longueur " + length + ").");
+    return index;
+  }
+
+  private void store(int i, Object value) {
+    adapt(value);
+    switch (kind) {
+      case INTS:
+        ints[i] = (int) value;
+        break;
+      case DOUBLES:
+        doubles[i] = (double) value;
+        break;
+      default:
+        objects[i] = value;
+        break;
+    }
+  }
+
+  // Makes the storage able to hold `value`, promoting it to Object[] if needed.
+  private void adapt(Object value) {
+    if (kind == INTS && value instanceof Integer || kind == DOUBLES && value instanceof Double
+        || kind == OBJECTS)
+      return;
+
+    if (kind == EMPTY) {
+      reserve(value, 0);
+      return;
+    }
+
+    var promoted = new Object[capacity()];
+    for (int i = 0; i < promoted.length; i++) {
+      promoted[i] = kind == INTS ? (Object) ints[i] : (Object) doubles[i];
+    }
+    ints = null;
+    doubles = null;
+    objects = promoted;
+    kind = OBJECTS;
+  }
+
+  private void reserve(Object value, int needed) {
+    if (kind == EMPTY) {
+      var capacity = Math.max(needed, 8);
+      if (value instanceof Integer) {
+        kind = INTS;
+        ints = new int[capacity];
+      } else if (value instanceof Double) {
+        kind = DOUBLES;
+        doubles = new double[capacity];
+      } else {
+        kind = OBJECTS;
+        objects = new Object[capacity];
+      }
+      return;
+    }
+
+    if (needed <= capacity())
+      return;
+    var capacity = Math.max(needed, capacity() + (capacity() >> 1));
+    switch (kind) {
+      case INTS:
+        ints = Arrays.copyOf(ints, capacity);
+        break;
+      case DOUBLES:
+        doubles = Arrays.copyOf(doubles, capacity);
+        break;
+      default:
+        objects = Arrays.copyOf(objects, capacity);
+        break;
+    }
+  }
+
+  private int capacity() {
+    switch (kind) {
+      case INTS:
+        return ints.length;
+      case DOUBLES:
+        return doubles.length;
+      case OBJECTS:
+        return objects.length;
+      default:
+        return 0;
+    }
+  }
+
+  @Override
+  public String toString() {
+    var builder = new StringBuilder("[");
+    for (int i = 0; i < length; i++) {
+      if (i > 0)
+        builder.append(", ");
+      builder.append(get(i));
+    }
+    return builder.append("]").toString();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Vec))
+      return false;
+    var other = (Vec) obj;
+    if (length != other.length)
+      return false;
+    for (int i = 0; i < length; i++) {
+      if (!get(i).equals(other.get(i)))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + get(i).hashCode();
+    }
+    return hash;
+  }
+
+  @Native("pousse")
+  static void pousse(Interpreter interpreter, Vec vecteur, Object valeur) {
+    interpreter.allocate(null, 1);
+    vecteur.push(valeur);
+  }
+
+  @Native("longueur")
+  static int longueur(Vec vecteur) {
+    return vecteur.length();
+  }
+
+  // a view, which copies no element: the allocation budget doesn't see it
+  @Native(value = "tranche", parametres = { "vecteur", "debut", "fin" })
+  static Vec tranche(Vec vecteur, int debut, int fin) {
+    return vecteur.slice(debut, fin);
+  }
+
+  @Native("remplis")
+  static void remplis(Vec vecteur, Object valeur) {
+    vecteur.fill(valeur);
+  }
+
+  @Native("copie")
+  static void copie(Vec source, Vec destination) {
+    destination.copyFrom(source);
+  }
+}
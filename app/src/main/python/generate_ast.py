@@ -1,4 +1,5 @@
 import os
+import re
 
 OUTPUT_DIR = os.path.join(os.path.dirname(__file__),
                           '..', 'java/interpreteur/rouille/java/')
@@ -22,9 +23,10 @@ package interpreteur.rouille.java;
 import java.util.List;
 import java.util.Optional;
 
-abstract class {basename} {{''')
+abstract sealed class {basename} {{''')
 
     define_visitor(file, basename, types)
+    define_kinds(file, basename, types)
 
     for tipe in types:
         classname, fields = tipe.split(':')
@@ -40,12 +42,26 @@ abstract class {basename} {{''')
 
 
 def define_type(file, basename: str, classname: str, fields: str):
+    # fields after a `|` are not set by the constructor, the later passes
+    # and the interpreter fill them in
+    annotations = []
+    if '|' in fields:
+        fields, annotations = fields.split('|')
+        fields = fields.strip()
+        annotations = annotations.strip().split(", ")
+
+    # a constructor field marked `mutable` can be rewritten by the later
+    # passes (the TypeChecker gives its width to an integer literal)
+    fields = fields.split(", ")
+    mutable = [field.startswith('mutable ') for field in fields]
+    fields = [field.removeprefix('mutable ') for field in fields]
+
     file.write(f'''
-  static class {classname} extends {basename} {{
-    {classname}({fields}) {{''')
+  static final class {classname} extends {basename} {{
+    {classname}({", ".join(fields)}) {{
+      super({kind_name(classname)});''')
 
     # constructor boiler plate 🥱
-    fields = fields.split(", ")
     for field in fields:
         name = field.split()[1]
         file.write(f'''
@@ -63,15 +79,42 @@ def define_type(file, basename: str, classname: str, fields: str):
     ''')
 
     # fields
-    for field in fields:
+    for field, is_mutable in zip(fields, mutable):
+        modifier = '' if is_mutable else 'final '
+        file.write(f'''
+    {modifier}{field};''')
+    for annotation in annotations:
         file.write(f'''
-    final {field};''')
+    {annotation};''')
 
     file.write('''
   }
 ''')
 
 
+def kind_name(classname: str) -> str:
+    return re.sub(r'(?<!^)(?=[A-Z])', '_', classname).upper()
+
+
+# Every node carries the int tag of its class, so that the interpreter can
+# dispatch with a switch instead of the double dispatch of accept()
+def define_kinds(file, basename: str, types: [str]):
+    file.write('\n')
+    for i, tipe in enumerate(types):
+        classname = tipe.split(':')[0].strip()
+        file.write(f'''
+  static final int {kind_name(classname)} = {i};''')
+
+    file.write(f'''
+
+  final int kind;
+
+  private {basename}(int kind) {{
+    this.kind = kind;
+  }}
+''')
+
+
 def define_visitor(file, basename: str, types: [str]):
     file.write('''
   interface Visitor<R> {\n''')
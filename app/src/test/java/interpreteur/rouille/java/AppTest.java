@@ -3,5 +3,43 @@ package interpreteur.rouille.java;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
-class AppTest {
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AppTest {
+  @Test
+  public void runGivesTheArguments() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() { affiche!(arguments); affiche!(longueur(arguments)); }");
+    var out = new ArrayList<String>();
+    assertEquals(0, App.run(script, List.of("a", "b c"), out::add, out::add));
+    assertEquals(List.of("[a, b c]", "2"), out);
+  }
+
+  @Test
+  public void runStopsOnRuntimeError() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() { soit v = [1, 2]; affiche!(1); affiche!(v[5]); }");
+    var out = new ArrayList<String>();
+    var err = new ArrayList<String>();
+    assertEquals(70, App.run(script, List.of(), out::add, err::add));
+    assertEquals(List.of("1", "L'index 5 est hors des limites du vecteur (longueur 2).\n[line 0 column 56]"), out);
+    assertTrue(err.isEmpty());
+  }
+
+  @Test
+  public void buildRejectsScriptThatDoesNotCompile() throws Exception {
+    var directory = Files.createTempDirectory("app");
+    var script = directory.resolve("faux.rouille");
+    Files.write(script, "fonction principale() { soit x: entier = \"a\"; }".getBytes(StandardCharsets.UTF_8));
+    var jar = directory.resolve("faux.jar");
+    var err = new ArrayList<String>();
+
+    assertEquals(65, Build.build(script.toString(), jar.toString(), err::add, err::add));
+    assertEquals(List.of("[line 0] Error at `x` : La variable `x` est de type `entier` mais reçoit une valeur de type "
+        + "`Chaine`"), err);
+    assertFalse(Files.exists(jar));
+    Files.delete(script);
+    Files.delete(directory);
+  }
 }
@@ -0,0 +1,82 @@
+package interpreteur.rouille.java;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.util.Map;
+
+public class BudgetTest {
+  private static final String ENDLESS = "fonction principale() { soit mutable i = 0; tant i >= 0 { i = (i + 1) % 1000; } }";
+
+  // the message the execution stopped with
+  private static String stop(String source, Budget budget) throws RouilleException {
+    var script = RouilleEngine.compile(source);
+    var e = assertThrows(RouilleException.class, () -> script.execute(Map.of(), line -> {}, budget));
+    return e.diagnostics().get(0).message();
+  }
+
+  @Test
+  public void fuelCountsLoopsAndCalls() throws Exception {
+    assertEquals("Le budget d'exécution (10000 boucles et appels) est épuisé.",
+        stop(ENDLESS, Budget.UNLIMITED.withFuel(10_000)));
+    assertEquals("Le budget d'exécution (100 boucles et appels) est épuisé.",
+        stop("fonction f(n: entier) -> entier { si n == 0 { 0 } sinon { f(n - 1) } }\n"
+            + "fonction principale() { f(200); }", Budget.UNLIMITED.withFuel(100)));
+  }
+
+  @Test
+  public void fuelLeftRunsToTheEnd() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() -> entier { soit mutable s = 0; "
+        + "pour i dans 0..100 { s += i; } s }");
+    assertEquals(4950, script.execute(Map.of(), line -> {}, Budget.UNLIMITED.withFuel(200)));
+  }
+
+  @Test
+  public void deadline() throws Exception {
+    var start = System.nanoTime();
+    assertEquals("Le délai d'exécution (100 ms) est dépassé.",
+        stop(ENDLESS, Budget.UNLIMITED.withDeadline(Duration.ofMillis(100))));
+    assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+  }
+
+  @Test
+  public void maxDepth() throws Exception {
+    assertEquals("La profondeur d'appel maximale (10) est dépassée.",
+        stop("fonction f(n: entier) -> entier { si n == 0 { 0 } sinon { f(n - 1) } }\n"
+            + "fonction principale() { f(50); }", Budget.UNLIMITED.withMaxDepth(10)));
+  }
+
+  @Test
+  public void allocations() throws Exception {
+    assertEquals("Le budget d'allocation (100 cellules) est épuisé.",
+        stop("fonction principale() { soit v = [0; 1000]; }", Budget.UNLIMITED.withAllocations(100)));
+    assertEquals("Le budget d'allocation (1000 cellules) est épuisé.",
+        stop("fonction principale() { soit mutable s = \"\"; pour i dans 0..2000 { s = s + \"x\"; } }",
+            Budget.UNLIMITED.withAllocations(1000)));
+  }
+
+  // a tranche is a view on its vector, only the vector counts
+  @Test
+  public void slicesAreNotAllocations() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() -> entier { soit v = [1; 1000]; soit mutable s = 0; "
+        + "pour i dans 0..1000 { s += longueur(tranche(v, 0, 1000 - i)); } s }");
+    assertEquals(500500, script.execute(Map.of(), line -> {}, Budget.UNLIMITED.withAllocations(2000)));
+  }
+
+  // the workers of par_map take their fuel from the script's budget
+  @Test
+  public void sharedByParallelWorkers() throws Exception {
+    assertEquals("Le budget d'exécution (5000 boucles et appels) est épuisé.",
+        stop("fonction f(x: entier) -> entier { soit mutable s = 0; pour i dans 0..100 { s += i; } s }\n"
+            + "fonction principale() { par_map(0, 1000, f); }", Budget.UNLIMITED.withFuel(5000)));
+  }
+
+  @Test
+  public void limitsArePositive() {
+    assertThrows(IllegalArgumentException.class, () -> Budget.UNLIMITED.withFuel(0));
+    assertThrows(IllegalArgumentException.class, () -> Budget.UNLIMITED.withMaxDepth(-1));
+    assertThrows(IllegalArgumentException.class, () -> Budget.UNLIMITED.withAllocations(0));
+    assertThrows(IllegalArgumentException.class, () -> Budget.UNLIMITED.withDeadline(Duration.ZERO));
+  }
+}
@@ -0,0 +1,143 @@
+package interpreteur.rouille.java;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CompiledScriptTest {
+  private static final String ENDLESS = "fonction principale() { soit mutable i = 0; tant i >= 0 { i = (i + 1) % 1000; } }";
+
+  // the threads running a script, see Interpreter.onStack
+  private static boolean scriptsRunning() {
+    return Thread.getAllStackTraces().entrySet().stream()
+        .anyMatch(thread -> thread.getKey().getName().equals("rouille")
+            && thread.getKey().getState() == Thread.State.RUNNABLE);
+  }
+
+  @Test
+  public void interruptedExecutionStops() throws Exception {
+    var script = RouilleEngine.compile(ENDLESS);
+    var failure = new AtomicReference<RouilleException>();
+    var caller = new Thread(() -> {
+      try {
+        script.execute(Map.of(), line -> {});
+      } catch (RouilleException e) {
+        failure.set(e);
+      }
+    });
+    caller.start();
+    Thread.sleep(200);
+    caller.interrupt();
+    caller.join(10_000);
+
+    assertFalse(caller.isAlive());
+    assertEquals("L'exécution a été interrompue.", failure.get().diagnostics().get(0).message());
+    // the script itself stops at its next slice of fuel
+    for (int i = 0; i < 100 && scriptsRunning(); i++)
+      Thread.sleep(50);
+    assertFalse(scriptsRunning());
+  }
+
+  @Test
+  public void failedExecutionDoesNotReuseItsInterpreter() throws Exception {
+    var script = RouilleEngine.compile(ENDLESS);
+    var caller = new Thread(() -> {
+      try {
+        script.execute(Map.of(), line -> {});
+      } catch (RouilleException e) {
+      }
+    });
+    caller.start();
+    Thread.sleep(200);
+    caller.interrupt();
+    caller.join(10_000);
+
+    // each execution gets an interpreter of its own, which runs to its budget
+    for (int i = 0; i < 3; i++) {
+      var e = assertThrows(RouilleException.class,
+          () -> script.execute(Map.of(), line -> {}, Budget.UNLIMITED.withFuel(10_000)));
+      assertEquals("Le budget d'exécution (10000 boucles et appels) est épuisé.", e.diagnostics().get(0).message());
+    }
+  }
+
+  @Test
+  public void resultOfPrincipale() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() -> entier { soit mutable s = 0; "
+        + "pour i dans 0..1000 { s += i; } s }");
+    for (int i = 0; i < 3; i++)
+      assertEquals(499500, script.execute(Map.of(), line -> {}));
+  }
+
+  @Test
+  public void bindingsAreGlobals() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() -> Chaine { affiche!(nom, ages); nom + \"!\" }");
+    var out = new ArrayList<String>();
+    assertEquals("Oscar!", script.execute(Map.of("nom", "Oscar", "ages", List.of(3, 4)), out::add));
+    assertEquals(List.of("(Oscar, [3, 4])"), out);
+  }
+
+  @Test
+  public void mathFunctionsCannotBeBound() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() { }");
+    assertThrows(IllegalArgumentException.class, () -> script.execute(Map.of("racine", 1), line -> {}));
+  }
+
+  // One compiled script run from several threads at once: each execution
+  // has its own globals and its own output.
+  @Test
+  public void concurrentExecutionsAreIndependent() throws Exception {
+    var script = RouilleEngine.compile("fonction carre(x: entier) -> entier { x * x }\n"
+        + "fonction principale() -> entier { soit mutable s = 0; "
+        + "pour i dans 0..n { s += carre(i); } affiche!(n); s }");
+    var threads = Executors.newFixedThreadPool(8);
+    try {
+      var results = new ArrayList<Future<Boolean>>();
+      for (int t = 0; t < 8; t++) {
+        var first = t;
+        results.add(threads.submit(() -> {
+          for (int n = first; n < 400; n += 8) {
+            var out = Collections.synchronizedList(new ArrayList<String>());
+            var expected = 0;
+            for (int i = 0; i < n; i++)
+              expected += i * i;
+            if (!script.execute(Map.of("n", n), out::add).equals(expected) || !out.equals(List.of("" + n)))
+              return false;
+          }
+          return true;
+        }));
+      }
+      for (var result : results)
+        assertTrue(result.get());
+    } finally {
+      threads.shutdown();
+    }
+  }
+
+  // The engine compiles from several threads at once, sharing the symbols.
+  @Test
+  public void concurrentCompilations() throws Exception {
+    var threads = Executors.newFixedThreadPool(8);
+    try {
+      var results = new ArrayList<Future<Object>>();
+      for (int t = 0; t < 32; t++) {
+        var name = "f" + t;
+        var source = "fonction " + name + "(x: entier) -> entier { x + 1 }\n"
+            + "fonction principale() -> entier { " + name + "(41) * 100 + " + t + " }";
+        Callable<Object> compilation = () -> RouilleEngine.compile(source).execute(Map.of(), line -> {});
+        results.add(threads.submit(compilation));
+      }
+      for (int t = 0; t < 32; t++)
+        assertEquals(4200 + t, results.get(t).get());
+    } finally {
+      threads.shutdown();
+    }
+  }
+}
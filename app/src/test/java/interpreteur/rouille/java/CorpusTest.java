@@ -0,0 +1,119 @@
+package interpreteur.rouille.java;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Every script of src/test/resources/corpus runs through the interpreter,
+// with both of its dispatches, and through `rouille build`, and all must
+// print its `.sortie` file. Several scripts end on a runtime error, and a
+// few are rejected by the checks, so the exit codes are compared as well.
+// The expected output is the interpreter's: regenerate it with
+// `rouille script.rouille > script.sortie 2>&1` after an intended change.
+public class CorpusTest {
+  private static List<Path> scripts() throws IOException, URISyntaxException {
+    var corpus = Paths.get(CorpusTest.class.getResource("/corpus").toURI());
+    try (var files = Files.list(corpus)) {
+      return files.filter(file -> file.toString().endsWith(".rouille"))
+          .sorted(Comparator.naturalOrder())
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static List<String> expected(Path script) throws IOException {
+    var name = script.getFileName().toString().replaceFirst("\\.rouille$", ".sortie");
+    return Files.readAllLines(script.resolveSibling(name), StandardCharsets.UTF_8);
+  }
+
+  // Runs the script like the command line: 65 if it doesn't compile, 70 if
+  // it stops on an error. The error reports span several lines, which are
+  // split as on a console.
+  private static int interpret(Path script, List<String> output) throws IOException {
+    var source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+    var printed = Collections.synchronizedList(new ArrayList<String>());
+    int status;
+    try {
+      status = App.run(RouilleEngine.compile(source), List.of(), printed::add, printed::add);
+    } catch (RouilleException e) {
+      App.report(e, printed::add, printed::add);
+      status = 65;
+    }
+    String.join("\n", printed).lines().forEach(output::add);
+    return status;
+  }
+
+  @Test
+  public void interpreterPrintsExpectedOutput() throws Exception {
+    for (var script : scripts()) {
+      var output = new ArrayList<String>();
+      interpret(script, output);
+      assertEquals(script.getFileName().toString(), expected(script), output);
+    }
+  }
+
+  // The output of the script in a JVM of its own, with its exit code.
+  private static int child(List<String> command, List<String> output) throws IOException, InterruptedException {
+    var process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .start();
+    new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8)
+        .lines()
+        .filter(line -> !line.startsWith("Picked up JAVA_TOOL_OPTIONS"))
+        .forEach(output::add);
+    return process.waitFor();
+  }
+
+  // -Drouille.dispatch is read once, when the Interpreter is loaded, so the
+  // switch dispatch runs in a JVM of its own.
+  @Test
+  public void switchDispatchPrintsExpectedOutput() throws Exception {
+    var java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    for (var script : scripts()) {
+      var output = new ArrayList<String>();
+      var status = child(List.of(java, "-Dfile.encoding=UTF-8", "-Drouille.dispatch=switch",
+          "-cp", System.getProperty("java.class.path"), App.class.getName(), script.toString()), output);
+
+      var name = script.getFileName().toString();
+      assertEquals(name, interpret(script, new ArrayList<>()), status);
+      assertEquals(name, expected(script), output);
+    }
+  }
+
+  @Test
+  public void buildPrintsWhatInterpreterPrints() throws Exception {
+    var directory = Files.createTempDirectory("corpus");
+    var java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    for (var script : scripts()) {
+      var name = script.getFileName().toString();
+      var jar = directory.resolve(name.replaceFirst("\\.rouille$", ".jar"));
+      var errors = new ArrayList<String>();
+      var built = Build.build(script.toString(), jar.toString(), errors::add, errors::add);
+      if (built != 0) {
+        // rejected by both
+        assertEquals(name, interpret(script, new ArrayList<>()), built);
+        assertEquals(name, expected(script), String.join("\n", errors).lines().collect(Collectors.toList()));
+        continue;
+      }
+
+      var output = new ArrayList<String>();
+      var status = child(List.of(java, "-Dfile.encoding=UTF-8", "-jar", jar.toString()), output);
+
+      assertEquals(name, interpret(script, new ArrayList<>()), status);
+      assertEquals(name, expected(script), output);
+      Files.delete(jar);
+    }
+    Files.delete(directory);
+  }
+}
@@ -0,0 +1,93 @@
+package interpreteur.rouille.java;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class CsvTest {
+  private static Path write(String content) throws Exception {
+    var file = Files.createTempFile("rouille", ".csv");
+    file.toFile().deleteOnExit();
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  // what `affiche!(lis_csv(chemin, schema))` prints
+  private static String read(Path file, String schema) throws Exception {
+    var script = RouilleEngine.compile("fonction principale() { affiche!(lis_csv(chemin, \"" + schema + "\")); }");
+    var out = new ArrayList<String>();
+    script.execute(Map.of("chemin", file.toString()), out::add);
+    return String.join("\n", out);
+  }
+
+  private static String failure(Path file, String schema) throws Exception {
+    var e = assertThrows(RouilleException.class, () -> read(file, schema));
+    return e.diagnostics().get(0).message();
+  }
+
+  private static final String VILLES = "ville,population,surface,note\n"
+      + "Paris,2100000,105.4,\"grande, belle\"\r\n"
+      + "\n"
+      + "\"Saint-Étienne\",170000,80,ok\n"
+      + "Lyon,-5,1e2,\"dit \"\"oui\"\"\"\n";
+
+  @Test
+  public void typedColumns() throws Exception {
+    assertEquals("{population: [2100000, 170000, -5], note: [grande, belle, ok, dit \"oui\"], "
+        + "ville: [Paris, Saint-Étienne, Lyon], surface: [105.4, 80.0, 100.0]}",
+        read(write(VILLES), "ville: Chaine, population: entier, surface: flottant, note: Chaine"));
+  }
+
+  @Test
+  public void columnsOutOfTheSchemaAreSkipped() throws Exception {
+    assertEquals("{surface: [105.4, 80.0, 100.0]}", read(write(VILLES), "surface: flottant"));
+  }
+
+  @Test
+  public void errorsGiveTheLine() throws Exception {
+    var file = write("a,b\n1,2\n3,x\n");
+    assertEquals("Ligne 3 de `" + file + "` : `x` (colonne `b`) n'est pas un `entier`.",
+        failure(file, "a: entier, b: entier"));
+    file = write("a,b\n1,2\n3\n");
+    assertEquals("Ligne 3 de `" + file + "` : il manque des champs (1 au lieu de 2).",
+        failure(file, "a: entier, b: entier"));
+    file = write("a,b\n1,2,3\n");
+    assertEquals("Ligne 2 de `" + file + "` : il y a plus de 2 champs.", failure(file, "a: entier, b: entier"));
+    file = write("a\n99999999999\n");
+    assertEquals("Ligne 2 de `" + file + "` : `99999999999` (colonne `a`) dépasse un `entier`.",
+        failure(file, "a: entier"));
+  }
+
+  @Test
+  public void badSchema() throws Exception {
+    var file = write(VILLES);
+    assertEquals("La colonne `pays` n'est pas dans `" + file + "`.", failure(file, "pays: Chaine"));
+    assertEquals("La colonne `ville` est deux fois dans le schéma de `lis_csv`.",
+        failure(file, "ville: Chaine, ville: Chaine"));
+    assertTrue(failure(file, "ville").startsWith("Le schéma de `lis_csv` est une liste de `nom: type`"));
+  }
+
+  // A file of several chunks, which are read in parallel and joined in order.
+  @Test
+  public void largeFileIsReadInOrder() throws Exception {
+    var content = new StringBuilder("ville,population,surface\n");
+    for (int i = 0; i < 500_000; i++)
+      content.append("ville").append(i % 50).append(',').append(i % 1000).append(',').append(i % 1000 * 0.5).append('\n');
+    var file = write(content.toString());
+    assertTrue(Files.size(file) > 8 << 20);
+
+    var script = RouilleEngine.compile("fonction principale() { "
+        + "soit d = lis_csv(chemin, \"ville: Chaine, population: entier, surface: flottant\"); "
+        + "soit p = obtiens(d, \"population\"); "
+        + "affiche!(longueur(p), somme(p), somme(obtiens(d, \"surface\")), obtiens(d, \"ville\")[123457], p[499999]); }");
+    var out = new ArrayList<String>();
+    script.execute(Map.of("chemin", file.toString()), out::add);
+    assertEquals(List.of("(500000, 249750000, 1.24875E8, ville7, 999)"), out);
+  }
+}
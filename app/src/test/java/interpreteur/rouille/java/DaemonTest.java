@@ -0,0 +1,174 @@
+package interpreteur.rouille.java;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DaemonTest {
+  private Path directory;
+  private Path socket;
+  private Thread daemon;
+
+  // a daemon on a socket of its own, which stops 300 ms after the last script
+  @Before
+  public void serve() throws Exception {
+    directory = Files.createTempDirectory("daemon");
+    socket = directory.resolve("rouille.sock");
+    daemon = new Thread(() -> {
+      try {
+        Daemon.serve(socket, 2, 300);
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    });
+    daemon.start();
+    for (int i = 0; i < 100 && !Files.exists(socket); i++)
+      Thread.sleep(20);
+  }
+
+  @After
+  public void stop() throws Exception {
+    daemon.join(10_000);
+    assertFalse(daemon.isAlive());
+    assertFalse(Files.exists(socket));
+    try (var files = Files.list(directory)) {
+      for (var file : (Iterable<Path>) files::iterator)
+        Files.delete(file);
+    }
+    Files.delete(directory);
+  }
+
+  private Path script(String name, String source) throws IOException {
+    var file = directory.resolve(name);
+    Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void runsTheScript() throws Exception {
+    var script = script("a.rouille", "fonction principale() { affiche!(arguments); }");
+    var out = new ArrayList<String>();
+    var err = new ArrayList<String>();
+    assertEquals(0, Daemon.forward(socket, script.toString(), List.of("x", "y z"), out::add, err::add));
+    assertEquals(List.of("[x, y z]"), out);
+    assertTrue(err.isEmpty());
+  }
+
+  @Test
+  public void exitCodes() throws Exception {
+    var out = new ArrayList<String>();
+    var failing = script("b.rouille", "fonction principale() { soit v = [1]; affiche!(v[3]); }");
+    assertEquals(70, Daemon.forward(socket, failing.toString(), List.of(), out::add, out::add));
+    assertEquals("L'index 3 est hors des limites du vecteur (longueur 1).", out.get(0).lines().findFirst().get());
+
+    var wrong = script("c.rouille", "fonction principale() { soit x: entier = \"a\"; }");
+    assertEquals(65, Daemon.forward(socket, wrong.toString(), List.of(), line -> {}, line -> {}));
+    assertEquals(66, Daemon.forward(socket, directory.resolve("absent.rouille").toString(), List.of(),
+        line -> {}, line -> {}));
+  }
+
+  // the cache compiles the script again once the file changed
+  @Test
+  public void changedScriptIsCompiledAgain() throws Exception {
+    var script = script("d.rouille", "fonction principale() { affiche!(1); }");
+    var out = new ArrayList<String>();
+    Daemon.forward(socket, script.toString(), List.of(), out::add, out::add);
+    script("d.rouille", "fonction principale() { affiche!(1 + 22); }");
+    Daemon.forward(socket, script.toString(), List.of(), out::add, out::add);
+    assertEquals(List.of("1", "23"), out);
+  }
+
+  // A request the daemon doesn't understand closes the connection, before
+  // anything is allocated, and the daemon goes on.
+  @Test
+  public void malformedRequests() throws Exception {
+    try (var client = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+      var output = new DataOutputStream(Channels.newOutputStream(client));
+      output.writeInt(Integer.MAX_VALUE);
+      output.flush();
+      assertEquals(-1, Channels.newInputStream(client).read());
+    }
+    var script = script("e.rouille", "fonction principale() { affiche!(2); }");
+    var out = new ArrayList<String>();
+    assertEquals(0, Daemon.forward(socket, script.toString(), List.of(), out::add, out::add));
+    assertEquals(List.of("2"), out);
+  }
+
+  // a failure out of the script still ends on an exit code
+  @Test
+  public void internalErrorSendsAnExitCode() throws Exception {
+    try (var client = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+      client.connect(UnixDomainSocketAddress.of(socket));
+      var output = new DataOutputStream(Channels.newOutputStream(client));
+      for (var string : List.of("a\0b", directory.toString())) {
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+      }
+      output.writeInt(0);
+      output.flush();
+
+      var input = new DataInputStream(Channels.newInputStream(client));
+      assertEquals('e', input.readByte());
+      var line = new byte[input.readInt()];
+      input.readFully(line);
+      assertTrue(new String(line, StandardCharsets.UTF_8).startsWith("Erreur interne : "));
+      assertEquals('x', input.readByte());
+      assertEquals(70, input.readInt());
+      assertThrows(EOFException.class, input::readByte);
+    }
+  }
+
+  // A client ignores a socket that other users could have put there, and
+  // runs the script itself. The daemon refuses to listen there.
+  @Test
+  public void socketInAPublicDirectory() throws Exception {
+    Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwxr-xr-x"));
+    var script = script("f.rouille", "fonction principale() { }");
+    var err = new ArrayList<String>();
+    assertEquals(-1, Daemon.forward(socket, script.toString(), List.of(), line -> {}, err::add));
+    assertEquals(List.of("Le serveur de " + socket + " est ignoré : " + directory
+        + " est ouvert à d'autres utilisateurs que " + System.getProperty("user.name")), err);
+
+    var other = directory.resolve("autre.sock");
+    var e = assertThrows(IOException.class, () -> Daemon.serve(other, 1, 300));
+    assertTrue(e.getMessage().startsWith("Le serveur rouille n'écoute que dans un répertoire privé"));
+    Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+  }
+
+  // the daemon creates the directory of its socket, private
+  @Test
+  public void createsAPrivateDirectory() throws Exception {
+    var inner = directory.resolve("prive").resolve("rouille.sock");
+    var thread = new Thread(() -> {
+      try {
+        Daemon.serve(inner, 1, 300);
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    });
+    thread.start();
+    for (int i = 0; i < 100 && !Files.exists(inner); i++)
+      Thread.sleep(20);
+    assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(inner.getParent())));
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(inner)));
+    thread.join(10_000);
+    Files.delete(inner.getParent());
+  }
+}
@@ -0,0 +1,55 @@
+package interpreteur.rouille.java;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+public class DicoTest {
+  // Random inserts, lookups and deletions, the same on a HashMap. Few
+  // distinct keys, so the clusters grow and shrink around the deletions.
+  private static void againstHashMap(Random random, IntFunction<Object> key) {
+    var dico = new Dico();
+    var map = new HashMap<Object, Object>();
+    for (int i = 0; i < 200_000; i++) {
+      var k = key.apply(random.nextInt(2000));
+      switch (random.nextInt(3)) {
+        case 0:
+          assertEquals(map.put(k, i), dico.put(k, i));
+          break;
+        case 1:
+          assertEquals(map.remove(k), dico.remove(k));
+          break;
+        default:
+          assertEquals(map.get(k), dico.get(k));
+          assertEquals(map.containsKey(k), dico.containsKey(k));
+      }
+      assertEquals(map.size(), dico.size());
+    }
+  }
+
+  @Test
+  public void entierKeys() {
+    againstHashMap(new Random(1), k -> k * 31);
+  }
+
+  @Test
+  public void chaineKeys() {
+    againstHashMap(new Random(2), k -> new Chaine("cle" + k));
+  }
+
+  // keys of equal hashes, which only equals tells apart
+  @Test
+  public void collidingKeys() {
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    againstHashMap(new Random(3), k -> new Chaine((k % 2 == 0 ? "Aa" : "BB") + (k / 2)));
+  }
+
+  // the first key of another type boxes the entiers already in the table
+  @Test
+  public void mixedKeys() {
+    againstHashMap(new Random(4), k -> k < 1900 ? (Object) k : Tuple.of(k, k));
+  }
+}
@@ -0,0 +1,89 @@
+package interpreteur.rouille.java;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class FichiersTest {
+  private static Path write(String content) throws Exception {
+    var file = Files.createTempFile("rouille", ".txt");
+    file.toFile().deleteOnExit();
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static List<String> lines(Path file) {
+    var lines = new ArrayList<String>();
+    for (var line : new Fichiers.Lignes(file))
+      lines.add(line.toString());
+    return lines;
+  }
+
+  @Test
+  public void endsOfLines() throws Exception {
+    assertEquals(List.of("un", "", "deux", "trois"), lines(write("un\n\r\ndeux\r\ntrois")));
+    assertEquals(List.of("un", "deux"), lines(write("un\ndeux\n")));
+    assertEquals(List.of(""), lines(write("\n")));
+    assertEquals(List.of(), lines(write("")));
+    // bytes of the multibyte characters don't look like newlines
+    assertEquals(List.of("ÊÊÊÊÊÊÊÊÊ", "", "Ê"), lines(write("ÊÊÊÊÊÊÊÊÊ\n\nÊ")));
+  }
+
+  // The lines that straddle the end of a window are whole, as are all the
+  // others.
+  @Test
+  public void linesAcrossWindows() throws Exception {
+    var file = Files.createTempFile("rouille", ".txt");
+    file.toFile().deleteOnExit();
+    var count = 0;
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (long written = 0; written < Fichiers.WINDOW + (1 << 20); count++) {
+        var line = "ligne " + count + " " + "é".repeat(count % 97);
+        writer.write(line);
+        writer.write(count % 3 == 0 ? "\r\n" : "\n");
+        written += line.getBytes(StandardCharsets.UTF_8).length + (count % 3 == 0 ? 2 : 1);
+      }
+    }
+
+    var read = 0;
+    for (var line : new Fichiers.Lignes(file)) {
+      assertEquals("ligne " + read + " " + "é".repeat(read % 97), line.toString());
+      read++;
+    }
+    assertEquals(count, read);
+    Files.delete(file);
+  }
+
+  @Test
+  public void eachLoopReadsTheFileAgain() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() { soit f = lignes(chemin); "
+        + "pour l dans f { affiche!(l); } pour l dans f { affiche!(l + \"!\"); } }");
+    var out = new ArrayList<String>();
+    script.execute(Map.of("chemin", write("a\nb\n").toString()), out::add);
+    assertEquals(List.of("a", "b", "a!", "b!"), out);
+  }
+
+  // a script run for another directory, like a daemon's, reads its files there
+  @Test
+  public void relativePaths() throws Exception {
+    var file = write("x\n");
+    var script = RouilleEngine.compile("fonction principale() { pour l dans lignes(nom) { affiche!(l); } }");
+    var out = new ArrayList<String>();
+    script.execute(Map.of("nom", file.getFileName().toString()), out::add, Budget.UNLIMITED, file.getParent());
+    assertEquals(List.of("x"), out);
+  }
+
+  @Test
+  public void missingFile() throws Exception {
+    var script = RouilleEngine.compile("fonction principale() { soit f = lignes(\"/absent/fichier\"); }");
+    var e = assertThrows(RouilleException.class, () -> script.execute(Map.of(), line -> {}));
+    assertEquals("Impossible de lire `/absent/fichier` : il n'existe pas.", e.diagnostics().get(0).message());
+  }
+}
@@ -0,0 +1,113 @@
+package interpreteur.rouille.java;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+// Dico against java.util.HashMap, with entier, chaine and tuple keys: the
+// time of N inserts followed by 5 N lookups, and the bytes per entry of the
+// table. The keys and values are built beforehand and shared by both maps,
+// so only the tables are measured. They are shuffled: consecutive chaines
+// have neighbouring hashes, which HashMap would otherwise read in order.
+// Run by `make bench-dico`.
+class DicoBench {
+  private static final int N = 1_000_000;
+  private static final int LOOKUPS = 5;
+  private static final int ROUNDS = 7;
+
+  interface Table {
+    void put(Object key, Object value);
+
+    Object get(Object key);
+  }
+
+  public static void main(String[] args) {
+    var n = args.length > 0 ? Integer.parseInt(args[0]) : N;
+    compare("entier", n, i -> i * 7);
+    compare("chaine", n, i -> new Chaine("cle" + i));
+    compare("tuple", n, i -> Tuple.of(i, i + 1));
+  }
+
+  private static void compare(String name, int n, IntFunction<Object> key) {
+    var keys = new Object[n];
+    var values = new Object[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = key.apply(i);
+      values[i] = i;
+    }
+    var random = new Random(42);
+    for (int i = n - 1; i > 0; i--) {
+      var j = random.nextInt(i + 1);
+      var swap = keys[i];
+      keys[i] = keys[j];
+      keys[j] = swap;
+    }
+
+    System.out.println(name + " (" + n + " clés)");
+    report("  Dico   ", keys, values, () -> {
+      var dico = new Dico();
+      return new Table() {
+        public void put(Object key, Object value) {
+          dico.put(key, value);
+        }
+
+        public Object get(Object key) {
+          return dico.get(key);
+        }
+      };
+    });
+    report("  HashMap", keys, values, () -> {
+      var map = new HashMap<Object, Object>();
+      return new Table() {
+        public void put(Object key, Object value) {
+          map.put(key, value);
+        }
+
+        public Object get(Object key) {
+          return map.get(key);
+        }
+      };
+    });
+  }
+
+  private static void report(String name, Object[] keys, Object[] values, Supplier<Table> tables) {
+    var times = new long[ROUNDS];
+    long checksum = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      var start = System.nanoTime();
+      checksum += fill(tables.get(), keys, values);
+      times[round] = System.nanoTime() - start;
+    }
+    Arrays.sort(times);
+
+    var before = used();
+    var table = tables.get();
+    fill(table, keys, values);
+    var bytes = used() - before;
+    // keeps the table reachable until it has been measured
+    if (table.get(keys[0]) == null)
+      throw new IllegalStateException();
+
+    System.out.printf("%s %6.1f ms  %5.1f octets/entrée  (%d)%n", name, times[ROUNDS / 2] / 1e6,
+        (double) bytes / keys.length, checksum);
+  }
+
+  private static long fill(Table table, Object[] keys, Object[] values) {
+    for (int i = 0; i < keys.length; i++)
+      table.put(keys[i], values[i]);
+    long sum = 0;
+    for (int round = 0; round < LOOKUPS; round++)
+      for (int i = 0; i < keys.length; i++)
+        sum += (int) table.get(keys[i]);
+    return sum;
+  }
+
+  private static long used() {
+    var runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++)
+      System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,71 @@
+package interpreteur.rouille.java;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+// The throughput of the TypeChecker, next to the phases before it, on a
+// generated program of N functions of typed arithmetic, loops, tuples and
+// calls. Each round scans, parses and resolves a fresh copy, since the
+// checker annotates the nodes it proves. Run by `make bench-typage`.
+class TypageBench {
+  private static final int N = 2_000;
+  private static final int ROUNDS = 9;
+
+  public static void main(String[] args) {
+    var n = args.length > 0 ? Integer.parseInt(args[0]) : N;
+    var source = program(n);
+    var lines = source.lines().count();
+
+    var scanning = new long[ROUNDS];
+    var resolving = new long[ROUNDS];
+    var checking = new long[ROUNDS];
+    for (int round = 0; round < ROUNDS; round++) {
+      var diagnostics = new Diagnostics();
+      var start = System.nanoTime();
+      var statements = new Parser(new Scanner(source, diagnostics).scanTokens(), diagnostics).parse();
+      scanning[round] = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      new Resolver(new HashMap<>(), new HashSet<>(), diagnostics).resolve(statements);
+      resolving[round] = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      new TypeChecker(diagnostics).check(statements);
+      checking[round] = System.nanoTime() - start;
+      if (diagnostics.hadError())
+        throw new IllegalStateException(diagnostics.list().toString());
+    }
+
+    System.out.println(n + " fonctions, " + lines + " lignes");
+    report("analyse   ", scanning, lines);
+    report("résolution", resolving, lines);
+    report("typage    ", checking, lines);
+  }
+
+  private static String program(int n) {
+    var source = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      var callee = "f" + Math.max(0, i - 1);
+      source.append("fonction f").append(i).append("(n: entier, x: flottant) -> entier {\n")
+          .append("  soit mutable s = 0;\n")
+          .append("  soit mutable y = x;\n")
+          .append("  pour k dans 0..n {\n")
+          .append("    s += si k % 2 == 0 { k * 3 } sinon { k / 2 };\n")
+          .append("    y = y * 1.5 + 0.25;\n")
+          .append("  }\n")
+          .append("  soit t: (entier, flottant) = (s, y);\n")
+          .append("  tant s > 1000 && y > 0.0 { s = s - ").append(callee).append("(1, y); }\n")
+          .append("  si s < 0 { -s } sinon { s }\n")
+          .append("}\n\n");
+    }
+    source.append("fonction principale() {\n  affiche!(f").append(n - 1).append("(10, 1.0));\n}\n");
+    return source.toString();
+  }
+
+  private static void report(String phase, long[] times, long lines) {
+    Arrays.sort(times);
+    var median = times[times.length / 2];
+    System.out.printf("%s %7.1f ms  %9.0f lignes/s%n", phase, median / 1e6, lines / (median / 1e9));
+  }
+}
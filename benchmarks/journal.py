@@ -0,0 +1,9 @@
+# Writes the journal read by lignes.rouille: 3 million lines, ~170 MB.
+import random
+import sys
+
+random.seed(1)
+with open(sys.argv[1] if len(sys.argv) > 1 else "app/build/journal.log", "w", encoding="utf-8") as f:
+    for i in range(3000000):
+        f.write("2026-10-19T12:%02d:%02d %s requête %d traitée en %d ms\n"
+                % (i % 60, i % 59, random.choice(["INFO", "WARN", "ERREUR"]), i, random.randint(1, 999)))
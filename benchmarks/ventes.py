@@ -0,0 +1,12 @@
+# Writes the sales read by csv.rouille: 2 million lines, ~100 MB.
+import random
+import sys
+
+random.seed(1)
+villes = ["Paris", "Lyon", "Marseille", "Toulouse", "Nice", "Nantes", "Saint-Étienne", "Lille"]
+with open(sys.argv[1] if len(sys.argv) > 1 else "app/build/ventes.csv", "w", encoding="utf-8") as f:
+    f.write("id,date,ville,produit,quantite,prix\n")
+    for i in range(2000000):
+        f.write("%d,2026-%02d-%02d,%s,produit %d,%d,%.2f\n"
+                % (i, i % 12 + 1, i % 28 + 1, random.choice(villes), random.randint(1, 5000),
+                   random.randint(1, 20), random.randint(100, 99999) / 100))